@@ -0,0 +1,183 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+import io.codenotary.immudb4j.Tx;
+import io.codenotary.immudb4j.TxMetadata;
+import io.codenotary.immudb4j.crypto.CryptoUtils;
+import io.codenotary.immudb4j.crypto.DualProof;
+import io.codenotary.immudb4j.crypto.InclusionProof;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Compares the bytes allocated and the time spent per proof verification by the immudb4j path
+ * (messages converted to immudb4j objects first) and by {@link ProofVerifier}, on synthetic proofs.
+ * <p>
+ * Both the checks of a verified set (inclusion in the tx entries) and of a verified get (inclusion proof) are
+ * measured, each followed by the dual proof against an older state. Lives in the client package, as the
+ * verifier is package-private. Usage:
+ * <pre>
+ * ProofAllocationBenchmark [--entries 16] [--value-size 512] [--tx-span 64] [--iterations 200000]
+ * </pre>
+ */
+public final class ProofAllocationBenchmark {
+
+    private final SyntheticProofs.Sample sample;
+    private final byte[] encodedKey;
+    private final ByteString key;
+    private final ByteString value;
+
+    private ProofAllocationBenchmark(SyntheticProofs.Sample sample) {
+        this.sample = sample;
+        this.encodedKey = sample.encodedKey();
+        this.key = ByteString.copyFrom(sample.key);
+        this.value = ByteString.copyFrom(sample.value);
+    }
+
+    public static void main(String[] args) {
+        int entries = 16;
+        int valueSize = 512;
+        int txSpan = 64;
+        int iterations = 200_000;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--help")) {
+                System.out.println("ProofAllocationBenchmark [--entries 16] [--value-size 512] [--tx-span 64]"
+                        + " [--iterations 200000]");
+                return;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value of " + arg);
+            }
+            int v = Integer.parseInt(args[++i]);
+            switch (arg) {
+                case "--entries":
+                    entries = v;
+                    break;
+                case "--value-size":
+                    valueSize = v;
+                    break;
+                case "--tx-span":
+                    txSpan = v;
+                    break;
+                case "--iterations":
+                    iterations = v;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        // The client state is txSpan txs behind: the dual proof has all of its parts.
+        long targetId = txSpan + 2L;
+        ProofAllocationBenchmark benchmark = new ProofAllocationBenchmark(
+                SyntheticProofs.sample(entries, valueSize, targetId - txSpan, targetId));
+
+        System.out.printf("%d entries of %d bytes, dual proof over %d txs, %d iterations%n",
+                entries, valueSize, txSpan, iterations);
+        System.out.printf("%-22s %12s %12s%n", "path", "bytes/op", "ns/op");
+        run("set  immudb4j", benchmark::setImmudb4j, iterations);
+        run("set  verifier", benchmark::setVerifier, iterations);
+        run("get  immudb4j", benchmark::getImmudb4j, iterations);
+        run("get  verifier", benchmark::getVerifier, iterations);
+    }
+
+    private static void run(String name, BooleanSupplier verification, int iterations) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up, then measure: both loops must verify every time, or the comparison is meaningless.
+        for (int i = 0; i < Math.max(10_000, iterations / 10); i++) {
+            check(name, verification.getAsBoolean());
+        }
+        long bytes = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            check(name, verification.getAsBoolean());
+        }
+        long elapsed = System.nanoTime() - start;
+        bytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+
+        System.out.printf("%-22s %12.1f %12.1f%n", name, (double) bytes / iterations, (double) elapsed / iterations);
+    }
+
+    private static void check(String name, boolean verified) {
+        if (!verified) {
+            throw new IllegalStateException(name + ": the synthetic proofs did not verify.");
+        }
+    }
+
+    /**
+     * The checks of a verified set, as done before {@link ProofVerifier}.
+     */
+    private boolean setImmudb4j() {
+        Tx tx;
+        try {
+            tx = Tx.valueOf(sample.tx);
+        } catch (Exception e) {
+            return false;
+        }
+        InclusionProof inclusionProof = tx.proof(encodedKey);
+        return CryptoUtils.verifyInclusion(inclusionProof, CryptoUtils.encodeKV(sample.key, sample.value), tx.eh())
+                && CryptoUtils.verifyDualProof(DualProof.valueOf(sample.dualProof), sample.sourceId, tx.getId(),
+                CryptoUtils.digestFrom(sample.sourceAlh), tx.getAlh());
+    }
+
+    private boolean setVerifier() {
+        ProofVerifier verifier = ProofVerifier.get();
+        byte[] kvDigest = verifier.kvDigest(encodedKey, ProofVerifier.VALUE_PREFIX, sample.value);
+        if (!verifier.verifyTxInclusion(sample.tx, encodedKey, kvDigest)) {
+            return false;
+        }
+        byte[] targetAlh = verifier.alh(sample.tx.getMetadata());
+        return targetAlh != null
+                && verifier.verifyDualProof(sample.dualProof, sample.sourceId, sample.targetId, sample.sourceAlh,
+                targetAlh);
+    }
+
+    /**
+     * The checks of a verified get, as done before {@link ProofVerifier}.
+     */
+    private boolean getImmudb4j() {
+        ImmudbProto.TxMetadata target = sample.dualProof.getTargetTxMetadata();
+        InclusionProof inclusionProof = InclusionProof.valueOf(sample.inclusionProof);
+        DualProof dualProof = DualProof.valueOf(sample.dualProof);
+        byte[] eh = CryptoUtils.digestFrom(target.getEH().toByteArray());
+        return CryptoUtils.verifyInclusion(inclusionProof,
+                CryptoUtils.encodeKV(key.toByteArray(), value.toByteArray()), eh)
+                && CryptoUtils.verifyDualProof(dualProof, sample.sourceId, sample.targetId,
+                CryptoUtils.digestFrom(sample.sourceAlh), TxMetadata.valueOf(target).alh());
+    }
+
+    private boolean getVerifier() {
+        ProofVerifier verifier = ProofVerifier.get();
+        ImmudbProto.TxMetadata target = sample.dualProof.getTargetTxMetadata();
+        byte[] kvDigest = verifier.kvDigest(key, value);
+        if (!verifier.verifyInclusion(sample.inclusionProof, kvDigest, target.getEH())) {
+            return false;
+        }
+        byte[] targetAlh = verifier.alh(target);
+        return targetAlh != null
+                && verifier.verifyDualProof(sample.dualProof, sample.sourceId, sample.targetId, sample.sourceAlh,
+                targetAlh);
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.loadgen;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the index (in [0, keys)) of the key an operation works on.
+ */
+abstract class KeyDistribution {
+
+    final long keys;
+
+    KeyDistribution(long keys) {
+        if (keys <= 0) {
+            throw new IllegalArgumentException("The number of keys must be positive: " + keys);
+        }
+        this.keys = keys;
+    }
+
+    abstract long next();
+
+    /**
+     * Parse a distribution spec: "uniform", "sequential" or "zipf[:exponent]" (default exponent 0.99).
+     */
+    static KeyDistribution parse(String spec, long keys) {
+        String[] parts = spec.split(":");
+        switch (parts[0].toLowerCase()) {
+            case "uniform":
+                return new Uniform(keys);
+            case "sequential":
+                return new Sequential(keys);
+            case "zipf":
+                return new Zipf(keys, parts.length > 1 ? Double.parseDouble(parts[1]) : 0.99);
+            default:
+                throw new IllegalArgumentException("Unknown key distribution: " + spec);
+        }
+    }
+
+    static final class Uniform extends KeyDistribution {
+
+        Uniform(long keys) {
+            super(keys);
+        }
+
+        @Override
+        long next() {
+            return ThreadLocalRandom.current().nextLong(keys);
+        }
+    }
+
+    static final class Sequential extends KeyDistribution {
+
+        private final AtomicLong counter = new AtomicLong();
+
+        Sequential(long keys) {
+            super(keys);
+        }
+
+        @Override
+        long next() {
+            return Math.floorMod(counter.getAndIncrement(), keys);
+        }
+    }
+
+    /**
+     * Zipfian ranks (rank 0 being the hottest key), drawn by inverting the precomputed CDF.
+     */
+    static final class Zipf extends KeyDistribution {
+
+        static final int MAX_KEYS = 10_000_000;
+
+        private final double[] cdf;
+
+        Zipf(long keys, double exponent) {
+            super(keys);
+            if (keys > MAX_KEYS) {
+                throw new IllegalArgumentException("Zipf supports up to " + MAX_KEYS + " keys: " + keys);
+            }
+            cdf = new double[(int) keys];
+            double sum = 0;
+            for (int i = 0; i < cdf.length; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < cdf.length; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        @Override
+        long next() {
+            int i = Arrays.binarySearch(cdf, ThreadLocalRandom.current().nextDouble());
+            return Math.min(cdf.length - 1, i >= 0 ? i : -i - 1);
+        }
+    }
+
+}
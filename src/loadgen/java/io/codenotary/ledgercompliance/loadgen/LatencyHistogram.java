@@ -0,0 +1,191 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.loadgen;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent log-linear histogram of latencies (in nanoseconds), with the bucket layout of an
+ * HdrHistogram having 2 significant digits: values are kept with a relative error below 1/64.
+ * <p>
+ * The percentile distribution is printed in the HdrHistogram text format, so reports can be plotted
+ * with the usual HdrHistogram tools.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+    /**
+     * Latencies above one hour are recorded as one hour.
+     */
+    static final long MAX_VALUE = 3_600_000_000_000L;
+
+    private final AtomicLongArray counts;
+
+    LatencyHistogram() {
+        this.counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+    }
+
+    void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, Math.min(MAX_VALUE, nanos))));
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+    }
+
+    long totalCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * The highest value equivalent to the recorded ones at the provided percentile (0..100).
+     */
+    long valueAtPercentile(double percentile) {
+        long total = totalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestEquivalentValue(counts.length() - 1);
+    }
+
+    long max() {
+        for (int i = counts.length() - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return 0;
+    }
+
+    double mean() {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            total += c;
+            sum += c * (double) medianEquivalentValue(i);
+        }
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * Print the percentile distribution (values divided by the provided ratio) in the HdrHistogram format.
+     */
+    void printPercentileDistribution(PrintStream out, double unitRatio) {
+        long total = totalCount();
+        out.println("       Value     Percentile TotalCount 1/(1-Percentile)");
+        out.println();
+
+        int ticksPerHalfDistance = 5;
+        double percentile = 0;
+        while (total > 0) {
+            long value = valueAtPercentile(percentile);
+            long count = countUpTo(value);
+            double reached = 100.0 * count / total;
+            if (count == total) {
+                out.printf("%12.3f %14.12f %10d%n", value / unitRatio, 1.0, count);
+                break;
+            }
+            out.printf("%12.3f %14.12f %10d %14.2f%n",
+                    value / unitRatio, reached / 100, count, 1 / (1 - reached / 100));
+
+            // Halve the step each time the distance to 100% halves, as HdrHistogram does.
+            double halfDistances = Math.floor(Math.log(100 / (100 - reached)) / Math.log(2)) + 1;
+            double step = 100 / (ticksPerHalfDistance * Math.pow(2, halfDistances));
+            percentile = Math.max(percentile + step, reached + step / 2);
+        }
+
+        double mean = mean() / unitRatio;
+        out.printf("#[Mean    = %12.3f, StdDeviation   = %12.3f]%n", mean, stdDeviation() / unitRatio);
+        out.printf("#[Max     = %12.3f, Total count    = %12d]%n", max() / unitRatio, total);
+        out.printf("#[Buckets = %12d, SubBuckets     = %12d]%n",
+                (counts.length() - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1, SUB_BUCKET_COUNT);
+    }
+
+    private double stdDeviation() {
+        long total = totalCount();
+        if (total == 0) {
+            return 0;
+        }
+        double mean = mean();
+        double sum = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            if (c != 0) {
+                double d = medianEquivalentValue(i) - mean;
+                sum += c * d * d;
+            }
+        }
+        return Math.sqrt(sum / total);
+    }
+
+    private long countUpTo(long value) {
+        int last = indexOf(Math.min(MAX_VALUE, value));
+        long count = 0;
+        for (int i = 0; i <= last; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) ((value >>> shift) - SUB_BUCKET_HALF);
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long sub = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return sub << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        return lowestEquivalentValue(index + 1) - 1;
+    }
+
+    private static long medianEquivalentValue(int index) {
+        long low = lowestEquivalentValue(index);
+        return low + (highestEquivalentValue(index) - low) / 2;
+    }
+
+}
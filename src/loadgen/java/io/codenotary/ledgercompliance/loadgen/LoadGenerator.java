@@ -0,0 +1,429 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.loadgen;
+
+import io.codenotary.ledgercompliance.client.LedgerComplianceClient;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An open-loop load generator for the client.
+ * <p>
+ * Operations are scheduled at a fixed arrival rate, independently of how fast previous ones complete, and
+ * their latency is measured from the time they were scheduled to start. When the client (or the server) can't
+ * keep up, operations queue and the reported latencies grow accordingly, instead of the load silently slowing
+ * down: this is the correction for coordinated omission. Service times (from the actual start) are reported
+ * as well, so the queueing part can be told apart.
+ * <p>
+ * Without a target, a local in-memory {@link StandInServer} is started, for measuring the client alone.
+ * Run with --help for the options.
+ */
+public final class LoadGenerator {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final int KEY_DIGITS = 12;
+
+    private final Options options;
+    private final Operation[] mixOps;
+    private final double[] mixCdf;
+    private final KeyDistribution keyDistribution;
+    private final byte[] valuePool;
+
+    private final Map<Operation, LatencyHistogram> corrected = new EnumMap<>(Operation.class);
+    private final Map<Operation, LatencyHistogram> service = new EnumMap<>(Operation.class);
+    private final AtomicLongArray errors = new AtomicLongArray(Operation.values().length);
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    private LoadGenerator(Options options) {
+        this.options = options;
+        this.mixOps = options.mix.keySet().toArray(new Operation[0]);
+        this.mixCdf = new double[mixOps.length];
+        double total = 0;
+        for (int weight : options.mix.values()) {
+            total += weight;
+        }
+        double sum = 0;
+        for (int i = 0; i < mixOps.length; i++) {
+            sum += options.mix.get(mixOps[i]);
+            mixCdf[i] = sum / total;
+            corrected.put(mixOps[i], new LatencyHistogram());
+            service.put(mixOps[i], new LatencyHistogram());
+        }
+        this.keyDistribution = KeyDistribution.parse(options.distribution, options.keys);
+        this.valuePool = new byte[options.maxValueSize];
+        ThreadLocalRandom.current().nextBytes(valuePool);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println();
+            Options.printUsage(System.err);
+            System.exit(2);
+            return;
+        }
+        if (options.help) {
+            Options.printUsage(System.out);
+            return;
+        }
+
+        StandInServer standIn = null;
+        String host = options.host;
+        int port = options.port;
+        if (host == null) {
+            standIn = StandInServer.start();
+            host = "localhost";
+            port = standIn.port();
+            System.out.println("Started the stand-in server on port " + port);
+        }
+
+        LedgerComplianceClient client = LedgerComplianceClient.newBuilder()
+                .withServerUrl(host)
+                .withServerPort(port)
+                .withTLS(options.tls)
+                .withApiKey(options.apiKey)
+                .build();
+        try {
+            new LoadGenerator(options).run(client, System.out);
+        } finally {
+            client.shutdown();
+            if (standIn != null) {
+                standIn.close();
+            }
+        }
+    }
+
+    private void run(LedgerComplianceClient client, PrintStream out) throws IOException, InterruptedException {
+        if (options.preload > 0) {
+            out.printf("Preloading %d keys...%n", options.preload);
+            for (long i = 0; i < options.preload; i++) {
+                client.set(key(i), value());
+            }
+        }
+
+        out.printf("Running %.0f ops/s for %ds (after %ds of warm-up) with %d workers%n",
+                options.rate, options.durationSeconds, options.warmupSeconds, options.concurrency);
+
+        double intervalNanos = 1e9 / options.rate;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        AtomicLong sequence = new AtomicLong();
+
+        List<Thread> workers = new ArrayList<>(options.concurrency);
+        for (int w = 0; w < options.concurrency; w++) {
+            Thread worker = new Thread(() -> {
+                while (true) {
+                    long intended = start + (long) (sequence.getAndIncrement() * intervalNanos);
+                    if (intended >= end) {
+                        return;
+                    }
+                    execute(client, intended, intended >= measureFrom);
+                }
+            }, "lc-loadgen-" + w);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - measureFrom;
+
+        report(out, elapsed);
+        if (options.histogramDir != null) {
+            writeHistograms(Paths.get(options.histogramDir));
+        }
+    }
+
+    private void execute(LedgerComplianceClient client, long intended, boolean measured) {
+        long now;
+        while ((now = System.nanoTime()) < intended) {
+            LockSupport.parkNanos(intended - now);
+        }
+        Operation op = nextOperation();
+        byte[] key = key(keyDistribution.next());
+        byte[] value = op == Operation.SET || op == Operation.VERIFIED_SET ? value() : new byte[0];
+
+        long actualStart = System.nanoTime();
+        boolean failed = false;
+        try {
+            op.run(client, key, value);
+        } catch (Exception e) {
+            failed = true;
+        }
+        long done = System.nanoTime();
+
+        if (!measured) {
+            return;
+        }
+        maxLagNanos.accumulateAndGet(actualStart - intended, Math::max);
+        if (failed) {
+            errors.incrementAndGet(op.ordinal());
+            return;
+        }
+        corrected.get(op).record(done - intended);
+        service.get(op).record(done - actualStart);
+    }
+
+    private Operation nextOperation() {
+        double r = ThreadLocalRandom.current().nextDouble();
+        for (int i = 0; i < mixCdf.length - 1; i++) {
+            if (r < mixCdf[i]) {
+                return mixOps[i];
+            }
+        }
+        return mixOps[mixOps.length - 1];
+    }
+
+    private byte[] key(long index) {
+        byte[] prefix = options.prefix;
+        byte[] key = new byte[prefix.length + KEY_DIGITS];
+        System.arraycopy(prefix, 0, key, 0, prefix.length);
+        for (int i = key.length - 1; i >= prefix.length; i--) {
+            key[i] = (byte) ('0' + index % 10);
+            index /= 10;
+        }
+        return key;
+    }
+
+    private byte[] value() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = options.minValueSize == options.maxValueSize
+                ? options.maxValueSize
+                : random.nextInt(options.minValueSize, options.maxValueSize + 1);
+        byte[] value = new byte[size];
+        System.arraycopy(valuePool, random.nextInt(options.maxValueSize - size + 1), value, 0, size);
+        return value;
+    }
+
+    private void report(PrintStream out, long elapsedNanos) {
+        LatencyHistogram allCorrected = new LatencyHistogram();
+        long allErrors = 0;
+
+        out.println();
+        out.println("Latency in ms, from the scheduled start (corrected for coordinated omission);"
+                + " service time from the actual start.");
+        out.printf("%-12s %10s %8s %9s %9s %9s %9s %9s %9s | %9s %9s %9s%n",
+                "operation", "count", "errors", "p50", "p90", "p99", "p99.9", "p99.99", "max",
+                "svc p50", "svc p99", "svc max");
+        for (Operation op : mixOps) {
+            LatencyHistogram c = corrected.get(op);
+            LatencyHistogram s = service.get(op);
+            allCorrected.add(c);
+            allErrors += errors.get(op.ordinal());
+            out.printf("%-12s %10d %8d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f | %9.3f %9.3f %9.3f%n",
+                    op.displayName(), c.totalCount(), errors.get(op.ordinal()),
+                    ms(c.valueAtPercentile(50)), ms(c.valueAtPercentile(90)), ms(c.valueAtPercentile(99)),
+                    ms(c.valueAtPercentile(99.9)), ms(c.valueAtPercentile(99.99)), ms(c.max()),
+                    ms(s.valueAtPercentile(50)), ms(s.valueAtPercentile(99)), ms(s.max()));
+        }
+
+        double achieved = (allCorrected.totalCount() + allErrors) / (elapsedNanos / 1e9);
+        out.println();
+        out.printf("Target rate: %.1f ops/s, achieved: %.1f ops/s, errors: %d, max start lag: %.3f ms%n",
+                options.rate, achieved, allErrors, ms(maxLagNanos.get()));
+        if (achieved < options.rate * 0.95 || maxLagNanos.get() > TimeUnit.SECONDS.toNanos(1)) {
+            out.println("The target rate was NOT sustained: the client or the server is saturated.");
+        }
+    }
+
+    private void writeHistograms(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        LatencyHistogram all = new LatencyHistogram();
+        for (Operation op : mixOps) {
+            all.add(corrected.get(op));
+            write(dir.resolve(op.displayName() + ".corrected.hgrm"), corrected.get(op));
+            write(dir.resolve(op.displayName() + ".service.hgrm"), service.get(op));
+        }
+        write(dir.resolve("all.corrected.hgrm"), all);
+    }
+
+    private static void write(Path file, LatencyHistogram histogram) throws IOException {
+        try (PrintStream ps = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+            histogram.printPercentileDistribution(ps, NANOS_PER_MILLI);
+        }
+    }
+
+    private static double ms(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * The command line options.
+     */
+    static final class Options {
+
+        String host;
+        int port;
+        boolean tls;
+        String apiKey = "";
+        double rate;
+        int durationSeconds = 60;
+        int warmupSeconds = 10;
+        int concurrency = 64;
+        Map<Operation, Integer> mix = new LinkedHashMap<>();
+        long keys = 100_000;
+        String distribution = "uniform";
+        int minValueSize = 1024;
+        int maxValueSize = 1024;
+        byte[] prefix = "loadgen:".getBytes(StandardCharsets.UTF_8);
+        long preload;
+        String histogramDir;
+        boolean help;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--help") || arg.equals("-h")) {
+                    o.help = true;
+                    return o;
+                }
+                if (arg.equals("--tls")) {
+                    o.tls = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--target":
+                        int colon = value.lastIndexOf(':');
+                        if (colon <= 0) {
+                            throw new IllegalArgumentException("The target must be host:port: " + value);
+                        }
+                        o.host = value.substring(0, colon);
+                        o.port = Integer.parseInt(value.substring(colon + 1));
+                        break;
+                    case "--api-key":
+                        o.apiKey = value;
+                        break;
+                    case "--rate":
+                        o.rate = Double.parseDouble(value);
+                        break;
+                    case "--duration":
+                        o.durationSeconds = Integer.parseInt(value);
+                        break;
+                    case "--warmup":
+                        o.warmupSeconds = Integer.parseInt(value);
+                        break;
+                    case "--concurrency":
+                        o.concurrency = Integer.parseInt(value);
+                        break;
+                    case "--mix":
+                        for (String part : value.split(",")) {
+                            String[] kv = part.split("=");
+                            int weight = kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1;
+                            o.mix.put(Operation.byName(kv[0].trim()), weight);
+                        }
+                        break;
+                    case "--keys":
+                        o.keys = Long.parseLong(value);
+                        break;
+                    case "--distribution":
+                        o.distribution = value;
+                        break;
+                    case "--value-size":
+                        int dash = value.indexOf('-');
+                        o.minValueSize = Integer.parseInt(dash < 0 ? value : value.substring(0, dash));
+                        o.maxValueSize = dash < 0 ? o.minValueSize : Integer.parseInt(value.substring(dash + 1));
+                        break;
+                    case "--prefix":
+                        o.prefix = value.getBytes(StandardCharsets.UTF_8);
+                        break;
+                    case "--preload":
+                        o.preload = Long.parseLong(value);
+                        break;
+                    case "--histograms":
+                        o.histogramDir = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            o.validate();
+            return o;
+        }
+
+        private void validate() {
+            if (rate <= 0) {
+                throw new IllegalArgumentException("A positive --rate is required.");
+            }
+            if (durationSeconds <= 0 || warmupSeconds < 0 || concurrency <= 0) {
+                throw new IllegalArgumentException("Duration and concurrency must be positive, warm-up not negative.");
+            }
+            if (minValueSize < 0 || maxValueSize < minValueSize) {
+                throw new IllegalArgumentException("Invalid value size range: " + minValueSize + "-" + maxValueSize);
+            }
+            if (mix.isEmpty()) {
+                mix.put(Operation.SET, 50);
+                mix.put(Operation.GET, 50);
+            }
+            for (Map.Entry<Operation, Integer> e : mix.entrySet()) {
+                if (e.getValue() <= 0) {
+                    throw new IllegalArgumentException("Mix weights must be positive: " + e.getKey().displayName());
+                }
+                if (host == null && e.getKey().isVerified()) {
+                    throw new IllegalArgumentException("The stand-in server can't serve " + e.getKey().displayName()
+                            + ": use --target for verified operations.");
+                }
+            }
+            if (preload > keys) {
+                throw new IllegalArgumentException("Can't preload more than --keys keys.");
+            }
+        }
+
+        static void printUsage(PrintStream out) {
+            out.println("Usage: LoadGenerator --rate <ops/s> [options]");
+            out.println("  --target <host:port>    LC server (default: a local in-memory stand-in server)");
+            out.println("  --tls                   use TLS towards the target");
+            out.println("  --api-key <key>         API key for the target");
+            out.println("  --rate <ops/s>          fixed arrival rate (required)");
+            out.println("  --duration <s>          measured duration (default 60)");
+            out.println("  --warmup <s>            unmeasured warm-up before it (default 10)");
+            out.println("  --concurrency <n>       worker threads, i.e. max operations in flight (default 64)");
+            out.println("  --mix <op=w,...>        weighted operations among set, verifiedSet, get, verifiedGet,");
+            out.println("                          scan, zAdd (default set=50,get=50)");
+            out.println("  --keys <n>              key space size (default 100000)");
+            out.println("  --distribution <d>      uniform, sequential or zipf[:exponent] (default uniform)");
+            out.println("  --value-size <n|lo-hi>  value size in bytes (default 1024)");
+            out.println("  --prefix <p>            key prefix (default loadgen:)");
+            out.println("  --preload <n>           set the first n keys before starting");
+            out.println("  --histograms <dir>      write the percentile distributions (.hgrm) into dir");
+        }
+    }
+
+}
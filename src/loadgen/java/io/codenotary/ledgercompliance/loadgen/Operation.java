@@ -0,0 +1,115 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.loadgen;
+
+import io.codenotary.immudb4j.exceptions.VerificationException;
+import io.codenotary.ledgercompliance.client.KeyNotFoundException;
+import io.codenotary.ledgercompliance.client.LedgerComplianceClient;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The client calls a workload is made of.
+ */
+enum Operation {
+
+    SET("set", false) {
+        @Override
+        void run(LedgerComplianceClient client, byte[] key, byte[] value) {
+            client.set(key, value);
+        }
+    },
+
+    VERIFIED_SET("verifiedSet", true) {
+        @Override
+        void run(LedgerComplianceClient client, byte[] key, byte[] value) throws VerificationException {
+            client.verifiedSet(key, value);
+        }
+    },
+
+    GET("get", false) {
+        @Override
+        void run(LedgerComplianceClient client, byte[] key, byte[] value) {
+            try {
+                client.get(key);
+            } catch (KeyNotFoundException e) {
+                // A miss is a valid outcome for a read of a random key.
+            }
+        }
+    },
+
+    VERIFIED_GET("verifiedGet", true) {
+        @Override
+        void run(LedgerComplianceClient client, byte[] key, byte[] value) throws VerificationException {
+            try {
+                client.verifiedGet(key);
+            } catch (KeyNotFoundException e) {
+                // A miss is a valid outcome for a read of a random key.
+            }
+        }
+    },
+
+    SCAN("scan", false) {
+        @Override
+        void run(LedgerComplianceClient client, byte[] key, byte[] value) {
+            // The key's first half is used as prefix, so that scans return a few entries.
+            byte[] prefix = new byte[Math.max(1, key.length / 2)];
+            System.arraycopy(key, 0, prefix, 0, prefix.length);
+            client.scan(prefix, 0, SCAN_LIMIT, false);
+        }
+    },
+
+    ZADD("zAdd", false) {
+        @Override
+        void run(LedgerComplianceClient client, byte[] key, byte[] value) throws Exception {
+            client.zAdd(ZADD_SET, value.length, new String(key, StandardCharsets.UTF_8));
+        }
+    };
+
+    static final long SCAN_LIMIT = 100;
+    static final String ZADD_SET = "loadgen-set";
+
+    private final String name;
+    private final boolean verified;
+
+    Operation(String name, boolean verified) {
+        this.name = name;
+        this.verified = verified;
+    }
+
+    abstract void run(LedgerComplianceClient client, byte[] key, byte[] value) throws Exception;
+
+    String displayName() {
+        return name;
+    }
+
+    /**
+     * Tell if the operation needs server proofs (not available from the stand-in server).
+     */
+    boolean isVerified() {
+        return verified;
+    }
+
+    static Operation byName(String name) {
+        for (Operation op : values()) {
+            if (op.name.equalsIgnoreCase(name)) {
+                return op;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + name);
+    }
+
+}
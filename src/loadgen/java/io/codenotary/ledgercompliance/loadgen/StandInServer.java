@@ -0,0 +1,176 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.loadgen;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Empty;
+import io.codenotary.immudb.ImmudbProto;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import lc.schema.LcServiceGrpc;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local, in-memory stand-in for the LC server, listening on an ephemeral port.
+ * <p>
+ * It serves the unverified calls (Set, Get, Scan, ZAdd, CurrentState, Health) with the same response shapes
+ * as the real server, so the client's own overhead and its saturation point can be measured without a backend.
+ * Verified calls are not implemented (the stand-in has no Merkle tree for producing proofs).
+ */
+final class StandInServer implements AutoCloseable {
+
+    private static final ByteString ZERO_DIGEST = ByteString.copyFrom(new byte[32]);
+
+    private final Server server;
+
+    private StandInServer(Server server) {
+        this.server = server;
+    }
+
+    static StandInServer start() throws IOException {
+        Server server = ServerBuilder.forPort(0).addService(new Service()).build().start();
+        return new StandInServer(server);
+    }
+
+    int port() {
+        return server.getPort();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        server.shutdown();
+        if (!server.awaitTermination(5, TimeUnit.SECONDS)) {
+            server.shutdownNow();
+        }
+    }
+
+    private static final class Service extends LcServiceGrpc.LcServiceImplBase {
+
+        private static final Comparator<ByteString> UNSIGNED_ORDER = (a, b) -> {
+            int n = Math.min(a.size(), b.size());
+            for (int i = 0; i < n; i++) {
+                int c = (a.byteAt(i) & 0xff) - (b.byteAt(i) & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return a.size() - b.size();
+        };
+
+        private final AtomicLong txId = new AtomicLong();
+        private final ConcurrentSkipListMap<ByteString, ImmudbProto.Entry> entries =
+                new ConcurrentSkipListMap<>(UNSIGNED_ORDER);
+        private final ConcurrentSkipListMap<ByteString, Double> zEntries = new ConcurrentSkipListMap<>(UNSIGNED_ORDER);
+
+        @Override
+        public void set(ImmudbProto.SetRequest request, StreamObserver<ImmudbProto.TxMetadata> responseObserver) {
+            long tx = txId.incrementAndGet();
+            for (ImmudbProto.KeyValue kv : request.getKVsList()) {
+                entries.put(kv.getKey(), ImmudbProto.Entry.newBuilder()
+                        .setTx(tx)
+                        .setKey(kv.getKey())
+                        .setValue(kv.getValue())
+                        .build());
+            }
+            // Like the LC server, a tx holds one more entry than the ones that were set.
+            respond(responseObserver, txMetadata(tx, request.getKVsCount() + 1));
+        }
+
+        @Override
+        public void get(ImmudbProto.KeyRequest request, StreamObserver<ImmudbProto.Entry> responseObserver) {
+            ImmudbProto.Entry entry = entries.get(request.getKey());
+            if (entry == null) {
+                responseObserver.onError(Status.NOT_FOUND.withDescription("key not found").asRuntimeException());
+                return;
+            }
+            respond(responseObserver, entry);
+        }
+
+        @Override
+        public void scan(ImmudbProto.ScanRequest request, StreamObserver<ImmudbProto.Entries> responseObserver) {
+            ByteString prefix = request.getPrefix();
+            ByteString seekKey = request.getSeekKey();
+            NavigableMap<ByteString, ImmudbProto.Entry> range;
+            if (request.getDesc()) {
+                range = (seekKey.isEmpty() ? entries : entries.headMap(seekKey, true)).descendingMap();
+            } else {
+                range = entries.tailMap(UNSIGNED_ORDER.compare(seekKey, prefix) > 0 ? seekKey : prefix, true);
+            }
+            long limit = request.getLimit() == 0 ? 1000 : request.getLimit();
+            ImmudbProto.Entries.Builder result = ImmudbProto.Entries.newBuilder();
+            for (Map.Entry<ByteString, ImmudbProto.Entry> e : range.entrySet()) {
+                if (!e.getKey().startsWith(prefix)) {
+                    if (request.getDesc() && UNSIGNED_ORDER.compare(e.getKey(), prefix) > 0) {
+                        // Still above the prefix range.
+                        continue;
+                    }
+                    break;
+                }
+                result.addEntries(e.getValue());
+                if (result.getEntriesCount() >= limit) {
+                    break;
+                }
+            }
+            respond(responseObserver, result.build());
+        }
+
+        @Override
+        public void zAdd(ImmudbProto.ZAddRequest request, StreamObserver<ImmudbProto.TxMetadata> responseObserver) {
+            long tx = txId.incrementAndGet();
+            zEntries.put(request.getSet().concat(request.getKey()), request.getScore());
+            respond(responseObserver, txMetadata(tx, 1));
+        }
+
+        @Override
+        public void currentState(Empty request, StreamObserver<ImmudbProto.ImmutableState> responseObserver) {
+            respond(responseObserver, ImmudbProto.ImmutableState.newBuilder()
+                    .setTxId(txId.get())
+                    .setTxHash(ZERO_DIGEST)
+                    .build());
+        }
+
+        @Override
+        public void health(Empty request, StreamObserver<ImmudbProto.HealthResponse> responseObserver) {
+            respond(responseObserver, ImmudbProto.HealthResponse.newBuilder().setStatus(true).build());
+        }
+
+        private static ImmudbProto.TxMetadata txMetadata(long tx, int nentries) {
+            return ImmudbProto.TxMetadata.newBuilder()
+                    .setId(tx)
+                    .setPrevAlh(ZERO_DIGEST)
+                    .setTs(System.currentTimeMillis() / 1000)
+                    .setNentries(nentries)
+                    .setEH(ZERO_DIGEST)
+                    .setBlRoot(ZERO_DIGEST)
+                    .build();
+        }
+
+        private static <T> void respond(StreamObserver<T> observer, T response) {
+            observer.onNext(response);
+            observer.onCompleted();
+        }
+    }
+
+}
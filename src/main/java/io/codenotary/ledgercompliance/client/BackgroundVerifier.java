@@ -0,0 +1,121 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of threads running proof verifications off the calling thread.
+ * <p>
+ * The queue is bounded: when it is full the caller runs the verification itself, so a slow pool delays
+ * the callers rather than the tamper detection. Verifications submitted after {@link #shutdown()} run on the
+ * caller too.
+ */
+final class BackgroundVerifier {
+
+    private final ThreadPoolExecutor executor;
+    private final int maxPending;
+    private int pending;
+
+    BackgroundVerifier(int threads, int maxQueued) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        if (maxQueued <= 0) {
+            throw new IllegalArgumentException("Max queued verifications must be positive: " + maxQueued);
+        }
+        this.maxPending = threads + maxQueued;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueued),
+                r -> {
+                    Thread thread = new Thread(r, "lc-verifier-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // Unlike CallerRunsPolicy, this runs the verification even after a shutdown.
+                (r, e) -> r.run());
+    }
+
+    void submit(Runnable verification) {
+        synchronized (this) {
+            pending++;
+        }
+        execute(verification);
+    }
+
+    /**
+     * Submit a verification only if a thread or a queue slot is free for it.
+     *
+     * @return false if the verification has been dropped
+     */
+    boolean trySubmit(Runnable verification) {
+        synchronized (this) {
+            if (pending >= maxPending || executor.isShutdown()) {
+                return false;
+            }
+            pending++;
+        }
+        execute(verification);
+        return true;
+    }
+
+    private void execute(Runnable verification) {
+        executor.execute(() -> {
+            try {
+                verification.run();
+            } finally {
+                synchronized (this) {
+                    if (--pending == 0) {
+                        notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    synchronized int pending() {
+        return pending;
+    }
+
+    /**
+     * Wait for the submitted verifications to complete.
+     *
+     * @return false if some are still pending at the timeout
+     */
+    synchronized boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pending > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Stop the threads once the queued verifications have run.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+}
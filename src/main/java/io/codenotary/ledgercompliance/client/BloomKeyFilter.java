@@ -0,0 +1,132 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of the keys known to exist in the ledger.
+ * <p>
+ * {@link #mightContain} answering false means the key has never been added; true means it probably was.
+ * Bits live in an array of longs that are set with CAS, so concurrent writers never lose each other's keys.
+ */
+final class BloomKeyFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    BloomKeyFilter(long expectedKeys, double falsePositiveRate) {
+        if (expectedKeys <= 0) {
+            throw new IllegalArgumentException("Expected keys must be positive: " + expectedKeys);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1): " + falsePositiveRate);
+        }
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (ln2 * ln2));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (m + 63) >>> 6));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedKeys * ln2));
+    }
+
+    void add(byte[] key) {
+        long h1 = hash(key, 0, key.length, 0);
+        long h2 = hash(key, 0, key.length, h1);
+        for (int i = 0; i < hashCount; i++) {
+            set(index(h1, h2, i));
+        }
+    }
+
+    void add(ByteString key) {
+        // Keys are short, so a copy is cheaper than hashing through the ByteString API.
+        add(key.toByteArray());
+    }
+
+    boolean mightContain(byte[] key) {
+        long h1 = hash(key, 0, key.length, 0);
+        long h2 = hash(key, 0, key.length, h1);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(h1, h2, i);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long index(long h1, long h2, int i) {
+        long combined = h1 + i * h2;
+        return (combined & Long.MAX_VALUE) % bitCount;
+    }
+
+    private void set(long bit) {
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = bits.get(word);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, current, current | mask));
+    }
+
+    /**
+     * 64-bit hash of a byte range (the MurmurHash64A mixing scheme).
+     */
+    static long hash(byte[] data, int off, int len, long seed) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+        long h = seed ^ (len * m);
+
+        int end = off + (len & ~7);
+        for (int i = off; i < end; i += 8) {
+            long k = (data[i] & 0xffL)
+                    | (data[i + 1] & 0xffL) << 8
+                    | (data[i + 2] & 0xffL) << 16
+                    | (data[i + 3] & 0xffL) << 24
+                    | (data[i + 4] & 0xffL) << 32
+                    | (data[i + 5] & 0xffL) << 40
+                    | (data[i + 6] & 0xffL) << 48
+                    | (data[i + 7] & 0xffL) << 56;
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h ^= k;
+            h *= m;
+        }
+
+        int rem = len & 7;
+        if (rem > 0) {
+            long k = 0;
+            for (int i = rem - 1; i >= 0; i--) {
+                k = (k << 8) | (data[end + i] & 0xffL);
+            }
+            h ^= k;
+            h *= m;
+        }
+
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+        return h;
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link ValueCodec} that deflates the values above a size threshold.
+ * <p>
+ * Compressed values start with a header: the magic bytes {@code 0x00 'L' 'C' 'Z'}, a format byte and the
+ * uncompressed length (big endian int). Values below the threshold, and values that do not get smaller,
+ * are stored as they are, unless they start with the magic bytes themselves: those are stored after the magic
+ * bytes and a "stored" format byte, so that every value reads back as it was written.
+ * <p>
+ * Values written without this codec are read as they are, except for those starting with the magic bytes
+ * followed by a known format byte. Deflaters and inflaters are kept per thread.
+ */
+public class DeflateValueCodec implements ValueCodec {
+
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    static final byte[] MAGIC = {0x00, 'L', 'C', 'Z'};
+    static final byte FORMAT_STORED = 0;
+    static final byte FORMAT_DEFLATE = 1;
+    static final int STORED_HEADER_SIZE = MAGIC.length + 1;
+    static final int HEADER_SIZE = MAGIC.length + 1 + 4;
+
+    /**
+     * The largest expansion deflate can achieve (a 258-byte match per 2 bits, at best), bounding the length
+     * a header can honestly claim for its compressed bytes.
+     */
+    static final int MAX_RATIO = 1032;
+
+    private final int threshold;
+    private final ThreadLocal<Deflater> deflater;
+    private final ThreadLocal<Inflater> inflater;
+
+    public DeflateValueCodec() {
+        this(DEFAULT_THRESHOLD, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public DeflateValueCodec(int threshold) {
+        this(threshold, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param threshold the size (in bytes) from which values get compressed
+     * @param level     the {@link Deflater} compression level
+     */
+    public DeflateValueCodec(int threshold, int level) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative: " + threshold);
+        }
+        this.threshold = threshold;
+        this.deflater = ThreadLocal.withInitial(() -> new Deflater(level, true));
+        this.inflater = ThreadLocal.withInitial(() -> new Inflater(true));
+    }
+
+    @Override
+    public byte[] encode(byte[] value) {
+        if (value.length < threshold || value.length <= HEADER_SIZE) {
+            return stored(value);
+        }
+
+        Deflater def = deflater.get();
+        def.reset();
+        def.setInput(value);
+        def.finish();
+
+        // Not worth storing anything larger than the value itself.
+        byte[] out = new byte[value.length];
+        int n = HEADER_SIZE;
+        while (!def.finished() && n < out.length) {
+            n += def.deflate(out, n, out.length - n);
+        }
+        if (!def.finished()) {
+            return stored(value);
+        }
+
+        System.arraycopy(MAGIC, 0, out, 0, MAGIC.length);
+        out[MAGIC.length] = FORMAT_DEFLATE;
+        writeInt(out, MAGIC.length + 1, value.length);
+
+        byte[] stored = new byte[n];
+        System.arraycopy(out, 0, stored, 0, n);
+        return stored;
+    }
+
+    /**
+     * The value as it is, escaped with the stored format header if it starts with the magic bytes.
+     */
+    private static byte[] stored(byte[] value) {
+        if (!hasMagic(value)) {
+            return value;
+        }
+        byte[] escaped = new byte[STORED_HEADER_SIZE + value.length];
+        System.arraycopy(MAGIC, 0, escaped, 0, MAGIC.length);
+        escaped[MAGIC.length] = FORMAT_STORED;
+        System.arraycopy(value, 0, escaped, STORED_HEADER_SIZE, value.length);
+        return escaped;
+    }
+
+    @Override
+    public byte[] decode(byte[] stored) {
+        if (hasMagic(stored) && stored.length >= STORED_HEADER_SIZE && stored[MAGIC.length] == FORMAT_STORED) {
+            byte[] value = new byte[stored.length - STORED_HEADER_SIZE];
+            System.arraycopy(stored, STORED_HEADER_SIZE, value, 0, value.length);
+            return value;
+        }
+        if (!isCompressed(stored)) {
+            return stored;
+        }
+
+        int length = readInt(stored, MAGIC.length + 1);
+        if (length < 0 || length > (long) (stored.length - HEADER_SIZE) * MAX_RATIO) {
+            throw new IllegalStateException("Compressed value is corrupted: bad length " + length + ".");
+        }
+        byte[] value = new byte[length];
+
+        Inflater inf = inflater.get();
+        inf.reset();
+        inf.setInput(stored, HEADER_SIZE, stored.length - HEADER_SIZE);
+        try {
+            int n = 0;
+            while (n < length) {
+                int read = inf.inflate(value, n, length - n);
+                if (read == 0 && (inf.finished() || inf.needsInput() || inf.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != length) {
+                throw new IllegalStateException("Compressed value is truncated: " + n + " of " + length + " bytes.");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed value is corrupted.", e);
+        }
+        return value;
+    }
+
+    /**
+     * Tell if the stored bytes have been compressed by this codec.
+     */
+    public static boolean isCompressed(byte[] stored) {
+        return stored.length >= HEADER_SIZE && stored[MAGIC.length] == FORMAT_DEFLATE && hasMagic(stored);
+    }
+
+    private static boolean hasMagic(byte[] b) {
+        if (b.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (b[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16 | (b[off + 2] & 0xff) << 8 | (b[off + 3] & 0xff);
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import io.codenotary.immudb.ImmudbProto;
+import io.codenotary.immudb4j.KV;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A read-only list of {@link EntryKV} over the entries of a protobuf response (parsed, or
+ * {@link PackedEntries}). Elements are created when accessed and share the response bytes.
+ */
+final class EntriesView extends AbstractList<KV> implements RandomAccess {
+
+    private final ImmudbProto.Entries entries;
+    private final ImmudbProto.ZEntries zEntries;
+    private final PackedEntries packed;
+    private final ValueCodec codec;
+
+    EntriesView(ImmudbProto.Entries entries, ValueCodec codec) {
+        this.entries = entries;
+        this.zEntries = null;
+        this.packed = null;
+        this.codec = codec;
+    }
+
+    EntriesView(ImmudbProto.ZEntries zEntries, ValueCodec codec) {
+        this.entries = null;
+        this.zEntries = zEntries;
+        this.packed = null;
+        this.codec = codec;
+    }
+
+    EntriesView(PackedEntries packed, ValueCodec codec) {
+        this.entries = null;
+        this.zEntries = null;
+        this.packed = packed;
+        this.codec = codec;
+    }
+
+    @Override
+    public KV get(int index) {
+        if (packed != null) {
+            return newEntryKV(packed.key(index), packed.value(index), packed.tx(index), codec);
+        }
+        if (entries != null) {
+            ImmudbProto.Entry entry = entries.getEntries(index);
+            return newEntryKV(entry.getKey(), entry.getValue(), entry.getTx(), codec);
+        }
+        ImmudbProto.ZEntry zEntry = zEntries.getEntries(index);
+        return newEntryKV(zEntry.getKey(), zEntry.getEntry().getValue(), zEntry.getEntry().getTx(), codec);
+    }
+
+    static EntryKV newEntryKV(ByteString key, ByteString stored, long tx, ValueCodec codec) {
+        if (codec == null) {
+            return new EntryKV(key, stored, tx);
+        }
+        byte[] value = codec.decode(stored.toByteArray());
+        return new EntryKV(key, UnsafeByteOperations.unsafeWrap(value), stored, tx);
+    }
+
+    @Override
+    public int size() {
+        if (packed != null) {
+            return packed.size();
+        }
+        return entries != null ? entries.getEntriesCount() : zEntries.getEntriesCount();
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb4j.KV;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A KV backed by the bytes of a protobuf response.
+ * <p>
+ * {@link #getKey()} and {@link #getValue()} return a new copy on each call; the other accessors
+ * (sizes, prefix checks, {@link ByteString} and read-only {@link ByteBuffer} views) don't copy anything.
+ */
+public final class EntryKV implements KV {
+
+    private final ByteString key;
+    private final ByteString value;
+    private final ByteString stored;
+    private final long tx;
+
+    EntryKV(ByteString key, ByteString value, long tx) {
+        this(key, value, value, tx);
+    }
+
+    /**
+     * @param stored the value as stored in the ledger, when a {@link ValueCodec} decoded it into {@code value}
+     */
+    EntryKV(ByteString key, ByteString value, ByteString stored, long tx) {
+        this.key = key;
+        this.value = value;
+        this.stored = stored;
+        this.tx = tx;
+    }
+
+    @Override
+    public byte[] getKey() {
+        return key.toByteArray();
+    }
+
+    @Override
+    public byte[] getValue() {
+        return value.toByteArray();
+    }
+
+    /**
+     * The digest of the KV, as computed by immudb: sha256(key + sha256(value)).
+     * With a {@link ValueCodec}, the digest is the one of the stored (encoded) value.
+     */
+    @Override
+    public byte[] digest() {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(stored.asReadOnlyByteBuffer());
+            byte[] valueDigest = md.digest();
+            md.update(key.asReadOnlyByteBuffer());
+            md.update(valueDigest);
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The id of the transaction in which the entry has been set.
+     */
+    public long getTx() {
+        return tx;
+    }
+
+    public ByteString getKeyBytes() {
+        return key;
+    }
+
+    public ByteString getValueBytes() {
+        return value;
+    }
+
+    public ByteBuffer keyBuffer() {
+        return key.asReadOnlyByteBuffer();
+    }
+
+    public ByteBuffer valueBuffer() {
+        return value.asReadOnlyByteBuffer();
+    }
+
+    public int keyLength() {
+        return key.size();
+    }
+
+    public int valueLength() {
+        return value.size();
+    }
+
+    public boolean keyStartsWith(byte[] prefix) {
+        if (prefix.length > key.size()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (key.byteAt(i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean valueStartsWith(byte[] prefix) {
+        if (prefix.length > value.size()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (value.byteAt(i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EntryKV)) {
+            return false;
+        }
+        EntryKV other = (EntryKV) o;
+        return key.equals(other.key) && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * key.hashCode() + value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "EntryKV{key=" + key + ", value=" + value + ", tx=" + tx + "}";
+    }
+
+}
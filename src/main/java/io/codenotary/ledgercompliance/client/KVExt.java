@@ -0,0 +1,101 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.Timestamp;
+import io.codenotary.immudb.ImmudbProto;
+
+import java.time.Instant;
+
+/**
+ * An entry returned by the Ledger Compliance extension calls (HistoryExt, ZScanExt, VerifiableGetExt),
+ * together with the timestamp the LC backend assigned to it.
+ * <p>
+ * The timestamp is kept as received and converted to an {@link Instant} only when asked for;
+ * comparisons against a time window can use {@link #isBefore(long, int)} without any conversion.
+ */
+public class KVExt {
+
+    private final ImmudbProto.Entry entry;
+    private final Timestamp timestamp;
+    private final ValueCodec codec;
+
+    private Instant instant;
+
+    KVExt(ImmudbProto.Entry entry, Timestamp timestamp, ValueCodec codec) {
+        this.entry = entry;
+        this.timestamp = timestamp;
+        this.codec = codec;
+    }
+
+    public byte[] getKey() {
+        return entry.getKey().toByteArray();
+    }
+
+    public byte[] getValue() {
+        byte[] stored = entry.getValue().toByteArray();
+        return codec == null ? stored : codec.decode(stored);
+    }
+
+    /**
+     * The id of the transaction in which the entry has been set.
+     */
+    public long getTx() {
+        return entry.getTx();
+    }
+
+    /**
+     * The timestamp assigned by the LC backend, or null if the backend did not send any.
+     */
+    public Instant getTimestamp() {
+        if (instant == null && timestamp != null) {
+            instant = Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos());
+        }
+        return instant;
+    }
+
+    public long getTimestampSeconds() {
+        return timestamp == null ? 0 : timestamp.getSeconds();
+    }
+
+    public int getTimestampNanos() {
+        return timestamp == null ? 0 : timestamp.getNanos();
+    }
+
+    /**
+     * Tell if the entry timestamp comes strictly before the provided point in time.
+     */
+    public boolean isBefore(long seconds, int nanos) {
+        return compare(timestamp, seconds, nanos) < 0;
+    }
+
+    /**
+     * Tell if the entry timestamp comes strictly after the provided point in time.
+     */
+    public boolean isAfter(long seconds, int nanos) {
+        return compare(timestamp, seconds, nanos) > 0;
+    }
+
+    static int compare(Timestamp ts, long seconds, int nanos) {
+        long s = ts == null ? 0 : ts.getSeconds();
+        int n = ts == null ? 0 : ts.getNanos();
+        if (s != seconds) {
+            return Long.compare(s, seconds);
+        }
+        return Integer.compare(n, nanos);
+    }
+
+}
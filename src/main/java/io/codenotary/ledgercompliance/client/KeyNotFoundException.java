@@ -0,0 +1,34 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
+/**
+ * Thrown by the get operations when the requested key does not exist in the ledger,
+ * either as reported by the server or as answered locally by the client key filter.
+ * <p>
+ * It carries the NOT_FOUND status the server reports misses with, so that callers handling a
+ * {@link StatusRuntimeException} (as thrown for misses before this exception existed) keep working.
+ */
+public class KeyNotFoundException extends StatusRuntimeException {
+
+    public KeyNotFoundException() {
+        super(Status.NOT_FOUND.withDescription(LedgerComplianceExceptions.KEY_NOT_FOUND));
+    }
+
+}
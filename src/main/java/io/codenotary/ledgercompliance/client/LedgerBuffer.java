@@ -0,0 +1,152 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that {@link LedgerCodec}s write into.
+ * Multi-byte numbers are written big endian, so that the byte order of non-negative numbers is their natural order.
+ * <p>
+ * Buffers are reused (one per thread and {@link LedgerMap}) and are not thread-safe.
+ */
+public final class LedgerBuffer {
+
+    static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Buffers grown beyond this size are released on reset, so that a single large value does not stay around.
+     */
+    static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    private byte[] bytes;
+    private int size;
+
+    LedgerBuffer() {
+        this.bytes = new byte[INITIAL_CAPACITY];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public LedgerBuffer writeByte(int b) {
+        ensure(1);
+        bytes[size++] = (byte) b;
+        return this;
+    }
+
+    public LedgerBuffer writeBytes(byte[] src) {
+        return writeBytes(src, 0, src.length);
+    }
+
+    public LedgerBuffer writeBytes(byte[] src, int off, int len) {
+        ensure(len);
+        System.arraycopy(src, off, bytes, size, len);
+        size += len;
+        return this;
+    }
+
+    public LedgerBuffer writeInt(int v) {
+        ensure(4);
+        bytes[size] = (byte) (v >>> 24);
+        bytes[size + 1] = (byte) (v >>> 16);
+        bytes[size + 2] = (byte) (v >>> 8);
+        bytes[size + 3] = (byte) v;
+        size += 4;
+        return this;
+    }
+
+    public LedgerBuffer writeLong(long v) {
+        writeInt((int) (v >>> 32));
+        return writeInt((int) v);
+    }
+
+    public LedgerBuffer writeDouble(double v) {
+        return writeLong(Double.doubleToLongBits(v));
+    }
+
+    /**
+     * Append the UTF-8 encoding of the provided chars (unpaired surrogates are written as '?').
+     */
+    public LedgerBuffer writeUtf8(CharSequence s) {
+        int len = s.length();
+        ensure(len);
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                ensure(1);
+                bytes[size++] = (byte) c;
+            } else if (c < 0x800) {
+                ensure(2);
+                bytes[size++] = (byte) (0xc0 | c >>> 6);
+                bytes[size++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                ensure(4);
+                bytes[size++] = (byte) (0xf0 | cp >>> 18);
+                bytes[size++] = (byte) (0x80 | cp >>> 12 & 0x3f);
+                bytes[size++] = (byte) (0x80 | cp >>> 6 & 0x3f);
+                bytes[size++] = (byte) (0x80 | cp & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                ensure(1);
+                bytes[size++] = '?';
+            } else {
+                ensure(3);
+                bytes[size++] = (byte) (0xe0 | c >>> 12);
+                bytes[size++] = (byte) (0x80 | c >>> 6 & 0x3f);
+                bytes[size++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * A copy of the written bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * Make room for the provided number of bytes, to be written directly into {@link #array()}.
+     */
+    void ensure(int extra) {
+        int required = size + extra;
+        if (required < 0) {
+            throw new IllegalStateException("Buffer size overflow.");
+        }
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length << 1));
+        }
+    }
+
+    void skip(int n) {
+        size += n;
+    }
+
+    void reset() {
+        size = 0;
+        if (bytes.length > MAX_RETAINED_CAPACITY) {
+            bytes = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+}
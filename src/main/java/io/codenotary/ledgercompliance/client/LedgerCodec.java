@@ -0,0 +1,39 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts the keys or values of a {@link LedgerMap} from and to their ledger bytes.
+ * <p>
+ * Codecs write into a reusable {@link LedgerBuffer} and read from a (possibly read-only) view
+ * of the response bytes, so they do not need any intermediate array. See {@link LedgerCodecs}
+ * for the provided ones.
+ */
+public interface LedgerCodec<T> {
+
+    /**
+     * Append the bytes of the provided object to the buffer.
+     */
+    void encode(T object, LedgerBuffer out);
+
+    /**
+     * Read an object from the remaining bytes of the buffer.
+     */
+    T decode(ByteBuffer in);
+
+}
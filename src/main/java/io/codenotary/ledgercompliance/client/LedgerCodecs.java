@@ -0,0 +1,142 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The provided {@link LedgerCodec}s. Custom binary formats can implement {@link LedgerCodec} directly,
+ * writing with the {@link LedgerBuffer} methods and reading with the {@link ByteBuffer} ones.
+ */
+public final class LedgerCodecs {
+
+    private static final LedgerCodec<byte[]> RAW = new LedgerCodec<byte[]>() {
+        @Override
+        public void encode(byte[] object, LedgerBuffer out) {
+            out.writeBytes(object);
+        }
+
+        @Override
+        public byte[] decode(ByteBuffer in) {
+            byte[] bytes = new byte[in.remaining()];
+            in.get(bytes);
+            return bytes;
+        }
+    };
+
+    private static final LedgerCodec<String> UTF8 = new LedgerCodec<String>() {
+        @Override
+        public void encode(String object, LedgerBuffer out) {
+            out.writeUtf8(object);
+        }
+
+        @Override
+        public String decode(ByteBuffer in) {
+            return readUtf8(in);
+        }
+    };
+
+    private static final LedgerCodec<Long> INT64 = new LedgerCodec<Long>() {
+        @Override
+        public void encode(Long object, LedgerBuffer out) {
+            out.writeLong(object);
+        }
+
+        @Override
+        public Long decode(ByteBuffer in) {
+            return in.getLong();
+        }
+    };
+
+    private LedgerCodecs() {
+    }
+
+    /**
+     * The bytes, as they are.
+     */
+    public static LedgerCodec<byte[]> raw() {
+        return RAW;
+    }
+
+    /**
+     * Strings, as UTF-8.
+     */
+    public static LedgerCodec<String> utf8() {
+        return UTF8;
+    }
+
+    /**
+     * Longs, as 8 big endian bytes (keys of non-negative numbers are then scanned in numeric order).
+     */
+    public static LedgerCodec<Long> int64() {
+        return INT64;
+    }
+
+    /**
+     * Protobuf messages, serialized directly into the buffer.
+     *
+     * @param parser the message parser, e.g. {@code MyMessage.parser()}
+     */
+    public static <T extends MessageLite> LedgerCodec<T> protobuf(Parser<T> parser) {
+        return new LedgerCodec<T>() {
+            @Override
+            public void encode(T object, LedgerBuffer out) {
+                int n = object.getSerializedSize();
+                out.ensure(n);
+                CodedOutputStream cos = CodedOutputStream.newInstance(out.array(), out.size(), n);
+                try {
+                    object.writeTo(cos);
+                    cos.flush();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to serialize the message.", e);
+                }
+                out.skip(n);
+            }
+
+            @Override
+            public T decode(ByteBuffer in) {
+                try {
+                    return parser.parseFrom(in);
+                } catch (InvalidProtocolBufferException e) {
+                    throw new IllegalStateException("Failed to parse the message.", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Read the remaining bytes of the buffer as a UTF-8 string.
+     */
+    public static String readUtf8(ByteBuffer in) {
+        int n = in.remaining();
+        if (in.hasArray()) {
+            String s = new String(in.array(), in.arrayOffset() + in.position(), n, StandardCharsets.UTF_8);
+            in.position(in.limit());
+            return s;
+        }
+        byte[] bytes = new byte[n];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -16,27 +16,55 @@ limitations under the License.
 
 package io.codenotary.ledgercompliance.client;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Empty;
 import io.codenotary.immudb.ImmudbProto;
 import io.codenotary.immudb4j.*;
 import io.codenotary.immudb4j.crypto.CryptoUtils;
-import io.codenotary.immudb4j.crypto.DualProof;
-import io.codenotary.immudb4j.crypto.InclusionProof;
 import io.codenotary.immudb4j.exceptions.CorruptedDataException;
 import io.codenotary.immudb4j.exceptions.VerificationException;
+import io.codenotary.ledgercompliance.client.interceptor.AdaptiveConcurrencyLimit;
 import io.codenotary.ledgercompliance.client.interceptor.ApiKeyInterceptor;
+import io.codenotary.ledgercompliance.client.interceptor.CircuitBreaker;
+import io.codenotary.ledgercompliance.client.interceptor.CompressionInterceptor;
+import io.codenotary.ledgercompliance.client.interceptor.FlightRecorderInterceptor;
+import io.codenotary.ledgercompliance.client.interceptor.OperationClass;
+import io.codenotary.ledgercompliance.client.interceptor.OverloadProtectionInterceptor;
+import io.codenotary.ledgercompliance.client.jfr.FlightRecorderSupport;
+import io.codenotary.ledgercompliance.client.jfr.ProofVerificationEvent;
+import io.codenotary.ledgercompliance.client.jfr.StatePersistEvent;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ConnectivityState;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCalls;
 import lc.schema.Lc;
 import lc.schema.LcServiceGrpc;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
 
 import static io.codenotary.ledgercompliance.client.LedgerComplianceExceptions.CORRUPTED_DATA;
 
@@ -49,11 +77,28 @@ import static io.codenotary.ledgercompliance.client.LedgerComplianceExceptions.C
  */
 public class LedgerComplianceClient {
 
+    private static final byte SORTED_SET_KEY_PREFIX = 1;
+    private static final int KEY_FILTER_BOOTSTRAP_PAGE_SIZE = 1000;
+    private static final int DEFAULT_WARM_UP_ROUNDS = 10000;
+
     private ManagedChannel channel;
     private final LcServiceGrpc.LcServiceBlockingStub stub;
+    private final LcServiceGrpc.LcServiceFutureStub futureStub;
     private final String serverId;
     private final String apiKey;
     private final ImmuStateHolder stateHolder;
+    // Serializes the state advances (see advanceState).
+    private final Object stateLock = new Object();
+    private final BloomKeyFilter keyFilter;
+    private final ValueCodec valueCodec;
+    private final ValueDigestCache writeCache;
+    private final LongAdder skippedWrites = new LongAdder();
+    private final BackgroundVerifier backgroundVerifier;
+    private final TamperListener tamperListener;
+    private final boolean optimisticReads;
+    private final ReadSampler readSampler;
+    private final TamperListener sampleTamperListener;
+    private final Channel entriesChannel;
 
     /**
      * Create a new CNLC Java Client instance based on the provided builder.
@@ -63,7 +108,25 @@ public class LedgerComplianceClient {
                 .encodeToString((builder.serverUrl + builder.serverPort).getBytes(StandardCharsets.UTF_8));
         this.apiKey = builder.getApiKey();
         this.stateHolder = builder.getStateHolder();
+        this.keyFilter = builder.keyFilterExpectedKeys > 0
+                ? new BloomKeyFilter(builder.keyFilterExpectedKeys, builder.keyFilterFalsePositiveRate)
+                : null;
+        this.valueCodec = builder.valueCodec;
+        this.writeCache = builder.skipUnchangedMaxKeys > 0
+                ? new ValueDigestCache(builder.skipUnchangedMaxKeys)
+                : null;
+        this.optimisticReads = builder.tamperListener != null;
+        this.tamperListener = builder.tamperListener;
+        this.readSampler = builder.sampleTamperListener != null
+                ? new ReadSampler(builder.sampledFraction, builder.sampledMaxPerSecond)
+                : null;
+        this.sampleTamperListener = builder.sampleTamperListener;
+        this.backgroundVerifier = optimisticReads || readSampler != null
+                ? new BackgroundVerifier(builder.verifierThreads, builder.verifierMaxQueued)
+                : null;
         this.stub = createStubFrom(builder);
+        this.futureStub = LcServiceGrpc.newFutureStub(channel);
+        this.entriesChannel = builder.directEntriesParsing ? channel : null;
     }
 
     /**
@@ -82,18 +145,84 @@ public class LedgerComplianceClient {
             managedChannelBuilder = managedChannelBuilder.usePlaintext();
         }
 
-        channel = managedChannelBuilder
-                .intercept(new ApiKeyInterceptor(apiKey))
-                .build();
+        if (!builder.compressedMethods.isEmpty()) {
+            managedChannelBuilder = managedChannelBuilder.intercept(
+                    new CompressionInterceptor(builder.compressor, builder.compressedMethods));
+        }
+
+        if (FlightRecorderSupport.AVAILABLE) {
+            managedChannelBuilder = managedChannelBuilder.intercept(new FlightRecorderInterceptor());
+        }
+
+        managedChannelBuilder = managedChannelBuilder.intercept(new ApiKeyInterceptor(apiKey));
+
+        // Added last for being called first: rejected calls don't go through the other interceptors.
+        if (!builder.concurrencyLimits.isEmpty() || !builder.circuitBreakers.isEmpty()) {
+            managedChannelBuilder = managedChannelBuilder.intercept(
+                    new OverloadProtectionInterceptor(builder.concurrencyLimits, builder.circuitBreakers));
+        }
+
+        channel = managedChannelBuilder.build();
 
         return LcServiceGrpc.newBlockingStub(channel);
     }
 
+    /**
+     * Warm the client up with the default settings: 10000 verification rounds, 30 seconds for connecting.
+     */
+    public void warmUp() {
+        warmUp(DEFAULT_WARM_UP_ROUNDS, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Prepare the client for serving its first requests as fast as the following ones:
+     * connect to the server and wait for the connection to be ready, load (or fetch) the ledger state and
+     * run synthetic proof verifications, so that the verification code is loaded and JIT-compiled.
+     *
+     * @param verificationRounds the number of synthetic verifications (they don't involve the server)
+     * @param timeout            the maximum time to wait for the connection
+     */
+    public void warmUp(int verificationRounds, long timeout, TimeUnit unit) {
+        awaitReady(System.nanoTime() + unit.toNanos(timeout));
+        state();
+        SyntheticProofs.verify(verificationRounds);
+    }
+
+    private void awaitReady(long deadline) {
+        ManagedChannel ch;
+        synchronized (this) {
+            ch = channel;
+        }
+        if (ch == null) {
+            throw new IllegalStateException("The client is shut down.");
+        }
+        ConnectivityState state = ch.getState(true);
+        while (state != ConnectivityState.READY) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || state == ConnectivityState.SHUTDOWN) {
+                throw new RuntimeException("The connection is not ready (" + state + ").");
+            }
+            CountDownLatch changed = new CountDownLatch(1);
+            ch.notifyWhenStateChanged(state, changed::countDown);
+            try {
+                changed.await(remaining, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e.getMessage());
+            }
+            // After a failure the channel may go idle: keep asking for a connection.
+            state = ch.getState(true);
+        }
+    }
+
     /**
      * Shutdown the client: terminate any server connection and release resources.
      * After this call, a new client instance needs to be created, if needed.
      */
     public synchronized void shutdown() {
+        if (backgroundVerifier != null) {
+            backgroundVerifier.shutdown();
+        }
         channel.shutdown();
         channel = null;
     }
@@ -115,16 +244,49 @@ public class LedgerComplianceClient {
         private String apiKey;
         private ImmuStateHolder stateHolder;
         private boolean useTLS;
+        private long keyFilterExpectedKeys;
+        private double keyFilterFalsePositiveRate;
+        private ValueCodec valueCodec;
+        private String compressor;
+        private Set<String> compressedMethods;
+        private final Map<OperationClass, AdaptiveConcurrencyLimit> concurrencyLimits;
+        private final Map<OperationClass, CircuitBreaker> circuitBreakers;
+        private int warmUpRounds;
+        private long warmUpTimeoutMillis;
+        private int skipUnchangedMaxKeys;
+        private TamperListener tamperListener;
+        private int verifierThreads;
+        private int verifierMaxQueued;
+        private double sampledFraction;
+        private int sampledMaxPerSecond;
+        private TamperListener sampleTamperListener;
+        private boolean directEntriesParsing;
 
         private LedgerComplianceClientBuilder() {
             this.serverUrl = "localhost";
             this.serverPort = 3322;
             this.stateHolder = new SerializableImmuStateHolder();
             this.useTLS = true;
+            this.compressedMethods = Collections.emptySet();
+            this.concurrencyLimits = new EnumMap<>(OperationClass.class);
+            this.circuitBreakers = new EnumMap<>(OperationClass.class);
+            this.warmUpRounds = -1;
+            this.verifierThreads = 1;
+            this.verifierMaxQueued = 10000;
         }
 
         public LedgerComplianceClient build() {
-            return new LedgerComplianceClient(this);
+            LedgerComplianceClient client = new LedgerComplianceClient(this);
+            if (warmUpRounds >= 0) {
+                try {
+                    client.warmUp(warmUpRounds, warmUpTimeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (RuntimeException | Error e) {
+                    // The caller gets no client to shut down.
+                    client.shutdown();
+                    throw e;
+                }
+            }
+            return client;
         }
 
         public String getServerUrl() {
@@ -171,6 +333,153 @@ public class LedgerComplianceClient {
             this.useTLS = useTLS;
             return this;
         }
+
+        /**
+         * Keep a local filter of the existing keys, so that reads of keys that surely don't exist are
+         * answered without a server round trip. The filter learns the keys written and read through the client,
+         * and those loaded with {@link LedgerComplianceClient#bootstrapKeyFilter(byte[])}.
+         * <p>
+         * Use it only if the keys written by others (after the bootstrap) are not expected to be read.
+         *
+         * @param expectedKeys      the number of keys the filter is sized for
+         * @param falsePositiveRate the accepted rate of misses that still go to the server, e.g. 0.01
+         */
+        public LedgerComplianceClientBuilder withKeyFilter(long expectedKeys, double falsePositiveRate) {
+            this.keyFilterExpectedKeys = expectedKeys;
+            this.keyFilterFalsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        /**
+         * Encode the values on write (and decode them on read) with the provided codec,
+         * e.g. a {@link DeflateValueCodec}. The ledger stores, and the proofs cover, the encoded values.
+         */
+        public LedgerComplianceClientBuilder withValueCodec(ValueCodec valueCodec) {
+            this.valueCodec = valueCodec;
+            return this;
+        }
+
+        /**
+         * Compress the gRPC requests of the provided methods with the given compressor (e.g. "gzip").
+         * Methods are given by their bare name, as in the service definition (e.g. "Set", "VerifiableSet").
+         */
+        public LedgerComplianceClientBuilder withCallCompression(String compressor, String... methods) {
+            this.compressor = compressor;
+            this.compressedMethods = new HashSet<>(Arrays.asList(methods));
+            return this;
+        }
+
+        /**
+         * Limit the concurrent calls of the provided class. Calls over the limit fail immediately
+         * (RESOURCE_EXHAUSTED) instead of queueing up on a slow server.
+         */
+        public LedgerComplianceClientBuilder withConcurrencyLimit(OperationClass operationClass,
+                                                                 AdaptiveConcurrencyLimit limit) {
+            this.concurrencyLimits.put(operationClass, limit);
+            return this;
+        }
+
+        /**
+         * Stop sending calls of the provided class for a while after repeated UNAVAILABLE or DEADLINE_EXCEEDED
+         * results. Calls rejected by an open breaker fail immediately (UNAVAILABLE).
+         */
+        public LedgerComplianceClientBuilder withCircuitBreaker(OperationClass operationClass,
+                                                               CircuitBreaker circuitBreaker) {
+            this.circuitBreakers.put(operationClass, circuitBreaker);
+            return this;
+        }
+
+        /**
+         * Make {@link #build()} connect eagerly and warm the client up (see {@link LedgerComplianceClient#warmUp}).
+         */
+        public LedgerComplianceClientBuilder withWarmUp(int verificationRounds, long timeout, TimeUnit unit) {
+            if (verificationRounds < 0) {
+                throw new IllegalArgumentException("Verification rounds must not be negative: " + verificationRounds);
+            }
+            this.warmUpRounds = verificationRounds;
+            this.warmUpTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * Skip the {@code set} calls writing the value a key is known to have already, as recorded by the latest
+         * writes and reads of this client for up to the provided number of keys (see {@link #getSkippedWrites}).
+         * <p>
+         * Use it only if the keys are not written by others: a change made by another client goes unnoticed.
+         */
+        public LedgerComplianceClientBuilder withSkipUnchangedWrites(int maxKeys) {
+            if (maxKeys <= 0) {
+                throw new IllegalArgumentException("Max keys must be positive: " + maxKeys);
+            }
+            this.skipUnchangedMaxKeys = maxKeys;
+            return this;
+        }
+
+        /**
+         * Make {@code verifiedGet} and {@code verifiedGetAt} return the entry as soon as it is received, its proofs
+         * being verified in the background. A failed verification is reported to the server with
+         * {@link LedgerComplianceClient#reportTamper} and then to the provided listener; the local state only
+         * advances once the proofs have been verified.
+         * <p>
+         * Use it where data may be used before it is known to be untampered, as long as tampering is detected
+         * shortly after. Verifications run on a single thread, see {@link #withVerifierThreads}.
+         */
+        public LedgerComplianceClientBuilder withOptimisticVerifiedReads(TamperListener listener) {
+            this.tamperListener = listener;
+            return this;
+        }
+
+        /**
+         * Read the responses of {@code scan}, {@code history} and {@code getAll} straight from the transport
+         * into a single buffer, indexed in place, instead of parsing them into protobuf messages: the returned
+         * entries are views over that buffer. It cuts allocations (and GC pressure) for large responses.
+         */
+        public LedgerComplianceClientBuilder withDirectEntriesParsing(boolean directEntriesParsing) {
+            this.directEntriesParsing = directEntriesParsing;
+            return this;
+        }
+
+        /**
+         * Verify in the background a sample of the entries returned by {@code get}, {@code getAll} and
+         * {@code scan}: each of them is read again, at the same tx, with a verified get, and compared with the
+         * verified entry. Mismatches and failed proofs are reported to the server with
+         * {@link LedgerComplianceClient#reportTamper} and then to the provided listener.
+         * <p>
+         * The reads do not wait for the verifications: when the budget or the verifier queue (see
+         * {@link #withVerifierThreads}) are exhausted, the picked reads are skipped. See
+         * {@link LedgerComplianceClient#getVerificationCoverage()} for the share of reads actually verified.
+         *
+         * @param fraction     the fraction of the reads to verify, in (0, 1]
+         * @param maxPerSecond the maximum verifications per second, 0 for no limit
+         */
+        public LedgerComplianceClientBuilder withSampledVerification(double fraction, int maxPerSecond,
+                                                                     TamperListener listener) {
+            if (fraction <= 0 || fraction > 1) {
+                throw new IllegalArgumentException("Sampled fraction must be in (0, 1]: " + fraction);
+            }
+            if (maxPerSecond < 0) {
+                throw new IllegalArgumentException("Max verifications per second must not be negative: "
+                        + maxPerSecond);
+            }
+            this.sampledFraction = fraction;
+            this.sampledMaxPerSecond = maxPerSecond;
+            this.sampleTamperListener = listener;
+            return this;
+        }
+
+        /**
+         * The threads verifying proofs in the background, and the verifications that may be queued for them
+         * (1 and 10000 by default). When the queue is full, an optimistic read is verified by the reading thread,
+         * while a sampled read is not verified at all.
+         */
+        public LedgerComplianceClientBuilder withVerifierThreads(int threads, int maxQueued) {
+            if (threads <= 0 || maxQueued <= 0) {
+                throw new IllegalArgumentException("Verifier threads and max queued verifications must be positive.");
+            }
+            this.verifierThreads = threads;
+            this.verifierMaxQueued = maxQueued;
+            return this;
+        }
     }
 
     /**
@@ -181,7 +490,7 @@ public class LedgerComplianceClient {
         ImmuState state = stateHolder.getState(serverId, apiKey);
         if (state == null) {
             state = currentState();
-            stateHolder.setState(serverId, state);
+            advanceState(state);
         }
         return state;
     }
@@ -215,23 +524,67 @@ public class LedgerComplianceClient {
      * Set the provided key and value pair into the connected ledger.
      */
     public void set(byte[] key, byte[] value) {
-        ImmudbProto.KeyValue kv = ImmudbProto.KeyValue
-                .newBuilder()
-                .setKey(ByteString.copyFrom(key))
-                .setValue(ByteString.copyFrom(value))
-                .build();
-        ImmudbProto.SetRequest req = ImmudbProto.SetRequest.newBuilder().addKVs(kv).build();
-        ImmudbProto.TxMetadata txMd;
-        try {
-            txMd = stub.set(req);
-        } catch (StatusRuntimeException e) {
-            throw new RuntimeException(e.getMessage());
+        set(key, ByteString.copyFrom(key), value);
+    }
+
+    /**
+     * Set the provided key and value pair into the connected ledger.
+     */
+    public void set(PreparedKey key, byte[] value) {
+        set(key.bytes, key.byteString, value);
+    }
+
+    private void set(byte[] key, ByteString keyBS, byte[] value) {
+        ValueDigestCache.Ticket ticket = null;
+        if (writeCache != null) {
+            ticket = writeCache.beginWrite(key, value, true);
+            if (ticket == null) {
+                skippedWrites.increment();
+                return;
+            }
         }
-        if (txMd.getNentries() != 2) {
-            throw new RuntimeException(CORRUPTED_DATA);
+        boolean written = false;
+        try {
+            ImmudbProto.KeyValue kv = ImmudbProto.KeyValue
+                    .newBuilder()
+                    .setKey(keyBS)
+                    .setValue(ByteString.copyFrom(encodeValue(value)))
+                    .build();
+            ImmudbProto.SetRequest req = ImmudbProto.SetRequest.newBuilder().addKVs(kv).build();
+            ImmudbProto.TxMetadata txMd;
+            try {
+                txMd = stub.set(req);
+            } catch (StatusRuntimeException e) {
+                throw new RuntimeException(e.getMessage());
+            }
+            if (txMd.getNentries() != 2) {
+                throw new RuntimeException(CORRUPTED_DATA);
+            }
+            learnKey(key);
+            written = true;
+        } finally {
+            if (ticket != null) {
+                writeCache.endWrite(ticket, written);
+            }
         }
     }
 
+    /**
+     * Start a writer keeping up to the provided number of verified sets in flight (see
+     * {@link PipelinedVerifiedWriter}).
+     */
+    public PipelinedVerifiedWriter pipelinedVerifiedWriter(int depth) {
+        return PipelinedVerifiedWriter.newBuilder(this).withDepth(depth).start();
+    }
+
+    /**
+     * The number of {@code set} calls skipped because the value was unchanged (see
+     * {@link LedgerComplianceClientBuilder#withSkipUnchangedWrites}).
+     */
+    public long getSkippedWrites() {
+        return skippedWrites.sum();
+    }
+
     /**
      * @deprecated This method is deprecated and it will be removed in the next release. Please use verifiedSet instead.
      */
@@ -259,10 +612,40 @@ public class LedgerComplianceClient {
      * (verified, tamper-proof detectable) manner.
      */
     public TxMetadata verifiedSet(byte[] key, byte[] value) throws VerificationException {
+        return verifiedSet(key, ByteString.copyFrom(key), CryptoUtils.encodeKey(key), value);
+    }
+
+    /**
+     * Set the provided key and value pair into the connected ledger in a "safe"
+     * (verified, tamper-proof detectable) manner.
+     */
+    public TxMetadata verifiedSet(PreparedKey key, byte[] value) throws VerificationException {
+        return verifiedSet(key.bytes, key.byteString, key.encoded, value);
+    }
+
+    private TxMetadata verifiedSet(byte[] key, ByteString keyBS, byte[] encodedKey, byte[] value)
+            throws VerificationException {
+
+        ValueDigestCache.Ticket ticket = writeCache == null ? null : writeCache.beginWrite(key, value, false);
+        boolean written = false;
+        try {
+            TxMetadata txMd = verifiedSetUncached(key, keyBS, encodedKey, value);
+            written = true;
+            return txMd;
+        } finally {
+            if (ticket != null) {
+                writeCache.endWrite(ticket, written);
+            }
+        }
+    }
+
+    private TxMetadata verifiedSetUncached(byte[] key, ByteString keyBS, byte[] encodedKey, byte[] value)
+            throws VerificationException {
 
         ImmuState state = state();
+        byte[] stored = encodeValue(value);
         ImmudbProto.KeyValue kv = ImmudbProto.KeyValue.newBuilder()
-                .setKey(ByteString.copyFrom(key)).setValue(ByteString.copyFrom(value)).build();
+                .setKey(keyBS).setValue(ByteString.copyFrom(stored)).build();
         ImmudbProto.VerifiableSetRequest vSetReq = ImmudbProto.VerifiableSetRequest.newBuilder()
                 .setSetRequest(ImmudbProto.SetRequest.newBuilder().addKVs(kv).build())
                 .setProveSinceTx(state.txId)
@@ -274,46 +657,122 @@ public class LedgerComplianceClient {
                     String.format("Got back %d entries (in tx metadata) instead of 1.", ne - 1)
             );
         }
-        Tx tx;
-        InclusionProof inclusionProof;
-        try {
-            tx = Tx.valueOf(vtx.getTx());
-        } catch (Exception e) {
-            throw new VerificationException("Failed to extract the transaction.", e);
-        }
+        TxMetadata txMd = verifyTx(vtx, state, encodedKey, ProofVerifier.VALUE_PREFIX, stored);
+        learnKey(key);
+        return txMd;
+    }
 
-        try {
-            inclusionProof = tx.proof(CryptoUtils.encodeKey(key));
-        } catch (NoSuchElementException | IllegalArgumentException e) {
-            throw new VerificationException("Failed to create the inclusion proof.", e);
-        }
+    /**
+     * Verify that the provided (encoded) KV is included in the tx of a VerifiableTx and that the tx is consistent
+     * with the provided (trusted) state. If all good, the local state is advanced to the tx.
+     * <p>
+     * The KV is given as its encoded key, plus the prefix and the bytes of its value, so that its digest is
+     * computed without building the encoded copies.
+     */
+    private TxMetadata verifyTx(ImmudbProto.VerifiableTx vtx, ImmuState state, byte[] proofKey,
+                                byte[] valuePrefix, byte[] value) throws VerificationException {
+
+        ProofVerifier verifier = ProofVerifier.get();
+        ImmudbProto.Tx tx = vtx.getTx();
+        long targetId = tx.getMetadata().getId();
 
-        if (!CryptoUtils.verifyInclusion(inclusionProof, CryptoUtils.encodeKV(key, value), tx.eh())) {
+        byte[] kvDigest = verifier.kvDigest(proofKey, valuePrefix, value);
+        if (!verifyTxInclusion(verifier, tx, proofKey, kvDigest)) {
             throw new VerificationException("Data is corrupted (verify inclusion failed)");
         }
 
-        long sourceId = state.txId;
-        long targetId = tx.getId();
-        byte[] sourceAlh = CryptoUtils.digestFrom(state.txHash);
-        byte[] targetAlh = tx.getAlh();
+        byte[] targetAlh = verifier.alh(tx.getMetadata());
+        if (targetAlh == null) {
+            throw new VerificationException("Failed to extract the transaction.");
+        }
 
         if (state.txId > 0) {
-            if (!CryptoUtils.verifyDualProof(
-                    DualProof.valueOf(vtx.getDualProof()),
-                    sourceId,
-                    targetId,
-                    sourceAlh,
-                    targetAlh
-            )) {
+            if (!verifyDualProof(verifier, vtx.getDualProof(), state.txId, targetId, state.txHash, targetAlh)) {
                 throw new VerificationException("Data is corrupted (dual proof verification failed).");
             }
         }
 
-        ImmuState newState = new ImmuState(apiKey, targetId, targetAlh, vtx.getSignature().getSignature().toByteArray());
+        if (targetId != state.txId || !Arrays.equals(targetAlh, state.txHash)) {
+            advanceState(new ImmuState(apiKey, targetId, targetAlh.clone(),
+                    vtx.getSignature().getSignature().toByteArray()));
+        }
+
+        return TxMetadata.valueOf(tx.getMetadata());
+    }
+
+    // The methods below wrap the verification and state steps with Flight Recorder events.
+    // Events are disabled by default: the cost is then a (scalar replaced) event instance and a flag check.
+
+    private static boolean verifyTxInclusion(ProofVerifier verifier, ImmudbProto.Tx tx, byte[] proofKey,
+                                             byte[] kvDigest) {
+        if (!FlightRecorderSupport.AVAILABLE) {
+            return verifier.verifyTxInclusion(tx, proofKey, kvDigest);
+        }
+        ProofVerificationEvent event = new ProofVerificationEvent();
+        event.begin();
+        boolean verified = verifier.verifyTxInclusion(tx, proofKey, kvDigest);
+        event.end();
+        commitInclusionEvent(event, tx.getMetadata().getId(), verified);
+        return verified;
+    }
+
+    private static boolean verifyInclusion(ProofVerifier verifier, ImmudbProto.InclusionProof proof,
+                                           byte[] kvDigest, ByteString eh, long txId) {
+        if (!FlightRecorderSupport.AVAILABLE) {
+            return verifier.verifyInclusion(proof, kvDigest, eh);
+        }
+        ProofVerificationEvent event = new ProofVerificationEvent();
+        event.begin();
+        boolean verified = verifier.verifyInclusion(proof, kvDigest, eh);
+        event.end();
+        commitInclusionEvent(event, txId, verified);
+        return verified;
+    }
+
+    private static void commitInclusionEvent(ProofVerificationEvent event, long txId, boolean verified) {
+        if (event.shouldCommit()) {
+            event.proof = ProofVerificationEvent.INCLUSION;
+            event.sourceTx = txId;
+            event.targetTx = txId;
+            event.verified = verified;
+            event.commit();
+        }
+    }
 
-        stateHolder.setState(serverId, newState);
+    private static boolean verifyDualProof(ProofVerifier verifier, ImmudbProto.DualProof proof,
+                                           long sourceId, long targetId, byte[] sourceAlh, byte[] targetAlh) {
+        if (!FlightRecorderSupport.AVAILABLE) {
+            return verifier.verifyDualProof(proof, sourceId, targetId, sourceAlh, targetAlh);
+        }
+        ProofVerificationEvent event = new ProofVerificationEvent();
+        event.begin();
+        boolean verified = verifier.verifyDualProof(proof, sourceId, targetId, sourceAlh, targetAlh);
+        event.end();
+        if (event.shouldCommit()) {
+            event.proof = ProofVerificationEvent.DUAL;
+            event.sourceTx = sourceId;
+            event.targetTx = targetId;
+            event.txSpan = Math.abs(targetId - sourceId);
+            event.verified = verified;
+            event.commit();
+        }
+        return verified;
+    }
 
-        return tx.metadata();
+    private void persistState(ImmuState state) {
+        if (!FlightRecorderSupport.AVAILABLE) {
+            stateHolder.setState(serverId, state);
+            return;
+        }
+        StatePersistEvent event = new StatePersistEvent();
+        event.begin();
+        stateHolder.setState(serverId, state);
+        event.end();
+        if (event.shouldCommit()) {
+            event.serverId = serverId;
+            event.txId = state.txId;
+            event.commit();
+        }
     }
 
 
@@ -324,6 +783,8 @@ public class LedgerComplianceClient {
 
     /**
      * Get the value of the provided key.
+     *
+     * @throws KeyNotFoundException if the key does not exist
      */
     public byte[] get(String key) {
         return get(key.getBytes(StandardCharsets.UTF_8));
@@ -331,16 +792,69 @@ public class LedgerComplianceClient {
 
     /**
      * Get the value of the provided key.
+     *
+     * @throws KeyNotFoundException if the key does not exist
      */
     public byte[] get(byte[] key) {
-        ImmudbProto.KeyRequest req = ImmudbProto.KeyRequest.newBuilder().setKey(ByteString.copyFrom(key)).build();
+        return get(key, ByteString.copyFrom(key));
+    }
+
+    /**
+     * Get the value of the provided key.
+     *
+     * @throws KeyNotFoundException if the key does not exist
+     */
+    public byte[] get(PreparedKey key) {
+        return get(key.bytes, key.byteString);
+    }
+
+    private byte[] get(byte[] key, ByteString keyBS) {
+        if (!mightExist(key)) {
+            throw new KeyNotFoundException();
+        }
+        ImmudbProto.KeyRequest req = ImmudbProto.KeyRequest.newBuilder().setKey(keyBS).build();
+        long readToken = writeCache == null ? 0 : writeCache.readToken();
         ImmudbProto.Entry entry;
         try {
             entry = stub.get(req);
         } catch (StatusRuntimeException e) {
+            if (isKeyNotFound(e)) {
+                throw new KeyNotFoundException();
+            }
             throw new RuntimeException(e.getMessage());
         }
-        return entry.getValue().toByteArray();
+        learnKey(key);
+        if (readSampler != null) {
+            sampleRead(entry.getKey(), entry.getValue(), entry.getTx());
+        }
+        byte[] value = decodeValue(entry.getValue().toByteArray());
+        if (writeCache != null) {
+            writeCache.seed(key, value, readToken);
+        }
+        return value;
+    }
+
+    /**
+     * Get the value of the provided key, if it exists.
+     * With a key filter, misses of keys that were never seen are answered without contacting the server.
+     */
+    public Optional<byte[]> tryGet(String key) {
+        return tryGet(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the value of the provided key, if it exists.
+     * With a key filter, misses of keys that were never seen are answered without contacting the server.
+     */
+    public Optional<byte[]> tryGet(byte[] key) {
+        if (!mightExist(key)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(get(key));
+        } catch (KeyNotFoundException e) {
+            return Optional.empty();
+        }
     }
 
     /**
@@ -360,6 +874,8 @@ public class LedgerComplianceClient {
     /**
      * Get the value of the provided key in a "safe" manner
      * (verified that no data tampering happened on the server).
+     *
+     * @throws KeyNotFoundException if the key does not exist
      */
     public byte[] verifiedGet(String key) throws VerificationException {
         return verifiedGet(key.getBytes(StandardCharsets.UTF_8));
@@ -368,14 +884,38 @@ public class LedgerComplianceClient {
     /**
      * Get the value of the provided key in a "safe" manner
      * (verified that no data tampering happened on the server).
+     *
+     * @throws KeyNotFoundException if the key does not exist
      */
     public byte[] verifiedGet(byte[] key) throws VerificationException {
+        return verifiedGet(key, ByteString.copyFrom(key));
+    }
+
+    /**
+     * Get the value of the provided key in a "safe" manner
+     * (verified that no data tampering happened on the server).
+     *
+     * @throws KeyNotFoundException if the key does not exist
+     */
+    public byte[] verifiedGet(PreparedKey key) throws VerificationException {
+        return verifiedGet(key.bytes, key.byteString);
+    }
 
+    private byte[] verifiedGet(byte[] key, ByteString keyBS) throws VerificationException {
+
+        if (!mightExist(key)) {
+            throw new KeyNotFoundException();
+        }
         ImmuState state = state();
         ImmudbProto.KeyRequest keyReq = ImmudbProto.KeyRequest.newBuilder()
-                .setKey(ByteString.copyFrom(key))
+                .setKey(keyBS)
                 .build();
-        return verifiedGet(keyReq, state).kv.getValue();
+        long readToken = writeCache == null ? 0 : writeCache.readToken();
+        byte[] value = decodeValue(verifiedGet(keyReq, state, optimisticReads).kv.getValue());
+        if (writeCache != null) {
+            writeCache.seed(key, value, readToken);
+        }
+        return value;
     }
 
     /**
@@ -394,12 +934,15 @@ public class LedgerComplianceClient {
      */
     public byte[] verifiedGetAt(byte[] key, long atTxId) throws VerificationException {
 
+        if (!mightExist(key)) {
+            throw new KeyNotFoundException();
+        }
         ImmuState state = state();
         ImmudbProto.KeyRequest keyReq = ImmudbProto.KeyRequest.newBuilder()
                 .setKey(ByteString.copyFrom(key))
                 .setAtTx(atTxId)
                 .build();
-        return verifiedGet(keyReq, state).kv.getValue();
+        return decodeValue(verifiedGet(keyReq, state, optimisticReads).kv.getValue());
     }
 
     /**
@@ -418,109 +961,302 @@ public class LedgerComplianceClient {
      */
     public byte[] verifiedGetSince(byte[] key, long txId) throws VerificationException {
 
+        if (!mightExist(key)) {
+            throw new KeyNotFoundException();
+        }
         ImmuState state = state();
         ImmudbProto.KeyRequest keyReq = ImmudbProto.KeyRequest.newBuilder()
                 .setKey(ByteString.copyFrom(key))
                 .setSinceTx(txId)
                 .build();
-        return verifiedGet(keyReq, state).kv.getValue();
+        return decodeValue(verifiedGet(keyReq, state, false).kv.getValue());
     }
 
-    private Entry verifiedGet(ImmudbProto.KeyRequest keyReq, ImmuState state) throws VerificationException {
+    private Entry verifiedGet(ImmudbProto.KeyRequest keyReq, ImmuState state, boolean optimistic)
+            throws VerificationException {
 
         ImmudbProto.VerifiableGetRequest vGetReq = ImmudbProto.VerifiableGetRequest.newBuilder()
                 .setKeyRequest(keyReq)
                 .setProveSinceTx(state.txId)
                 .build();
-        ImmudbProto.VerifiableEntry vEntry = stub.verifiableGet(vGetReq);
-        InclusionProof inclusionProof = InclusionProof.valueOf(vEntry.getInclusionProof());
-        DualProof dualProof = DualProof.valueOf(vEntry.getVerifiableTx().getDualProof());
-
-        byte[] eh;
-        long sourceId, targetId;
-        byte[] sourceAlh;
-        byte[] targetAlh;
-        long vTx;
-        KV kv;
-
-        ImmudbProto.Entry entry = vEntry.getEntry();
-
-        if (!entry.hasReferencedBy()) {
-            vTx = entry.getTx();
-            kv = CryptoUtils.encodeKV(vGetReq.getKeyRequest().getKey().toByteArray(), entry.getValue().toByteArray());
+        ImmudbProto.VerifiableEntry vEntry;
+        try {
+            vEntry = stub.verifiableGet(vGetReq);
+        } catch (StatusRuntimeException e) {
+            if (isKeyNotFound(e)) {
+                throw new KeyNotFoundException();
+            }
+            throw e;
+        }
+        if (optimistic) {
+            backgroundVerifier.submit(() -> verifyInBackground(vGetReq, vEntry, state));
         } else {
-            ImmudbProto.Reference entryRefBy = entry.getReferencedBy();
-            vTx = entryRefBy.getTx();
-            kv = CryptoUtils.encodeReference(
-                    entryRefBy.getKey().toByteArray(),
-                    entry.getKey().toByteArray(),
-                    entryRefBy.getAtTx());
+            ImmuState newState = verify(vGetReq, vEntry, state, true);
+            if (newState != state) {
+                advanceState(newState);
+            }
         }
+        learnKey(keyReq.getKey());
+        return Entry.valueOf(vEntry.getEntry());
+    }
 
-        if (state.txId <= vTx) {
-            byte[] digest = vEntry.getVerifiableTx().getDualProof().getTargetTxMetadata().getEH().toByteArray();
-            eh = CryptoUtils.digestFrom(digest);
-
-            sourceId = state.txId;
-            sourceAlh = CryptoUtils.digestFrom(state.txHash);
-            targetId = vTx;
-            targetAlh = dualProof.targetTxMetadata.alh();
-        } else {
-            byte[] digest = vEntry.getVerifiableTx().getDualProof().getSourceTxMetadata().getEH().toByteArray();
-            eh = CryptoUtils.digestFrom(digest);
+    /**
+     * Verify an entry already returned to the application: a failure can only be reported.
+     */
+    private void verifyInBackground(ImmudbProto.VerifiableGetRequest vGetReq, ImmudbProto.VerifiableEntry vEntry,
+                                    ImmuState state) {
+        try {
+            ImmuState newState = verify(vGetReq, vEntry, state, true);
+            // Verifications may complete out of order: advanceState never steps back to an older state.
+            if (newState != state) {
+                advanceState(newState);
+            }
+        } catch (VerificationException e) {
+            onTamper(tamperListener, vGetReq, vEntry, e);
+        } catch (RuntimeException e) {
+            onTamper(tamperListener, vGetReq, vEntry, new VerificationException("Failed to verify the entry.", e));
+        }
+    }
 
-            sourceId = vTx;
-            sourceAlh = dualProof.sourceTxMetadata.alh();
-            targetId = state.txId;
-            targetAlh = CryptoUtils.digestFrom(state.txHash);
+    private void onTamper(TamperListener listener, ImmudbProto.VerifiableGetRequest vGetReq,
+                          ImmudbProto.VerifiableEntry vEntry, VerificationException e) {
+        byte[] key = vGetReq.getKeyRequest().getKey().toByteArray();
+        ImmudbProto.Entry entry = vEntry.getEntry();
+        long txId = entry.hasReferencedBy() ? entry.getReferencedBy().getTx() : entry.getTx();
+        if (writeCache != null) {
+            writeCache.invalidate(key);
+        }
+        try {
+            reportTamper(key, txId, vEntry.getVerifiableTx().getSignature());
+        } catch (RuntimeException re) {
+            listener.onReportError(key, txId, re);
         }
+        listener.onTamper(key, txId, e);
+    }
 
-        if (!CryptoUtils.verifyInclusion(inclusionProof, kv, eh)) {
-            throw new VerificationException("Inclusion verification failed.");
+    private void sampleReads(ImmudbProto.Entries entries) {
+        if (readSampler == null) {
+            return;
+        }
+        int n = entries.getEntriesCount();
+        for (int i = 0; i < n; i++) {
+            ImmudbProto.Entry entry = entries.getEntries(i);
+            sampleRead(entry.getKey(), entry.getValue(), entry.getTx());
         }
+    }
 
-        if (state.txId > 0) {
-            if (!CryptoUtils.verifyDualProof(
-                    dualProof,
-                    sourceId,
-                    targetId,
-                    sourceAlh,
-                    targetAlh
-            )) {
-                throw new VerificationException("Dual proof verification failed.");
+    private void sampleReads(PackedEntries entries) {
+        if (readSampler == null) {
+            return;
+        }
+        int n = entries.size();
+        for (int i = 0; i < n; i++) {
+            if (readSampler.sample()) {
+                submitSample(entries.key(i), entries.value(i), entries.tx(i));
             }
         }
+    }
 
-        ImmuState newState = new ImmuState(
-                apiKey,
-                targetId,
-                targetAlh,
-                vEntry.getVerifiableTx().getSignature().toByteArray());
-
-        stateHolder.setState(serverId, newState);
+    private void sampleRead(ByteString key, ByteString value, long tx) {
+        if (readSampler.sample()) {
+            submitSample(key, value, tx);
+        }
+    }
 
-        return Entry.valueOf(vEntry.getEntry());
+    private void submitSample(ByteString key, ByteString value, long tx) {
+        if (!backgroundVerifier.trySubmit(() -> verifySample(key, value, tx))) {
+            readSampler.sampled.decrement();
+            readSampler.skipped.increment();
+        }
     }
 
     /**
-     * Get multiple key-value pairs.
+     * Read again, verified, the entry returned by an unverified read and compare the two.
+     * Only failed proofs and mismatches are reported as tampers: any other failure counts as an error.
      */
-    public List<KV> getAll(List<String> keys) {
-        List<ByteString> keysBS = new ArrayList<>(keys.size());
-        for (String key : keys) {
-            keysBS.add(ByteString.copyFrom(key, StandardCharsets.UTF_8));
+    private void verifySample(ByteString key, ByteString value, long tx) {
+        ImmuState state;
+        ImmudbProto.VerifiableGetRequest vGetReq;
+        ImmudbProto.VerifiableEntry vEntry;
+        try {
+            state = state();
+            vGetReq = ImmudbProto.VerifiableGetRequest.newBuilder()
+                    .setKeyRequest(ImmudbProto.KeyRequest.newBuilder()
+                            .setKey(key)
+                            .setAtTx(tx)
+                            .build())
+                    .setProveSinceTx(state.txId)
+                    .build();
+            vEntry = stub.verifiableGet(vGetReq);
+        } catch (RuntimeException e) {
+            readSampler.errors.increment();
+            return;
         }
-        return getAllBS(keysBS);
-    }
 
-    private List<KV> getAllBS(List<ByteString> keys) {
-        ImmudbProto.KeyListRequest req = ImmudbProto.KeyListRequest.newBuilder().addAllKeys(keys).build();
-        ImmudbProto.Entries entries = stub.getAll(req);
-        List<KV> result = new ArrayList<>(entries.getEntriesCount());
-        for (ImmudbProto.Entry entry : entries.getEntriesList()) {
-            result.add(KVPair.from(entry));
+        try {
+            ImmuState newState = verify(vGetReq, vEntry, state, true);
+            if (!vEntry.getEntry().getValue().equals(value)) {
+                throw new VerificationException("The read entry differs from the verified one.");
+            }
+            if (newState != state) {
+                advanceState(newState);
+            }
+            readSampler.verified.increment();
+        } catch (VerificationException e) {
+            readSampler.tampered.increment();
+            onTamper(sampleTamperListener, vGetReq, vEntry, e);
+        } catch (RuntimeException e) {
+            // A local failure (e.g. persisting the state): the entry is neither verified nor known as tampered.
+            readSampler.errors.increment();
         }
-        return result;
+    }
+
+    /**
+     * The counters of the sampled verification of unverified reads, or null if the client has been built
+     * without it.
+     */
+    public VerificationCoverage getVerificationCoverage() {
+        return readSampler == null ? null : readSampler.coverage();
+    }
+
+    /**
+     * The number of reads whose proofs are still being verified in the background.
+     */
+    public int getPendingVerifications() {
+        return backgroundVerifier == null ? 0 : backgroundVerifier.pending();
+    }
+
+    /**
+     * Wait for the proofs of the reads already returned to be verified (and the failures to be reported).
+     *
+     * @return false if some verifications are still pending at the timeout
+     */
+    public boolean awaitVerifications(long timeout, TimeUnit unit) throws InterruptedException {
+        return backgroundVerifier == null || backgroundVerifier.awaitIdle(timeout, unit);
+    }
+
+    /**
+     * Get the value of the provided key in a "safe" manner, if it exists.
+     * With a key filter, misses of keys that were never seen are answered without contacting the server.
+     */
+    public Optional<byte[]> tryVerifiedGet(String key) throws VerificationException {
+        return tryVerifiedGet(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the value of the provided key in a "safe" manner, if it exists.
+     * With a key filter, misses of keys that were never seen are answered without contacting the server.
+     */
+    public Optional<byte[]> tryVerifiedGet(byte[] key) throws VerificationException {
+        if (!mightExist(key)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(verifiedGet(key));
+        } catch (KeyNotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Verify a VerifiableEntry against the provided (trusted) state.
+     * The dual proof check may be skipped only if the very same dual proof has been verified already.
+     *
+     * @return the state to advance to
+     */
+    private ImmuState verify(ImmudbProto.VerifiableGetRequest vGetReq, ImmudbProto.VerifiableEntry vEntry,
+                             ImmuState state, boolean verifyDualProof) throws VerificationException {
+
+        ProofVerifier verifier = ProofVerifier.get();
+        ImmudbProto.DualProof dualProof = vEntry.getVerifiableTx().getDualProof();
+
+        ByteString eh;
+        long sourceId, targetId;
+        byte[] sourceAlh;
+        byte[] targetAlh;
+        long vTx;
+        byte[] kvDigest;
+
+        ImmudbProto.Entry entry = vEntry.getEntry();
+
+        if (!entry.hasReferencedBy()) {
+            vTx = entry.getTx();
+            kvDigest = verifier.kvDigest(vGetReq.getKeyRequest().getKey(), entry.getValue());
+        } else {
+            ImmudbProto.Reference entryRefBy = entry.getReferencedBy();
+            vTx = entryRefBy.getTx();
+            kvDigest = CryptoUtils.encodeReference(
+                    entryRefBy.getKey().toByteArray(),
+                    entry.getKey().toByteArray(),
+                    entryRefBy.getAtTx()).digest();
+        }
+
+        if (state.txId <= vTx) {
+            eh = dualProof.getTargetTxMetadata().getEH();
+
+            sourceId = state.txId;
+            sourceAlh = state.txHash;
+            targetId = vTx;
+            targetAlh = verifier.alh(dualProof.getTargetTxMetadata());
+        } else {
+            eh = dualProof.getSourceTxMetadata().getEH();
+
+            sourceId = vTx;
+            sourceAlh = verifier.alh(dualProof.getSourceTxMetadata());
+            targetId = state.txId;
+            targetAlh = state.txHash;
+        }
+        if (sourceAlh == null || targetAlh == null) {
+            throw new VerificationException("Failed to extract the transaction.");
+        }
+
+        if (!verifyInclusion(verifier, vEntry.getInclusionProof(), kvDigest, eh, vTx)) {
+            throw new VerificationException("Inclusion verification failed.");
+        }
+
+        if (verifyDualProof && state.txId > 0) {
+            if (!verifyDualProof(
+                    verifier,
+                    dualProof,
+                    sourceId,
+                    targetId,
+                    sourceAlh,
+                    targetAlh
+            )) {
+                throw new VerificationException("Dual proof verification failed.");
+            }
+        }
+
+        if (targetId == state.txId && Arrays.equals(targetAlh, state.txHash)) {
+            // The entry is not newer than the trusted state: nothing to advance (nor to persist).
+            return state;
+        }
+        return new ImmuState(
+                apiKey,
+                targetId,
+                targetAlh.clone(),
+                vEntry.getVerifiableTx().getSignature().toByteArray());
+    }
+
+    /**
+     * Get multiple key-value pairs.
+     */
+    public List<KV> getAll(List<String> keys) {
+        List<ByteString> keysBS = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            keysBS.add(ByteString.copyFrom(key, StandardCharsets.UTF_8));
+        }
+        return getAllBS(keysBS);
+    }
+
+    private List<KV> getAllBS(List<ByteString> keys) {
+        ImmudbProto.KeyListRequest req = ImmudbProto.KeyListRequest.newBuilder().addAllKeys(keys).build();
+        if (entriesChannel != null) {
+            return callPacked(PackedEntries.GET_ALL, req);
+        }
+        ImmudbProto.Entries entries = stub.getAll(req);
+        sampleReads(entries);
+        return buildList(entries);
     }
 
 
@@ -557,20 +1293,33 @@ public class LedgerComplianceClient {
      * Get the history of a key: values that were been set over time.
      */
     public List<KV> history(byte[] key, int limit, long offset, boolean reverse) {
+        return history(ByteString.copyFrom(key), limit, offset, reverse);
+    }
+
+    /**
+     * Get the history of a key: values that were been set over time.
+     */
+    public List<KV> history(PreparedKey key, int limit, long offset, boolean reverse) {
+        return history(key.byteString, limit, offset, reverse);
+    }
 
-        ImmudbProto.Entries entries;
+    private List<KV> history(ByteString key, int limit, long offset, boolean reverse) {
+
+        ImmudbProto.HistoryRequest req = ImmudbProto.HistoryRequest.newBuilder()
+                .setKey(key)
+                .setLimit(limit)
+                .setOffset(offset)
+                .setDesc(reverse)
+                .build();
         try {
-            entries = stub.history(ImmudbProto.HistoryRequest.newBuilder()
-                    .setKey(ByteString.copyFrom(key))
-                    .setLimit(limit)
-                    .setOffset(offset)
-                    .setDesc(reverse)
-                    .build()
-            );
+            if (entriesChannel != null) {
+                return new EntriesView(ClientCalls.blockingUnaryCall(entriesChannel, PackedEntries.HISTORY,
+                        CallOptions.DEFAULT, req), valueCodec);
+            }
+            return buildList(stub.history(req));
         } catch (StatusRuntimeException e) {
             return new ArrayList<>(0);
         }
-        return buildList(entries);
     }
 
 
@@ -600,9 +1349,7 @@ public class LedgerComplianceClient {
      * The provided "key" can just be a prefix, not just the whole key name.
      */
     public List<KV> scan(byte[] key) {
-        ImmudbProto.ScanRequest req = ImmudbProto.ScanRequest.newBuilder().setPrefix(ByteString.copyFrom(key)).build();
-        ImmudbProto.Entries entries = stub.scan(req);
-        return buildList(entries);
+        return scan(key, 0, 0, false);
     }
 
     /**
@@ -616,11 +1363,52 @@ public class LedgerComplianceClient {
                 .setSinceTx(sinceTxId)
                 .setDesc(reverse)
                 .build();
+        if (entriesChannel != null) {
+            return callPacked(PackedEntries.SCAN, req);
+        }
         ImmudbProto.Entries entries = stub.scan(req);
+        sampleReads(entries);
         return buildList(entries);
     }
 
 
+    //
+    // ========== TAIL ==========
+    //
+
+    /**
+     * Start delivering to the listener, in tx order, the entries set after <code>fromTx</code>
+     * for the keys having the provided prefix. See {@link LedgerTail} for the details.
+     */
+    public LedgerTail tail(String prefix, long fromTx, LedgerTail.Listener listener) {
+        return tail(prefix.getBytes(StandardCharsets.UTF_8), fromTx, listener);
+    }
+
+    /**
+     * Start delivering to the listener, in tx order, the entries set after <code>fromTx</code>
+     * for the keys having the provided prefix. See {@link LedgerTail} for the details.
+     */
+    public LedgerTail tail(byte[] prefix, long fromTx, LedgerTail.Listener listener) {
+        return LedgerTail.newBuilder(this)
+                .withPrefix(prefix)
+                .fromTx(fromTx)
+                .withListener(listener)
+                .start();
+    }
+
+    /**
+     * Scan all the keys having the provided prefix with the given number of concurrent workers, in key order.
+     * See {@link ParallelScan} for the details and for more options. The stream must be closed if not fully consumed.
+     */
+    public Stream<KV> parallelScan(byte[] prefix, int parallelism) {
+        return ParallelScan.newBuilder(this)
+                .withPrefix(prefix)
+                .withParallelism(parallelism)
+                .build()
+                .stream();
+    }
+
+
     //
     // ========== Z ==========
     //
@@ -671,6 +1459,373 @@ public class LedgerComplianceClient {
         return buildList(zEntries);
     }
 
+    public TxMetadata verifiedZAdd(String set, double score, String key) throws VerificationException {
+        return verifiedZAddAt(set.getBytes(StandardCharsets.UTF_8), score, key.getBytes(StandardCharsets.UTF_8), 0);
+    }
+
+    public TxMetadata verifiedZAdd(byte[] set, double score, byte[] key) throws VerificationException {
+        return verifiedZAddAt(set, score, key, 0);
+    }
+
+    public TxMetadata verifiedZAddAt(String set, double score, String key, long atTxId)
+            throws VerificationException {
+        return verifiedZAddAt(set.getBytes(StandardCharsets.UTF_8), score, key.getBytes(StandardCharsets.UTF_8),
+                atTxId);
+    }
+
+    /**
+     * Add the key to the sorted set in a "safe" (verified, tamper-proof detectable) manner:
+     * the sorted set entry is proven to be included in the returned tx, and the tx to be consistent
+     * with the locally saved state.
+     */
+    public TxMetadata verifiedZAddAt(byte[] set, double score, byte[] key, long atTxId)
+            throws VerificationException {
+
+        ImmuState state = state();
+        ImmudbProto.VerifiableZAddRequest vZAddReq = ImmudbProto.VerifiableZAddRequest.newBuilder()
+                .setZAddRequest(ImmudbProto.ZAddRequest.newBuilder()
+                        .setSet(ByteString.copyFrom(set))
+                        .setKey(ByteString.copyFrom(key))
+                        .setScore(score)
+                        .setAtTx(atTxId)
+                        .setBoundRef(atTxId > 0)
+                        .build())
+                .setProveSinceTx(state.txId)
+                .build();
+        ImmudbProto.VerifiableTx vtx = stub.verifiableZAdd(vZAddReq);
+        int ne = vtx.getTx().getMetadata().getNentries();
+        if (ne != 1) {
+            throw new VerificationException(
+                    String.format("Got back %d entries (in tx metadata) instead of 1.", ne)
+            );
+        }
+        byte[] zKey = encodeZAddKey(set, score, CryptoUtils.encodeKey(key), atTxId);
+        return verifyTx(vtx, state, zKey, ProofVerifier.NO_PREFIX, ProofVerifier.NO_PREFIX);
+    }
+
+    public List<KV> verifiedZScan(String set, long sinceTxId, long limit, boolean reverse)
+            throws VerificationException {
+        return verifiedZScan(set.getBytes(StandardCharsets.UTF_8), sinceTxId, limit, reverse);
+    }
+
+    /**
+     * Scan a sorted set, verifying that each returned entry is included in the tx it has been set in,
+     * and that these txs are consistent with the locally saved state.
+     * <p>
+     * The proofs of the whole page are requested at once, then checked grouped by tx,
+     * so that the dual proof of a tx is verified only once, no matter how many entries it holds.
+     */
+    public List<KV> verifiedZScan(byte[] set, long sinceTxId, long limit, boolean reverse)
+            throws VerificationException {
+
+        ImmudbProto.ZEntries zEntries = stub.zScan(ImmudbProto.ZScanRequest.newBuilder()
+                .setSet(ByteString.copyFrom(set))
+                .setLimit(limit)
+                .setSinceTx(sinceTxId)
+                .setDesc(reverse)
+                .build());
+        int n = zEntries.getEntriesCount();
+
+        ImmuState state = state();
+        List<ImmudbProto.VerifiableGetRequest> requests = new ArrayList<>(n);
+        List<ListenableFuture<ImmudbProto.VerifiableEntry>> futures = new ArrayList<>(n);
+        for (ImmudbProto.ZEntry zEntry : zEntries.getEntriesList()) {
+            ImmudbProto.VerifiableGetRequest vGetReq = ImmudbProto.VerifiableGetRequest.newBuilder()
+                    .setKeyRequest(ImmudbProto.KeyRequest.newBuilder()
+                            .setKey(zEntry.getKey())
+                            .setAtTx(zEntry.getEntry().getTx())
+                            .build())
+                    .setProveSinceTx(state.txId)
+                    .build();
+            requests.add(vGetReq);
+            futures.add(futureStub.verifiableGet(vGetReq));
+        }
+
+        // Group the entries by tx: the dual proof of a tx is the same for all of its entries.
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> zEntries.getEntries(i).getEntry().getTx()));
+
+        ImmuState newState = state;
+        ImmudbProto.DualProof verifiedDualProof = null;
+        long verifiedTx = -1;
+        for (int i : order) {
+            ImmudbProto.VerifiableEntry vEntry;
+            try {
+                vEntry = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e.getMessage());
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause().getMessage());
+            }
+
+            ImmudbProto.Entry zEntry = zEntries.getEntries(i).getEntry();
+            long atTx = requests.get(i).getKeyRequest().getAtTx();
+            if (vEntry.getEntry().getTx() != atTx || vEntry.getEntry().hasReferencedBy()) {
+                throw new VerificationException("Verified entry is not at the requested tx.");
+            }
+            if (!vEntry.getEntry().getValue().equals(zEntry.getValue())) {
+                throw new VerificationException("Sorted set entry differs from the verified one.");
+            }
+
+            // The dual proof of the previous entry can be reused only for the same tx: a verified dual proof
+            // is bound to its source and target tx ids, and these depend only on the tx (the state is the same).
+            ImmudbProto.DualProof dualProof = vEntry.getVerifiableTx().getDualProof();
+            boolean verifyDualProof = atTx != verifiedTx || !dualProof.equals(verifiedDualProof);
+            ImmuState entryState = verify(requests.get(i), vEntry, state, verifyDualProof);
+            verifiedDualProof = dualProof;
+            verifiedTx = atTx;
+
+            if (entryState.txId > newState.txId) {
+                newState = entryState;
+            }
+        }
+
+        if (newState != state) {
+            advanceState(newState);
+        }
+
+        return buildList(zEntries);
+    }
+
+    /**
+     * The key of a sorted set entry, as stored in the ledger.
+     */
+    private static byte[] encodeZAddKey(byte[] set, double score, byte[] encodedKey, long atTxId) {
+        return ByteBuffer.allocate(1 + 8 + set.length + 8 + 8 + encodedKey.length + 8)
+                .put(SORTED_SET_KEY_PREFIX)
+                .putLong(set.length)
+                .put(set)
+                .putLong(Double.doubleToLongBits(score))
+                .putLong(encodedKey.length)
+                .put(encodedKey)
+                .putLong(atTxId)
+                .array();
+    }
+
+
+    //
+    // ========== LC EXTENSIONS ==========
+    //
+
+
+    /**
+     * Get the history of a key, including the timestamp the LC backend assigned to each value.
+     */
+    public List<KVExt> historyExt(String key, int limit, long offset, boolean reverse) {
+        return historyExt(key.getBytes(StandardCharsets.UTF_8), limit, offset, reverse);
+    }
+
+    /**
+     * Get the history of a key, including the timestamp the LC backend assigned to each value.
+     */
+    public List<KVExt> historyExt(byte[] key, int limit, long offset, boolean reverse) {
+        Lc.ItemExtList items;
+        try {
+            items = historyExtItems(ImmudbProto.HistoryRequest.newBuilder()
+                    .setKey(ByteString.copyFrom(key))
+                    .setLimit(limit)
+                    .setOffset(offset)
+                    .setDesc(reverse)
+                    .build()
+            );
+        } catch (StatusRuntimeException e) {
+            return new ArrayList<>(0);
+        }
+        List<KVExt> result = new ArrayList<>(items.getItemsCount());
+        for (Lc.ItemExt item : items.getItemsList()) {
+            result.add(new KVExt(item.getItem(), item.hasTimestamp() ? item.getTimestamp() : null, valueCodec));
+        }
+        return result;
+    }
+
+    /**
+     * Get the values of a key that were set within the provided time window (both ends included), oldest first.
+     * <p>
+     * Instead of fetching the whole history, the first value of the window is located by probing
+     * the history at exponentially growing (then bisected) offsets; from there on, pages of
+     * <code>pageSize</code> values are fetched until the end of the window is passed.
+     */
+    public List<KVExt> historyExt(byte[] key, Instant from, Instant to, int pageSize) {
+        checkWindow(from, to, pageSize);
+        ByteString keyBS = ByteString.copyFrom(key);
+        long fromSec = from.getEpochSecond();
+        int fromNanos = from.getNano();
+        long toSec = to.getEpochSecond();
+        int toNanos = to.getNano();
+
+        List<KVExt> result = new ArrayList<>();
+        long offset = historyOffsetOf(keyBS, fromSec, fromNanos);
+        while (offset >= 0) {
+            List<Lc.ItemExt> page = historyExtPage(keyBS, offset, pageSize);
+            for (Lc.ItemExt item : page) {
+                if (KVExt.compare(item.getTimestamp(), toSec, toNanos) > 0) {
+                    return result;
+                }
+                result.add(new KVExt(item.getItem(), item.hasTimestamp() ? item.getTimestamp() : null, valueCodec));
+            }
+            if (page.size() < pageSize) {
+                break;
+            }
+            offset += page.size();
+        }
+        return result;
+    }
+
+    /**
+     * The history offset of the first value set at or after the provided time, or -1 if there is none.
+     */
+    private long historyOffsetOf(ByteString key, long seconds, int nanos) {
+        // lo: last offset known to be before the time (-1 if none);
+        // hi: first offset known to be at or after the time, or past the end of the history.
+        long lo = -1;
+        long hi;
+        boolean found;
+        for (long probe = 0; ; probe = probe * 2 + 1) {
+            List<Lc.ItemExt> page = historyExtPage(key, probe, 1);
+            found = !page.isEmpty();
+            if (!found || KVExt.compare(page.get(0).getTimestamp(), seconds, nanos) >= 0) {
+                hi = probe;
+                break;
+            }
+            lo = probe;
+        }
+        while (hi - lo > 1) {
+            long mid = lo + (hi - lo) / 2;
+            List<Lc.ItemExt> page = historyExtPage(key, mid, 1);
+            if (page.isEmpty() || KVExt.compare(page.get(0).getTimestamp(), seconds, nanos) >= 0) {
+                hi = mid;
+                found = !page.isEmpty();
+            } else {
+                lo = mid;
+            }
+        }
+        return found ? hi : -1;
+    }
+
+    private List<Lc.ItemExt> historyExtPage(ByteString key, long offset, int limit) {
+        try {
+            return historyExtItems(ImmudbProto.HistoryRequest.newBuilder()
+                    .setKey(key)
+                    .setOffset(offset)
+                    .setLimit(limit)
+                    .build()
+            ).getItemsList();
+        } catch (StatusRuntimeException e) {
+            if (isKeyNotFound(e)) {
+                return new ArrayList<>(0);
+            }
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    private static void checkWindow(Instant from, Instant to, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("The window starts after it ends: " + from + " > " + to);
+        }
+    }
+
+    Lc.ItemExtList historyExtItems(ImmudbProto.HistoryRequest req) {
+        return stub.historyExt(req);
+    }
+
+    /**
+     * Scan a sorted set, including the timestamp the LC backend assigned to each entry.
+     */
+    public List<KVExt> zScanExt(String set, long sinceTxId, long limit, boolean reverse) {
+        return zScanExt(set.getBytes(StandardCharsets.UTF_8), sinceTxId, limit, reverse);
+    }
+
+    /**
+     * Scan a sorted set, including the timestamp the LC backend assigned to each entry.
+     */
+    public List<KVExt> zScanExt(byte[] set, long sinceTxId, long limit, boolean reverse) {
+        Lc.ZItemExtList items = stub.zScanExt(ImmudbProto.ZScanRequest.newBuilder()
+                .setSet(ByteString.copyFrom(set))
+                .setLimit(limit)
+                .setSinceTx(sinceTxId)
+                .setDesc(reverse)
+                .build()
+        );
+        List<KVExt> result = new ArrayList<>(items.getItemsCount());
+        for (Lc.ZItemExt item : items.getItemsList()) {
+            result.add(new KVExt(item.getItem().getEntry(), item.hasTimestamp() ? item.getTimestamp() : null, valueCodec));
+        }
+        return result;
+    }
+
+    /**
+     * Scan a sorted set, keeping only the entries set within the provided time window (both ends included).
+     * Entries are fetched in pages of <code>pageSize</code>; only their timestamp seconds and nanos are read
+     * for filtering.
+     */
+    public List<KVExt> zScanExt(byte[] set, Instant from, Instant to, int pageSize) {
+        checkWindow(from, to, pageSize);
+        ByteString setBS = ByteString.copyFrom(set);
+        long fromSec = from.getEpochSecond();
+        int fromNanos = from.getNano();
+        long toSec = to.getEpochSecond();
+        int toNanos = to.getNano();
+
+        List<KVExt> result = new ArrayList<>();
+        ImmudbProto.ZEntry last = null;
+        while (true) {
+            ImmudbProto.ZScanRequest.Builder req = ImmudbProto.ZScanRequest.newBuilder()
+                    .setSet(setBS)
+                    .setLimit(pageSize);
+            if (last != null) {
+                req.setSeekKey(last.getKey())
+                        .setSeekScore(last.getScore())
+                        .setSeekAtTx(last.getAtTx())
+                        .setInclusiveSeek(false);
+            }
+            List<Lc.ZItemExt> items = stub.zScanExt(req.build()).getItemsList();
+            for (Lc.ZItemExt item : items) {
+                if (KVExt.compare(item.getTimestamp(), fromSec, fromNanos) >= 0
+                        && KVExt.compare(item.getTimestamp(), toSec, toNanos) <= 0) {
+                    result.add(new KVExt(item.getItem().getEntry(), item.getTimestamp(), valueCodec));
+                }
+            }
+            if (items.size() < pageSize) {
+                return result;
+            }
+            last = items.get(items.size() - 1).getItem();
+        }
+    }
+
+    /**
+     * Get the value of the provided key in a "safe" manner (verified that no data tampering happened
+     * on the server), including the timestamp the LC backend assigned to it.
+     */
+    public KVExt verifiedGetExt(String key) throws VerificationException {
+        return verifiedGetExt(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the value of the provided key in a "safe" manner (verified that no data tampering happened
+     * on the server), including the timestamp the LC backend assigned to it.
+     */
+    public KVExt verifiedGetExt(byte[] key) throws VerificationException {
+
+        ImmuState state = state();
+        ImmudbProto.VerifiableGetRequest vGetReq = ImmudbProto.VerifiableGetRequest.newBuilder()
+                .setKeyRequest(ImmudbProto.KeyRequest.newBuilder().setKey(ByteString.copyFrom(key)).build())
+                .setProveSinceTx(state.txId)
+                .build();
+        Lc.VerifiableItemExt item = stub.verifiableGetExt(vGetReq);
+        ImmuState newState = verify(vGetReq, item.getItem(), state, true);
+        if (newState != state) {
+            advanceState(newState);
+        }
+        return new KVExt(item.getItem().getEntry(), item.hasTimestamp() ? item.getTimestamp() : null, valueCodec);
+    }
+
 
     //
     // ========== REPORT TAMPER ==========
@@ -692,23 +1847,277 @@ public class LedgerComplianceClient {
     }
 
 
+    //
+    // ========== KEY FILTER ==========
+    //
+
+
+    /**
+     * Load into the key filter all the keys having the provided prefix (an empty prefix loads all keys).
+     * It has no effect if the client has been built without a key filter.
+     *
+     * @return the number of loaded keys
+     */
+    public long bootstrapKeyFilter(byte[] prefix) {
+        if (keyFilter == null) {
+            return 0;
+        }
+        ByteString prefixBS = ByteString.copyFrom(prefix);
+        ByteString seekKey = ByteString.EMPTY;
+        long loaded = 0;
+        while (true) {
+            ImmudbProto.Entries entries = stub.scan(ImmudbProto.ScanRequest.newBuilder()
+                    .setPrefix(prefixBS)
+                    .setSeekKey(seekKey)
+                    .setLimit(KEY_FILTER_BOOTSTRAP_PAGE_SIZE)
+                    .build());
+            int n = entries.getEntriesCount();
+            for (int i = 0; i < n; i++) {
+                keyFilter.add(entries.getEntries(i).getKey());
+            }
+            loaded += n;
+            if (n < KEY_FILTER_BOOTSTRAP_PAGE_SIZE || entries.getEntries(n - 1).getKey().equals(seekKey)) {
+                return loaded;
+            }
+            seekKey = entries.getEntries(n - 1).getKey();
+        }
+    }
+
+    private boolean mightExist(byte[] key) {
+        return keyFilter == null || keyFilter.mightContain(key);
+    }
+
+    private void learnKey(byte[] key) {
+        if (keyFilter != null) {
+            keyFilter.add(key);
+        }
+    }
+
+    private void learnKey(ByteString key) {
+        if (keyFilter != null) {
+            keyFilter.add(key);
+        }
+    }
+
+    private static boolean isKeyNotFound(StatusRuntimeException e) {
+        if (e.getStatus().getCode() == Status.Code.NOT_FOUND) {
+            return true;
+        }
+        String description = e.getStatus().getDescription();
+        return description != null && description.contains(LedgerComplianceExceptions.KEY_NOT_FOUND);
+    }
+
+
     //
     // ========== INTERNAL UTILS ==========
     //
 
 
+    /**
+     * Raw scan, returning the entries (including their tx) as sent by the server.
+     */
+    ImmudbProto.Entries scanEntries(ImmudbProto.ScanRequest req) {
+        return stub.scan(req);
+    }
+
+    /**
+     * Raw history, returning the entries (including their tx) as sent by the server.
+     */
+    ImmudbProto.Entries historyEntries(ImmudbProto.HistoryRequest req) {
+        return stub.history(req);
+    }
+
+    /**
+     * Raw set of a batch of pairs (with distinct keys, and values already encoded) in a single tx.
+     */
+    ImmudbProto.TxMetadata setEntries(ImmudbProto.SetRequest req) {
+        ImmudbProto.TxMetadata txMd;
+        try {
+            txMd = stub.set(req);
+        } finally {
+            if (writeCache != null) {
+                for (int i = 0; i < req.getKVsCount(); i++) {
+                    writeCache.invalidate(req.getKVs(i).getKey().toByteArray());
+                }
+            }
+        }
+        for (int i = 0; i < req.getKVsCount(); i++) {
+            learnKey(req.getKVs(i).getKey());
+        }
+        return txMd;
+    }
+
+    /**
+     * Raw execution of a batch of operations (values of the pairs already encoded) in a single tx.
+     */
+    ImmudbProto.TxMetadata execAll(ImmudbProto.ExecAllRequest req) {
+        ImmudbProto.TxMetadata txMd;
+        try {
+            txMd = stub.execAll(req);
+        } finally {
+            if (writeCache != null) {
+                for (ImmudbProto.Op op : req.getOperationsList()) {
+                    if (op.hasKv()) {
+                        writeCache.invalidate(op.getKv().getKey().toByteArray());
+                    }
+                }
+            }
+        }
+        for (ImmudbProto.Op op : req.getOperationsList()) {
+            if (op.hasKv()) {
+                learnKey(op.getKv().getKey());
+            }
+        }
+        return txMd;
+    }
+
+    /**
+     * Raw sorted set scan, returning the entries (including their score) as sent by the server.
+     */
+    ImmudbProto.ZEntries zScanEntries(ImmudbProto.ZScanRequest req) {
+        return stub.zScan(req);
+    }
+
+    /**
+     * Asynchronous verifiable set, for the {@link PipelinedVerifiedWriter}.
+     */
+    ListenableFuture<ImmudbProto.VerifiableTx> verifiableSetAsync(ImmudbProto.VerifiableSetRequest req) {
+        return futureStub.verifiableSet(req);
+    }
+
+    /**
+     * Verify the response of a verifiable set of a single pair, sent while the provided state was the trusted one,
+     * and chain its tx to the currently trusted state (which may have moved forward in the meantime):
+     * <ul>
+     * <li>a newer tx extends the trusted state if the linear proof of its dual proof goes through the trusted tx;
+     * if it doesn't, a proof from the trusted state is asked for with a verifiable get of the pair at the tx;</li>
+     * <li>an older tx is proven to be part of the history of the trusted state the same way.</li>
+     * </ul>
+     *
+     * @return the new trusted state, or the provided trusted one if the tx is not newer
+     */
+    ImmuState verifyChainedSet(ImmudbProto.VerifiableTx vtx, ImmuState sent, ImmuState trusted, ByteString key,
+                               byte[] encodedKey, byte[] stored) throws VerificationException {
+
+        ImmudbProto.TxMetadata md = vtx.getTx().getMetadata();
+        if (md.getNentries() != 2) {
+            throw new VerificationException(
+                    String.format("Got back %d entries (in tx metadata) instead of 1.", md.getNentries() - 1)
+            );
+        }
+        ProofVerifier verifier = ProofVerifier.get();
+        long txId = md.getId();
+        byte[] kvDigest = verifier.kvDigest(encodedKey, ProofVerifier.VALUE_PREFIX, stored);
+        if (!verifyTxInclusion(verifier, vtx.getTx(), encodedKey, kvDigest)) {
+            throw new VerificationException("Data is corrupted (verify inclusion failed)");
+        }
+        byte[] alh = verifier.alh(md);
+        if (alh == null) {
+            throw new VerificationException("Failed to extract the transaction.");
+        }
+        if (sent.txId > 0 && !verifyDualProof(verifier, vtx.getDualProof(), sent.txId, txId, sent.txHash, alh)) {
+            throw new VerificationException("Data is corrupted (dual proof verification failed).");
+        }
+
+        if (txId > trusted.txId) {
+            // The linear proof can be relied upon only if the dual proof has been verified.
+            if (trusted.txId != sent.txId && (sent.txId == 0
+                    || !verifier.linearProofLinks(vtx.getDualProof().getLinearProof(), trusted.txId, trusted.txHash))) {
+                return verifyWrittenAt(key, txId, stored, trusted);
+            }
+            return new ImmuState(apiKey, txId, alh.clone(), vtx.getSignature().getSignature().toByteArray());
+        }
+        if (txId == trusted.txId) {
+            if (!Arrays.equals(alh, trusted.txHash)) {
+                throw new VerificationException("Data is corrupted (the tx differs from the trusted one).");
+            }
+            return trusted;
+        }
+        verifyWrittenAt(key, txId, stored, trusted);
+        return trusted;
+    }
+
+    /**
+     * Verify, against the provided state, that the provided value has been written at the provided tx.
+     */
+    private ImmuState verifyWrittenAt(ByteString key, long txId, byte[] stored, ImmuState trusted)
+            throws VerificationException {
+
+        ImmudbProto.VerifiableGetRequest vGetReq = ImmudbProto.VerifiableGetRequest.newBuilder()
+                .setKeyRequest(ImmudbProto.KeyRequest.newBuilder().setKey(key).setAtTx(txId).build())
+                .setProveSinceTx(trusted.txId)
+                .build();
+        ImmudbProto.VerifiableEntry vEntry;
+        try {
+            vEntry = stub.verifiableGet(vGetReq);
+        } catch (StatusRuntimeException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+        ImmudbProto.Entry entry = vEntry.getEntry();
+        if (entry.hasReferencedBy() || entry.getTx() != txId || !entry.getValue().equals(ByteString.copyFrom(stored))) {
+            throw new VerificationException("The written entry differs from the verified one.");
+        }
+        return verify(vGetReq, vEntry, trusted, true);
+    }
+
+    /**
+     * Persist the provided state, unless the saved one is as new already. Advances are serialized (by all
+     * the threads of the client), so the saved state never steps back.
+     */
+    void advanceState(ImmuState newState) {
+        synchronized (stateLock) {
+            ImmuState current = stateHolder.getState(serverId, apiKey);
+            if (current == null || newState.txId > current.txId) {
+                persistState(newState);
+            }
+        }
+    }
+
+    /**
+     * Account for a write done outside of the set methods.
+     */
+    void keyWritten(byte[] key) {
+        if (writeCache != null) {
+            writeCache.invalidate(key);
+        }
+        learnKey(key);
+    }
+
+    /**
+     * A read call whose response is read into {@link PackedEntries}, sampled for verification like the others.
+     */
+    private <ReqT> List<KV> callPacked(MethodDescriptor<ReqT, PackedEntries> method, ReqT req) {
+        PackedEntries entries = ClientCalls.blockingUnaryCall(entriesChannel, method, CallOptions.DEFAULT, req);
+        sampleReads(entries);
+        return new EntriesView(entries, valueCodec);
+    }
+
+    /**
+     * A read-only view over the response: keys and values are copied only when asked for.
+     * The elements are {@link EntryKV} instances.
+     */
     private List<KV> buildList(ImmudbProto.Entries entries) {
-        List<KV> result = new ArrayList<>(entries.getEntriesCount());
-        entries.getEntriesList()
-                .forEach(entry -> result.add(KVPair.from(entry)));
-        return result;
+        return new EntriesView(entries, valueCodec);
     }
 
+    /**
+     * A read-only view over the response: keys and values are copied only when asked for.
+     * The elements are {@link EntryKV} instances.
+     */
     private List<KV> buildList(ImmudbProto.ZEntries entries) {
-        List<KV> result = new ArrayList<>(entries.getEntriesCount());
-        entries.getEntriesList()
-                .forEach(entry -> result.add(KVPair.from(entry)));
-        return result;
+        return new EntriesView(entries, valueCodec);
+    }
+
+    ValueCodec valueCodec() {
+        return valueCodec;
+    }
+
+    byte[] encodeValue(byte[] value) {
+        return valueCodec == null ? value : valueCodec.encode(value);
+    }
+
+    byte[] decodeValue(byte[] stored) {
+        return valueCodec == null ? stored : valueCodec.decode(stored);
     }
 
 }
@@ -19,6 +19,8 @@ public class LedgerComplianceExceptions {
 
     public static final String CORRUPTED_DATA = "data is corrupted";
 
+    public static final String KEY_NOT_FOUND = "key not found";
+
 
     private LedgerComplianceExceptions() {
     }
@@ -0,0 +1,49 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+/**
+ * Layout of the local export file (all numbers are big endian):
+ * <pre>
+ * header  := magic(i32) version(i32)
+ * record  := flags(u8) tx(u64) [seconds(i64) nanos(i32)] keyLen(u32) key valueLen(u32) value
+ * index   := offset(u64) * count
+ * trailer := indexOffset(u64) count(u64) magic(i32)
+ * </pre>
+ * The timestamp fields of a record are present only if {@link #FLAG_TIMESTAMP} is set in its flags.
+ * The index holds the file offset of every record, in the order they were written.
+ */
+final class LedgerExportFormat {
+
+    static final int MAGIC = 0x4C434558; // "LCEX"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 8;
+    static final int TRAILER_SIZE = 20;
+
+    static final byte FLAG_TIMESTAMP = 0x01;
+
+    /**
+     * Size of a record without its timestamp, key and value bytes.
+     */
+    static final int RECORD_FIXED_SIZE = 1 + 8 + 4 + 4;
+    static final int TIMESTAMP_SIZE = 8 + 4;
+
+
+    private LedgerExportFormat() {
+    }
+
+}
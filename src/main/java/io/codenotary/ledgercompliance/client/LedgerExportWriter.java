@@ -0,0 +1,181 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static io.codenotary.ledgercompliance.client.LedgerExportFormat.*;
+
+/**
+ * Append-only writer of the compact export file format described in {@link LedgerExportFormat}.
+ * Records are staged in a direct buffer and written to the file channel in large chunks.
+ * The trailing index is written when the writer is closed; a file without it is not readable.
+ */
+public class LedgerExportWriter implements AutoCloseable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    private long position;
+    private long[] offsets;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Create (or truncate) the export file at the provided path.
+     */
+    public LedgerExportWriter(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create (or truncate) the export file at the provided path, using a write buffer of the given size.
+     */
+    public LedgerExportWriter(Path file, int bufferSize) throws IOException {
+        if (bufferSize < HEADER_SIZE + RECORD_FIXED_SIZE + TIMESTAMP_SIZE) {
+            throw new IllegalArgumentException("Buffer size is too small: " + bufferSize);
+        }
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.offsets = new long[1024];
+
+        buffer.putInt(MAGIC).putInt(VERSION);
+        position = HEADER_SIZE;
+    }
+
+    /**
+     * Append an entry without timestamp.
+     */
+    public void append(byte[] key, long tx, byte[] value) throws IOException {
+        append(UnsafeByteOperations.unsafeWrap(key), tx, UnsafeByteOperations.unsafeWrap(value), false, 0, 0);
+    }
+
+    /**
+     * Append an entry with the timestamp (seconds and nanos since epoch) the ledger assigned to it.
+     */
+    public void append(byte[] key, long tx, byte[] value, long seconds, int nanos) throws IOException {
+        append(UnsafeByteOperations.unsafeWrap(key), tx, UnsafeByteOperations.unsafeWrap(value),
+                true, seconds, nanos);
+    }
+
+    /**
+     * The number of records appended so far.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Append an entry straight from the protobuf bytes, without copying them to the heap.
+     */
+    void append(ByteString key, long tx, ByteString value, boolean hasTs, long seconds, int nanos)
+            throws IOException {
+
+        if (closed) {
+            throw new IllegalStateException("The export writer is closed.");
+        }
+
+        int headSize = RECORD_FIXED_SIZE - 4 + (hasTs ? TIMESTAMP_SIZE : 0);
+
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[count++] = position;
+
+        ensureRemaining(headSize);
+        buffer.put(hasTs ? FLAG_TIMESTAMP : 0).putLong(tx);
+        if (hasTs) {
+            buffer.putLong(seconds).putInt(nanos);
+        }
+        buffer.putInt(key.size());
+        put(key);
+
+        ensureRemaining(4);
+        buffer.putInt(value.size());
+        put(value);
+
+        position += headSize + key.size() + 4 + value.size();
+    }
+
+    private void put(ByteString bytes) throws IOException {
+        if (bytes.size() <= buffer.remaining()) {
+            bytes.copyTo(buffer);
+            return;
+        }
+        if (bytes.size() < buffer.capacity()) {
+            flush();
+            bytes.copyTo(buffer);
+            return;
+        }
+        // Too large for staging: write it as is.
+        flush();
+        ByteBuffer src = bytes.asReadOnlyByteBuffer();
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+
+    private void ensureRemaining(int size) throws IOException {
+        if (buffer.remaining() < size) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write the trailing index and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            long indexOffset = position;
+            for (int i = 0; i < count; i++) {
+                ensureRemaining(8);
+                buffer.putLong(offsets[i]);
+            }
+            ensureRemaining(TRAILER_SIZE);
+            buffer.putLong(indexOffset).putLong(count).putInt(MAGIC);
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+}
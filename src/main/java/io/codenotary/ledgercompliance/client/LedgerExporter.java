@@ -0,0 +1,219 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+import io.grpc.StatusRuntimeException;
+import lc.schema.Lc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Streams ledger entries into a local export file (see {@link LedgerExportWriter}).
+ * Entries are fetched page by page and written straight from the protobuf responses.
+ */
+public class LedgerExporter {
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final LedgerComplianceClient client;
+    private final int pageSize;
+    private final boolean timestamps;
+
+    public LedgerExporter(LedgerComplianceClient client) {
+        this(client, DEFAULT_PAGE_SIZE, false);
+    }
+
+    public LedgerExporter(LedgerComplianceClient client, int pageSize) {
+        this(client, pageSize, false);
+    }
+
+    /**
+     * @param timestamps if true, history exports use the HistoryExt call and include the timestamp
+     *                   the LC backend assigned to each value
+     */
+    public LedgerExporter(LedgerComplianceClient client, int pageSize, boolean timestamps) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.client = client;
+        this.pageSize = pageSize;
+        this.timestamps = timestamps;
+    }
+
+    /**
+     * Export the current value of all the keys having the provided prefix into a new file.
+     *
+     * @return the number of exported entries
+     */
+    public long exportPrefix(String prefix, Path file) throws IOException {
+        return exportPrefix(prefix.getBytes(StandardCharsets.UTF_8), file);
+    }
+
+    /**
+     * Export the current value of all the keys having the provided prefix into a new file.
+     *
+     * @return the number of exported entries
+     */
+    public long exportPrefix(byte[] prefix, Path file) throws IOException {
+        try (LedgerExportWriter writer = new LedgerExportWriter(file)) {
+            return exportPrefix(prefix, writer);
+        }
+    }
+
+    /**
+     * Append the current value of all the keys having the provided prefix to an open export writer.
+     *
+     * @return the number of exported entries
+     */
+    public long exportPrefix(byte[] prefix, LedgerExportWriter writer) throws IOException {
+        ByteString prefixBS = ByteString.copyFrom(prefix);
+        ByteString seekKey = ByteString.EMPTY;
+        long exported = 0;
+
+        while (true) {
+            ImmudbProto.Entries entries = client.scanEntries(ImmudbProto.ScanRequest.newBuilder()
+                    .setPrefix(prefixBS)
+                    .setSeekKey(seekKey)
+                    .setLimit(pageSize)
+                    .build()
+            );
+            int n = entries.getEntriesCount();
+            for (int i = 0; i < n; i++) {
+                ImmudbProto.Entry entry = entries.getEntries(i);
+                if (entry.getKey().equals(seekKey)) {
+                    // The seek key of a continuation page was already exported.
+                    continue;
+                }
+                writer.append(entry.getKey(), entry.getTx(), entry.getValue(), false, 0, 0);
+                exported++;
+            }
+            if (n < pageSize) {
+                return exported;
+            }
+            ByteString lastKey = entries.getEntries(n - 1).getKey();
+            if (lastKey.equals(seekKey)) {
+                return exported;
+            }
+            seekKey = lastKey;
+        }
+    }
+
+    /**
+     * Export the current value of all the keys having the provided prefix into a new file,
+     * scanning the prefix with the given number of concurrent workers (see {@link ParallelScan}).
+     *
+     * @return the number of exported entries
+     */
+    public long exportPrefix(byte[] prefix, Path file, int parallelism) throws IOException {
+        try (LedgerExportWriter writer = new LedgerExportWriter(file)) {
+            return exportPrefix(prefix, writer, parallelism);
+        }
+    }
+
+    /**
+     * Append the current value of all the keys having the provided prefix to an open export writer,
+     * scanning the prefix with the given number of concurrent workers (see {@link ParallelScan}).
+     *
+     * @return the number of exported entries
+     */
+    public long exportPrefix(byte[] prefix, LedgerExportWriter writer, int parallelism) throws IOException {
+        ParallelScan scan = ParallelScan.newBuilder(client)
+                .withPrefix(prefix)
+                .withParallelism(parallelism)
+                .withPageSize(pageSize)
+                .build();
+        long exported = 0;
+        try (Stream<ImmudbProto.Entry> entries = scan.entryStream()) {
+            Iterator<ImmudbProto.Entry> it = entries.iterator();
+            while (it.hasNext()) {
+                ImmudbProto.Entry entry = it.next();
+                writer.append(entry.getKey(), entry.getTx(), entry.getValue(), false, 0, 0);
+                exported++;
+            }
+        }
+        return exported;
+    }
+
+    /**
+     * Export the whole history of the provided keys into a new file.
+     *
+     * @return the number of exported entries
+     */
+    public long exportHistory(List<byte[]> keys, Path file) throws IOException {
+        try (LedgerExportWriter writer = new LedgerExportWriter(file)) {
+            long exported = 0;
+            for (byte[] key : keys) {
+                exported += exportHistory(key, writer);
+            }
+            return exported;
+        }
+    }
+
+    /**
+     * Append the whole history of a key, oldest first, to an open export writer.
+     *
+     * @return the number of exported entries
+     */
+    public long exportHistory(byte[] key, LedgerExportWriter writer) throws IOException {
+        ByteString keyBS = ByteString.copyFrom(key);
+        long exported = 0;
+
+        while (true) {
+            ImmudbProto.HistoryRequest req = ImmudbProto.HistoryRequest.newBuilder()
+                    .setKey(keyBS)
+                    .setOffset(exported)
+                    .setLimit(pageSize)
+                    .build();
+            int n;
+            try {
+                n = timestamps ? appendHistoryExt(req, writer) : appendHistory(req, writer);
+            } catch (StatusRuntimeException e) {
+                // Same as history(): a key without history (or past its end) yields nothing.
+                return exported;
+            }
+            exported += n;
+            if (n < pageSize) {
+                return exported;
+            }
+        }
+    }
+
+    private int appendHistory(ImmudbProto.HistoryRequest req, LedgerExportWriter writer) throws IOException {
+        ImmudbProto.Entries entries = client.historyEntries(req);
+        for (ImmudbProto.Entry entry : entries.getEntriesList()) {
+            writer.append(entry.getKey(), entry.getTx(), entry.getValue(), false, 0, 0);
+        }
+        return entries.getEntriesCount();
+    }
+
+    private int appendHistoryExt(ImmudbProto.HistoryRequest req, LedgerExportWriter writer) throws IOException {
+        Lc.ItemExtList items = client.historyExtItems(req);
+        for (Lc.ItemExt item : items.getItemsList()) {
+            ImmudbProto.Entry entry = item.getItem();
+            writer.append(entry.getKey(), entry.getTx(), entry.getValue(), item.hasTimestamp(),
+                    item.getTimestamp().getSeconds(), item.getTimestamp().getNanos());
+        }
+        return items.getItemsCount();
+    }
+
+}
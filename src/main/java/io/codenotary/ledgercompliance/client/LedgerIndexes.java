@@ -0,0 +1,196 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+import io.codenotary.immudb4j.KV;
+import io.codenotary.immudb4j.TxMetadata;
+import io.codenotary.immudb4j.exceptions.CorruptedDataException;
+import io.grpc.StatusRuntimeException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Secondary indexes of the values written through it, kept as sorted sets.
+ * <p>
+ * An index is a sorted set name and a function extracting a score from a value (NaN leaves the value out of the
+ * index). Each {@link #set} writes the pair and adds the key to every index, with its score, in a single
+ * {@code ExecAll} tx: the pair and its index entries are committed together or not at all.
+ * <p>
+ * Index members reference the latest value of their key, and a key whose score changed is left in the set
+ * under its old score too. Queries recompute the score of each value read and drop the members whose score
+ * is stale, so they may return fewer entries than the limit.
+ */
+public class LedgerIndexes {
+
+    private final LedgerComplianceClient client;
+    private final Map<String, Index> indexes;
+    // The tx of the latest write, so that queries see the writes done through this instance.
+    private final AtomicLong lastTx = new AtomicLong(1);
+
+    private LedgerIndexes(Builder builder) {
+        this.client = builder.client;
+        this.indexes = new LinkedHashMap<>(builder.indexes);
+    }
+
+    public static Builder newBuilder(LedgerComplianceClient client) {
+        return new Builder(client);
+    }
+
+    public Set<String> indexNames() {
+        return indexes.keySet();
+    }
+
+    public TxMetadata set(String key, byte[] value) throws CorruptedDataException {
+        return set(key.getBytes(StandardCharsets.UTF_8), value);
+    }
+
+    /**
+     * Set the provided pair and index it, all in one tx.
+     */
+    public TxMetadata set(byte[] key, byte[] value) throws CorruptedDataException {
+        ByteString keyBS = ByteString.copyFrom(key);
+        ImmudbProto.ExecAllRequest.Builder req = ImmudbProto.ExecAllRequest.newBuilder()
+                .addOperations(ImmudbProto.Op.newBuilder()
+                        .setKv(ImmudbProto.KeyValue.newBuilder()
+                                .setKey(keyBS)
+                                .setValue(ByteString.copyFrom(client.encodeValue(value)))
+                                .build())
+                        .build());
+        int ops = 1;
+        for (Index index : indexes.values()) {
+            double score = index.scorer.applyAsDouble(value);
+            if (Double.isNaN(score)) {
+                continue;
+            }
+            req.addOperations(ImmudbProto.Op.newBuilder()
+                    .setZAdd(ImmudbProto.ZAddRequest.newBuilder()
+                            .setSet(index.set)
+                            .setKey(keyBS)
+                            .setScore(score)
+                            .build())
+                    .build());
+            ops++;
+        }
+
+        ImmudbProto.TxMetadata txMd;
+        try {
+            txMd = client.execAll(req.build());
+        } catch (StatusRuntimeException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+        if (txMd.getNentries() < ops) {
+            throw new CorruptedDataException();
+        }
+        lastTx.accumulateAndGet(txMd.getId(), Math::max);
+        return TxMetadata.valueOf(txMd);
+    }
+
+    /**
+     * The entries of an index, by score.
+     */
+    public List<KV> query(String index, long limit, boolean reverse) {
+        return query(index, null, null, limit, reverse);
+    }
+
+    /**
+     * The entries of an index having a score within the provided bounds (both inclusive), by score.
+     */
+    public List<KV> range(String index, double minScore, double maxScore, long limit, boolean reverse) {
+        return query(index, minScore, maxScore, limit, reverse);
+    }
+
+    private List<KV> query(String name, Double minScore, Double maxScore, long limit, boolean reverse) {
+        Index index = indexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown index: " + name);
+        }
+        ImmudbProto.ZScanRequest.Builder req = ImmudbProto.ZScanRequest.newBuilder()
+                .setSet(index.set)
+                .setLimit(limit)
+                .setDesc(reverse)
+                .setSinceTx(lastTx.get());
+        if (minScore != null) {
+            req.setMinScore(ImmudbProto.Score.newBuilder().setScore(minScore).build());
+        }
+        if (maxScore != null) {
+            req.setMaxScore(ImmudbProto.Score.newBuilder().setScore(maxScore).build());
+        }
+
+        ImmudbProto.ZEntries zEntries = client.zScanEntries(req.build());
+        List<KV> result = new ArrayList<>(zEntries.getEntriesCount());
+        for (ImmudbProto.ZEntry zEntry : zEntries.getEntriesList()) {
+            EntryKV kv = EntriesView.newEntryKV(zEntry.getKey(), zEntry.getEntry().getValue(),
+                    zEntry.getEntry().getTx(), client.valueCodec());
+            if (Double.compare(index.scorer.applyAsDouble(kv.getValue()), zEntry.getScore()) == 0) {
+                result.add(kv);
+            }
+        }
+        return result;
+    }
+
+    private static final class Index {
+
+        final ByteString set;
+        final ToDoubleFunction<byte[]> scorer;
+
+        Index(String set, ToDoubleFunction<byte[]> scorer) {
+            this.set = ByteString.copyFrom(set, StandardCharsets.UTF_8);
+            this.scorer = scorer;
+        }
+    }
+
+    /**
+     * The builder used for defining the indexes.
+     */
+    public static class Builder {
+
+        private final LedgerComplianceClient client;
+        private final Map<String, Index> indexes;
+
+        private Builder(LedgerComplianceClient client) {
+            this.client = client;
+            this.indexes = new LinkedHashMap<>();
+        }
+
+        /**
+         * Index the values in the provided sorted set, by the score the provided function gives them.
+         */
+        public Builder addIndex(String set, ToDoubleFunction<byte[]> scorer) {
+            if (indexes.containsKey(set)) {
+                throw new IllegalArgumentException("Duplicate index: " + set);
+            }
+            indexes.put(set, new Index(set, scorer));
+            return this;
+        }
+
+        public LedgerIndexes build() {
+            if (indexes.isEmpty()) {
+                throw new IllegalStateException("At least one index is required.");
+            }
+            return new LedgerIndexes(this);
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import io.codenotary.immudb4j.KV;
+import io.codenotary.immudb4j.TxMetadata;
+import io.codenotary.immudb4j.exceptions.VerificationException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+
+/**
+ * A typed view of the ledger keys under a namespace (a key prefix).
+ * <p>
+ * Keys and values are converted by {@link LedgerCodec}s that write into a per-thread reusable buffer,
+ * and read straight from the response bytes. Lists returned by {@link #scan} and {@link #history}
+ * decode their elements when accessed.
+ */
+public class LedgerMap<K, V> {
+
+    private final LedgerComplianceClient client;
+    private final byte[] namespace;
+    private final LedgerCodec<K> keyCodec;
+    private final LedgerCodec<V> valueCodec;
+    private final ThreadLocal<LedgerBuffer> buffer;
+
+    public LedgerMap(LedgerComplianceClient client, String namespace,
+                     LedgerCodec<K> keyCodec, LedgerCodec<V> valueCodec) {
+        this(client, namespace.getBytes(StandardCharsets.UTF_8), keyCodec, valueCodec);
+    }
+
+    public LedgerMap(LedgerComplianceClient client, byte[] namespace,
+                     LedgerCodec<K> keyCodec, LedgerCodec<V> valueCodec) {
+        this.client = client;
+        this.namespace = namespace.clone();
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.buffer = ThreadLocal.withInitial(LedgerBuffer::new);
+    }
+
+    public void put(K key, V value) {
+        client.set(encodeKey(key), encodeValue(value));
+    }
+
+    public TxMetadata verifiedPut(K key, V value) throws VerificationException {
+        return client.verifiedSet(encodeKey(key), encodeValue(value));
+    }
+
+    /**
+     * @throws KeyNotFoundException if the key does not exist
+     */
+    public V get(K key) {
+        return valueCodec.decode(ByteBuffer.wrap(client.get(encodeKey(key))));
+    }
+
+    public Optional<V> tryGet(K key) {
+        return client.tryGet(encodeKey(key)).map(value -> valueCodec.decode(ByteBuffer.wrap(value)));
+    }
+
+    /**
+     * @throws KeyNotFoundException if the key does not exist
+     */
+    public V verifiedGet(K key) throws VerificationException {
+        return valueCodec.decode(ByteBuffer.wrap(client.verifiedGet(encodeKey(key))));
+    }
+
+    /**
+     * All the entries of the namespace (up to the server scan limit).
+     */
+    public List<Map.Entry<K, V>> scan() {
+        return scan(0, 0, false);
+    }
+
+    public List<Map.Entry<K, V>> scan(long sinceTxId, long limit, boolean reverse) {
+        return new EntryView(client.scan(namespace, sinceTxId, limit, reverse));
+    }
+
+    /**
+     * The values that were set over time for the provided key.
+     */
+    public List<V> history(K key, int limit, long offset, boolean reverse) {
+        return new ValueView(client.history(encodeKey(key), limit, offset, reverse));
+    }
+
+    private byte[] encodeKey(K key) {
+        LedgerBuffer out = buffer.get();
+        out.reset();
+        out.writeBytes(namespace);
+        keyCodec.encode(key, out);
+        return out.toByteArray();
+    }
+
+    private byte[] encodeValue(V value) {
+        LedgerBuffer out = buffer.get();
+        out.reset();
+        valueCodec.encode(value, out);
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer keyBuffer(KV kv) {
+        return kv instanceof EntryKV ? ((EntryKV) kv).keyBuffer() : ByteBuffer.wrap(kv.getKey());
+    }
+
+    private static ByteBuffer valueBuffer(KV kv) {
+        return kv instanceof EntryKV ? ((EntryKV) kv).valueBuffer() : ByteBuffer.wrap(kv.getValue());
+    }
+
+    private final class EntryView extends AbstractList<Map.Entry<K, V>> implements RandomAccess {
+
+        private final List<KV> kvs;
+
+        EntryView(List<KV> kvs) {
+            this.kvs = kvs;
+        }
+
+        @Override
+        public Map.Entry<K, V> get(int index) {
+            KV kv = kvs.get(index);
+            ByteBuffer key = keyBuffer(kv);
+            key.position(key.position() + namespace.length);
+            return new AbstractMap.SimpleImmutableEntry<>(keyCodec.decode(key), valueCodec.decode(valueBuffer(kv)));
+        }
+
+        @Override
+        public int size() {
+            return kvs.size();
+        }
+    }
+
+    private final class ValueView extends AbstractList<V> implements RandomAccess {
+
+        private final List<KV> kvs;
+
+        ValueView(List<KV> kvs) {
+            this.kvs = kvs;
+        }
+
+        @Override
+        public V get(int index) {
+            return valueCodec.decode(valueBuffer(kvs.get(index)));
+        }
+
+        @Override
+        public int size() {
+            return kvs.size();
+        }
+    }
+
+}
@@ -0,0 +1,681 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A durable local outbox of writes, drained into the ledger in the background.
+ * <p>
+ * {@link #append} only writes the pair to a local log and returns its sequence number: bursts are absorbed at
+ * memory-mapped append speed, whether the ledger is available or not. A background thread sends the appended
+ * pairs in order, in batches of up to a configured number of entries and bytes (one tx per batch, split where a
+ * key repeats), and checkpoints the last committed sequence number. Failed batches are retried with backoff.
+ * <p>
+ * The log is a directory of fixed-size memory-mapped segments, deleted once fully committed. Each record is
+ * checksummed, so a record torn by a crash is dropped when the outbox is reopened; the records appended but not
+ * committed are then replayed. Delivery is at least once: a batch committed by the ledger but not checkpointed
+ * (e.g. the process died before the response arrived) is sent again.
+ * <p>
+ * An appended record survives the crash of the process; with synchronous writes, it also survives the crash
+ * of the host, at the cost of a flush per append.
+ */
+public class LedgerOutbox implements AutoCloseable {
+
+    // Record: body length (int), body CRC32 (int), then the body: seq (long), key length (int), key, value.
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int BODY_HEADER_SIZE = 12;
+
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "outbox.checkpoint";
+
+    private final LedgerComplianceClient client;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxBatchEntries;
+    private final int maxBatchBytes;
+    private final boolean syncWrites;
+    private final long minRetryNanos;
+    private final long maxRetryNanos;
+    private final Consumer<RuntimeException> errorHandler;
+
+    private final FileChannel checkpointChannel;
+    private final ByteBuffer checkpointBuffer = ByteBuffer.allocate(8);
+    private final CRC32 crc = new CRC32();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    // Guarded by lock: the live segments, oldest first, the last one being appended to.
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long nextSeq;
+
+    // Owned by the drain thread: where the next batch starts.
+    private Segment readSegment;
+    private int readPos;
+
+    private volatile long appendedSeq;
+    private volatile long committedSeq;
+    private volatile boolean closed;
+
+    private final Thread thread;
+
+    private LedgerOutbox(Builder builder) throws IOException {
+        this.client = builder.client;
+        this.directory = builder.directory;
+        this.segmentSize = builder.segmentSize;
+        this.maxBatchEntries = builder.maxBatchEntries;
+        this.maxBatchBytes = builder.maxBatchBytes;
+        this.syncWrites = builder.syncWrites;
+        this.minRetryNanos = builder.minRetryNanos;
+        this.maxRetryNanos = builder.maxRetryNanos;
+        this.errorHandler = builder.errorHandler;
+
+        Files.createDirectories(directory);
+        this.checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            closeFiles();
+            throw e;
+        }
+        this.thread = new Thread(this::run, "lc-outbox");
+        this.thread.setDaemon(true);
+    }
+
+    public static Builder newBuilder(LedgerComplianceClient client) {
+        return new Builder(client);
+    }
+
+    /**
+     * Append a pair to the outbox.
+     *
+     * @return the sequence number of the pair, committed once {@link #committed()} reaches it
+     */
+    public long append(String key, byte[] value) {
+        return append(key.getBytes(StandardCharsets.UTF_8), value);
+    }
+
+    /**
+     * Append a pair to the outbox.
+     *
+     * @return the sequence number of the pair, committed once {@link #committed()} reaches it
+     */
+    public long append(byte[] key, byte[] value) {
+        int bodyLength = BODY_HEADER_SIZE + key.length + value.length;
+        int recordLength = RECORD_HEADER_SIZE + bodyLength;
+        if (recordLength > segmentSize) {
+            throw new IllegalArgumentException("The entry does not fit in an outbox segment: " + recordLength);
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The outbox is closed.");
+            }
+            Segment segment = segments.peekLast();
+            if (segment.capacity() - segment.limit < recordLength) {
+                segment = roll();
+            }
+
+            long seq = nextSeq;
+            int pos = segment.limit;
+            ByteBuffer w = segment.writer;
+            w.clear();
+            w.position(pos + RECORD_HEADER_SIZE);
+            w.putLong(seq).putInt(key.length).put(key).put(value);
+            w.limit(w.position());
+            w.position(pos + RECORD_HEADER_SIZE);
+            crc.reset();
+            crc.update(w);
+            w.putInt(pos + 4, (int) crc.getValue());
+            // The length goes last: until it is written, the record does not exist.
+            w.putInt(pos, bodyLength);
+            if (syncWrites) {
+                segment.buffer.force();
+            }
+
+            segment.lastSeq = seq;
+            segment.limit = pos + recordLength;
+            nextSeq = seq + 1;
+            appendedSeq = seq;
+            appended.signalAll();
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The sequence number of the last appended pair (0 if none).
+     */
+    public long appended() {
+        return appendedSeq;
+    }
+
+    /**
+     * The sequence number up to which all the pairs have been committed into the ledger.
+     */
+    public long committed() {
+        return committedSeq;
+    }
+
+    /**
+     * The number of pairs appended but not committed yet.
+     */
+    public long pending() {
+        return appendedSeq - committedSeq;
+    }
+
+    /**
+     * Wait until all the pairs appended so far have been committed.
+     *
+     * @return false if the timeout elapsed first
+     */
+    public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = appendedSeq;
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (committedSeq < target) {
+                if (nanos <= 0 || closed) {
+                    return committedSeq >= target;
+                }
+                nanos = drained.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stop draining, once the batch being sent (if any) completes, and close the log.
+     * The pairs not committed yet are replayed when the outbox is opened again.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appended.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeFiles();
+    }
+
+    private void run() {
+        long retryNanos = minRetryNanos;
+        while (awaitAppended(0)) {
+            Batch batch = nextBatch();
+            if (batch.lastSeq == committedSeq) {
+                continue;
+            }
+            try {
+                client.setEntries(batch.request.build());
+            } catch (RuntimeException e) {
+                onError(e);
+                awaitAppended(retryNanos);
+                retryNanos = Math.min(maxRetryNanos, retryNanos * 2);
+                continue;
+            }
+            retryNanos = minRetryNanos;
+            commit(batch);
+        }
+    }
+
+    /**
+     * Wait for pairs to drain (or, with a positive timeout, for the retry backoff).
+     *
+     * @return false once the outbox is closed
+     */
+    private boolean awaitAppended(long backoffNanos) {
+        lock.lock();
+        try {
+            if (backoffNanos > 0) {
+                long nanos = backoffNanos;
+                while (!closed && nanos > 0) {
+                    nanos = appended.awaitNanos(nanos);
+                }
+            } else {
+                while (!closed && committedSeq == appendedSeq) {
+                    appended.await();
+                }
+            }
+            return !closed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read the next batch from the read position: up to the batch limits, stopping before a repeated key
+     * (a tx can't set a key twice).
+     */
+    private Batch nextBatch() {
+        ImmudbProto.SetRequest.Builder request = ImmudbProto.SetRequest.newBuilder();
+        Set<ByteString> keys = new HashSet<>();
+        ValueCodec codec = client.valueCodec();
+        Segment segment = readSegment;
+        int pos = readPos;
+        int bytes = 0;
+        long lastSeq = committedSeq;
+
+        while (keys.size() < maxBatchEntries) {
+            // Read next before limit: a segment is only rolled after its last record is published.
+            Segment next = segment.next;
+            if (pos >= segment.limit) {
+                if (next == null) {
+                    break;
+                }
+                segment = next;
+                pos = 0;
+                continue;
+            }
+
+            ByteBuffer r = segment.reader;
+            r.clear();
+            int bodyLength = r.getInt(pos);
+            int keyLength = r.getInt(pos + RECORD_HEADER_SIZE + 8);
+            int keyStart = pos + RECORD_HEADER_SIZE + BODY_HEADER_SIZE;
+            int valueEnd = pos + RECORD_HEADER_SIZE + bodyLength;
+            ByteString key = copy(r, keyStart, keyStart + keyLength);
+            if (!keys.isEmpty() && (bytes + bodyLength > maxBatchBytes || keys.contains(key))) {
+                break;
+            }
+            ByteString value;
+            if (codec == null) {
+                value = copy(r, keyStart + keyLength, valueEnd);
+            } else {
+                byte[] raw = new byte[valueEnd - keyStart - keyLength];
+                r.position(keyStart + keyLength);
+                r.get(raw);
+                value = ByteString.copyFrom(codec.encode(raw));
+            }
+
+            request.addKVs(ImmudbProto.KeyValue.newBuilder().setKey(key).setValue(value));
+            keys.add(key);
+            bytes += bodyLength;
+            r.clear();
+            lastSeq = r.getLong(pos + RECORD_HEADER_SIZE);
+            pos = valueEnd;
+        }
+        return new Batch(request, segment, pos, lastSeq);
+    }
+
+    private static ByteString copy(ByteBuffer buffer, int from, int to) {
+        buffer.clear();
+        buffer.position(from);
+        buffer.limit(to);
+        return ByteString.copyFrom(buffer);
+    }
+
+    private void commit(Batch batch) {
+        readSegment = batch.segment;
+        readPos = batch.pos;
+        lock.lock();
+        try {
+            committedSeq = batch.lastSeq;
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            checkpointBuffer.clear();
+            checkpointBuffer.putLong(batch.lastSeq).flip();
+            checkpointChannel.write(checkpointBuffer, 0);
+            checkpointChannel.force(false);
+            releaseSegments(batch.lastSeq);
+        } catch (IOException e) {
+            // The next batch checkpoints again; until then, a restart replays a little more.
+            onError(new UncheckedIOException(e));
+        }
+    }
+
+    /**
+     * Delete the segments (but the one being appended to) whose records are all committed.
+     */
+    private void releaseSegments(long checkpoint) throws IOException {
+        while (true) {
+            Segment oldest;
+            lock.lock();
+            try {
+                oldest = segments.peekFirst();
+                if (oldest == segments.peekLast() || oldest.lastSeq > checkpoint || oldest == readSegment) {
+                    return;
+                }
+                segments.pollFirst();
+            } finally {
+                lock.unlock();
+            }
+            oldest.channel.close();
+            Files.deleteIfExists(oldest.path);
+        }
+    }
+
+    private void onError(RuntimeException e) {
+        if (errorHandler != null) {
+            errorHandler.accept(e);
+        }
+    }
+
+    /**
+     * Start a new segment. Called with the lock held.
+     */
+    private Segment roll() {
+        try {
+            Segment segment = Segment.create(segmentPath(nextSeq), segmentSize);
+            segments.peekLast().next = segment;
+            segments.addLast(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentPath(long firstSeq) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Load the checkpoint and the segments, dropping a record torn by a crash and the committed segments.
+     */
+    private void recover() throws IOException {
+        long checkpoint = 0;
+        if (checkpointChannel.size() >= 8) {
+            checkpointChannel.read(checkpointBuffer, 0);
+            checkpointBuffer.flip();
+            checkpoint = checkpointBuffer.getLong();
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        // Names carry the zero-padded first sequence number.
+        Collections.sort(files);
+
+        long expectedSeq = -1;
+        for (Path file : files) {
+            Segment segment = Segment.open(file);
+            segments.addLast(segment);
+            expectedSeq = scan(segment, expectedSeq);
+        }
+
+        nextSeq = Math.max(expectedSeq, checkpoint + 1);
+        appendedSeq = nextSeq - 1;
+        committedSeq = Math.min(checkpoint, appendedSeq);
+
+        while (!segments.isEmpty() && segments.peekFirst().lastSeq <= checkpoint) {
+            Segment committed = segments.pollFirst();
+            committed.channel.close();
+            Files.deleteIfExists(committed.path);
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(Segment.create(segmentPath(nextSeq), segmentSize));
+        }
+        Segment previous = null;
+        for (Segment segment : segments) {
+            if (previous != null) {
+                previous.next = segment;
+            }
+            previous = segment;
+        }
+
+        // Position the read cursor on the first record not committed.
+        readSegment = segments.peekFirst();
+        readPos = 0;
+        ByteBuffer r = readSegment.reader;
+        r.clear();
+        while (readPos < readSegment.limit && r.getLong(readPos + RECORD_HEADER_SIZE) <= checkpoint) {
+            readPos += RECORD_HEADER_SIZE + r.getInt(readPos);
+        }
+    }
+
+    /**
+     * Find the end of the valid records of a segment, zeroing a torn record.
+     *
+     * @return the sequence number expected for the record following the segment
+     */
+    private long scan(Segment segment, long expectedSeq) throws IOException {
+        ByteBuffer r = segment.reader;
+        int pos = 0;
+        while (pos + RECORD_HEADER_SIZE + BODY_HEADER_SIZE <= segment.capacity()) {
+            r.clear();
+            int bodyLength = r.getInt(pos);
+            if (bodyLength < BODY_HEADER_SIZE || bodyLength > segment.capacity() - pos - RECORD_HEADER_SIZE) {
+                break;
+            }
+            r.clear();
+            r.position(pos + RECORD_HEADER_SIZE);
+            r.limit(pos + RECORD_HEADER_SIZE + bodyLength);
+            crc.reset();
+            crc.update(r);
+            long seq = r.getLong(pos + RECORD_HEADER_SIZE);
+            if ((int) crc.getValue() != r.getInt(pos + 4)) {
+                break;
+            }
+            if (expectedSeq != -1 && seq != expectedSeq) {
+                throw new IOException("Outbox segment out of sequence (" + seq + " instead of "
+                        + expectedSeq + "): " + segment.path);
+            }
+            expectedSeq = seq + 1;
+            segment.lastSeq = seq;
+            pos += RECORD_HEADER_SIZE + bodyLength;
+        }
+
+        segment.limit = pos;
+        ByteBuffer w = segment.writer;
+        w.clear();
+        if (pos + 4 <= segment.capacity() && w.getInt(pos) != 0) {
+            int end = (int) Math.min(segment.capacity(), (long) pos + RECORD_HEADER_SIZE + w.getInt(pos));
+            for (int i = pos; i < end; i++) {
+                w.put(i, (byte) 0);
+            }
+        }
+        return expectedSeq;
+    }
+
+    private void closeFiles() throws IOException {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            segment.channel.close();
+        }
+        checkpointChannel.close();
+    }
+
+    private static final class Segment {
+
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        // Views with their own position: one for the appending threads, one for the drain thread.
+        final ByteBuffer writer;
+        final ByteBuffer reader;
+
+        // Published by the appending threads (with the lock held), read by the drain thread.
+        volatile int limit;
+        volatile long lastSeq;
+        volatile Segment next;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.writer = buffer.duplicate();
+            this.reader = buffer.duplicate();
+        }
+
+        static Segment create(Path path, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        static Segment open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+    }
+
+    private static final class Batch {
+
+        final ImmudbProto.SetRequest.Builder request;
+        final Segment segment;
+        final int pos;
+        final long lastSeq;
+
+        Batch(ImmudbProto.SetRequest.Builder request, Segment segment, int pos, long lastSeq) {
+            this.request = request;
+            this.segment = segment;
+            this.pos = pos;
+            this.lastSeq = lastSeq;
+        }
+    }
+
+    /**
+     * The builder used for opening (and starting) an outbox.
+     */
+    public static class Builder {
+
+        private final LedgerComplianceClient client;
+        private Path directory;
+        private int segmentSize;
+        private int maxBatchEntries;
+        private int maxBatchBytes;
+        private boolean syncWrites;
+        private long minRetryNanos;
+        private long maxRetryNanos;
+        private Consumer<RuntimeException> errorHandler;
+
+        private Builder(LedgerComplianceClient client) {
+            this.client = client;
+            this.segmentSize = 64 * 1024 * 1024;
+            this.maxBatchEntries = 1000;
+            this.maxBatchBytes = 2 * 1024 * 1024;
+            this.minRetryNanos = TimeUnit.MILLISECONDS.toNanos(50);
+            this.maxRetryNanos = TimeUnit.SECONDS.toNanos(5);
+        }
+
+        /**
+         * The directory of the log, created if needed. An outbox reopened on the same directory replays the
+         * pairs left uncommitted.
+         */
+        public Builder withDirectory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        public Builder withSegmentSize(int bytes) {
+            this.segmentSize = bytes;
+            return this;
+        }
+
+        public Builder withMaxBatch(int entries, int bytes) {
+            this.maxBatchEntries = entries;
+            this.maxBatchBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Flush every append to the storage device before acknowledging it.
+         */
+        public Builder withSyncWrites(boolean syncWrites) {
+            this.syncWrites = syncWrites;
+            return this;
+        }
+
+        public Builder withRetryBackoff(long min, long max, TimeUnit unit) {
+            this.minRetryNanos = Math.max(1, unit.toNanos(min));
+            this.maxRetryNanos = Math.max(this.minRetryNanos, unit.toNanos(max));
+            return this;
+        }
+
+        /**
+         * Receives, on the drain thread, the errors of the batches (which are retried) and of the checkpoints.
+         */
+        public Builder withErrorHandler(Consumer<RuntimeException> errorHandler) {
+            this.errorHandler = errorHandler;
+            return this;
+        }
+
+        public LedgerOutbox start() throws IOException {
+            if (directory == null) {
+                throw new IllegalStateException("An outbox directory is required.");
+            }
+            if (segmentSize < RECORD_HEADER_SIZE + BODY_HEADER_SIZE) {
+                throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+            }
+            if (maxBatchEntries <= 0 || maxBatchBytes <= 0) {
+                throw new IllegalArgumentException("Batch limits must be positive.");
+            }
+            LedgerOutbox outbox = new LedgerOutbox(this);
+            outbox.thread.start();
+            return outbox;
+        }
+    }
+
+}
@@ -0,0 +1,451 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import io.codenotary.immudb4j.KV;
+import io.codenotary.immudb4j.KVPair;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static io.codenotary.ledgercompliance.client.LedgerExportFormat.*;
+
+/**
+ * Offline, read-only access to a file produced by {@link LedgerExporter} (or {@link LedgerExportWriter}).
+ * The file is memory-mapped and indexed by (key, tx) in a primitive array, so lookups and scans
+ * read the records in place and only copy the entries that are returned.
+ * <p>
+ * The operations mirror the ones of {@link LedgerComplianceClient} and return the same types.
+ * Files larger than 2 GB are mapped as several regions, addressed by long offsets.
+ */
+public class LedgerSnapshotReader implements AutoCloseable {
+
+    private static final int REGION_BITS = 30;
+    private static final long REGION_SIZE = 1L << REGION_BITS;
+    private static final long REGION_MASK = REGION_SIZE - 1;
+
+    /**
+     * The file, mapped in consecutive regions of REGION_SIZE bytes (the last one may be shorter).
+     */
+    private final MappedByteBuffer[] regions;
+
+    /**
+     * Record offsets, sorted by key and tx.
+     */
+    private final long[] index;
+
+    private LedgerSnapshotReader(MappedByteBuffer[] regions, long[] index) {
+        this.regions = regions;
+        this.index = index;
+    }
+
+    /**
+     * Map and index the provided export file.
+     */
+    public static LedgerSnapshotReader open(Path file) throws IOException {
+
+        long size;
+        MappedByteBuffer[] regions;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Not a ledger export file (too short).");
+            }
+            regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) >>> REGION_BITS)];
+            for (int i = 0; i < regions.length; i++) {
+                long start = (long) i << REGION_BITS;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+            }
+        }
+
+        LedgerSnapshotReader reader = new LedgerSnapshotReader(regions, new long[0]);
+        if (reader.getInt(0) != MAGIC || reader.getInt(size - 4) != MAGIC) {
+            throw new IOException("Not a ledger export file (bad magic).");
+        }
+        if (reader.getInt(4) != VERSION) {
+            throw new IOException("Unsupported ledger export file version: " + reader.getInt(4));
+        }
+
+        long indexOffset = reader.getLong(size - TRAILER_SIZE);
+        long count = reader.getLong(size - TRAILER_SIZE + 8);
+        if (count < 0 || count > Integer.MAX_VALUE - 8 || indexOffset < HEADER_SIZE
+                || indexOffset + count * 8 != size - TRAILER_SIZE) {
+            throw new IOException("Ledger export file is truncated or corrupted (bad index).");
+        }
+
+        long[] index = new long[(int) count];
+        for (int i = 0; i < index.length; i++) {
+            long offset = reader.getLong(indexOffset + i * 8L);
+            if (offset < HEADER_SIZE || offset >= indexOffset) {
+                throw new IOException("Ledger export file is corrupted (bad record offset).");
+            }
+            index[i] = offset;
+        }
+
+        reader = new LedgerSnapshotReader(regions, index);
+        reader.sortIndex();
+        return reader;
+    }
+
+    /**
+     * The total number of entries (all keys, all versions) in the snapshot.
+     */
+    public int size() {
+        return index.length;
+    }
+
+    /**
+     * Get the latest value of the provided key, or null if the snapshot does not contain it.
+     */
+    public byte[] get(String key) {
+        return get(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the latest value of the provided key, or null if the snapshot does not contain it.
+     */
+    public byte[] get(byte[] key) {
+        int end = lowerBound(key, true);
+        if (end == 0 || compareKey(index[end - 1], key) != 0) {
+            return null;
+        }
+        return value(index[end - 1]);
+    }
+
+    /**
+     * Get the tx of the latest value of the provided key, or 0 if the snapshot does not contain it.
+     */
+    public long getTx(byte[] key) {
+        int end = lowerBound(key, true);
+        if (end == 0 || compareKey(index[end - 1], key) != 0) {
+            return 0;
+        }
+        return getLong(index[end - 1] + 1);
+    }
+
+    /**
+     * Scan the latest values of all the keys having the provided prefix.
+     */
+    public List<KV> scan(String prefix) {
+        return scan(prefix.getBytes(StandardCharsets.UTF_8), 0, false);
+    }
+
+    /**
+     * Scan the latest values of all the keys having the provided prefix.
+     */
+    public List<KV> scan(byte[] prefix) {
+        return scan(prefix, 0, false);
+    }
+
+    /**
+     * Scan the latest values of the keys having the provided prefix.
+     *
+     * @param limit   the maximum number of entries to return; 0 means no limit
+     * @param reverse if true, keys are returned in descending order
+     */
+    public List<KV> scan(byte[] prefix, long limit, boolean reverse) {
+        int from = lowerBound(prefix, false);
+        int to = from;
+        while (to < index.length && hasPrefix(index[to], prefix)) {
+            to++;
+        }
+
+        List<KV> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            // The last entry of each key holds its latest value.
+            if (i + 1 == to || compareKeys(index[i], index[i + 1]) != 0) {
+                result.add(kv(index[i]));
+            }
+        }
+        if (reverse) {
+            Collections.reverse(result);
+        }
+        if (limit > 0 && result.size() > limit) {
+            return new ArrayList<>(result.subList(0, (int) limit));
+        }
+        return result;
+    }
+
+    /**
+     * Get the history of a key: values that were been set over time.
+     */
+    public List<KV> history(String key, int limit, long offset, boolean reverse) {
+        return history(key.getBytes(StandardCharsets.UTF_8), limit, offset, reverse);
+    }
+
+    /**
+     * Get the history of a key: values that were been set over time.
+     */
+    public List<KV> history(byte[] key, int limit, long offset, boolean reverse) {
+        int from = lowerBound(key, false);
+        int to = lowerBound(key, true);
+        int n = to - from;
+        if (offset >= n) {
+            return new ArrayList<>(0);
+        }
+        int count = n - (int) offset;
+        if (limit > 0 && limit < count) {
+            count = limit;
+        }
+        List<KV> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int pos = reverse ? to - 1 - (int) offset - i : from + (int) offset + i;
+            result.add(kv(index[pos]));
+        }
+        return result;
+    }
+
+    /**
+     * Does not release anything: Java 8 has no public API to unmap a buffer, so the mapping outlives this call
+     * and is only released once the reader gets garbage collected. Until then, the reader remains usable
+     * (and, on some platforms, the file cannot be deleted).
+     */
+    @Override
+    public void close() {
+    }
+
+
+    //
+    // ========== RECORD ACCESS ==========
+    //
+
+
+    private long keyLenPos(long record) {
+        boolean hasTs = (getByte(record) & FLAG_TIMESTAMP) != 0;
+        return record + 1 + 8 + (hasTs ? TIMESTAMP_SIZE : 0);
+    }
+
+    private KV kv(long record) {
+        long p = keyLenPos(record);
+        byte[] key = new byte[getInt(p)];
+        read(p + 4, key);
+        p += 4 + key.length;
+        byte[] value = new byte[getInt(p)];
+        read(p + 4, value);
+        return new KVPair(key, value);
+    }
+
+    private byte[] value(long record) {
+        long p = keyLenPos(record);
+        p += 4 + getInt(p);
+        byte[] value = new byte[getInt(p)];
+        read(p + 4, value);
+        return value;
+    }
+
+    private void read(long pos, byte[] dst) {
+        int done = 0;
+        while (done < dst.length) {
+            // A duplicate has its own position, so concurrent readers don't interfere.
+            ByteBuffer src = regions[(int) (pos >>> REGION_BITS)].duplicate();
+            src.position((int) (pos & REGION_MASK));
+            int n = Math.min(dst.length - done, src.remaining());
+            src.get(dst, done, n);
+            done += n;
+            pos += n;
+        }
+    }
+
+    private byte getByte(long pos) {
+        return regions[(int) (pos >>> REGION_BITS)].get((int) (pos & REGION_MASK));
+    }
+
+    private int getInt(long pos) {
+        MappedByteBuffer region = regions[(int) (pos >>> REGION_BITS)];
+        int offset = (int) (pos & REGION_MASK);
+        if (offset + 4 <= region.capacity()) {
+            return region.getInt(offset);
+        }
+        // Split across two regions.
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            v = (v << 8) | (getByte(pos + i) & 0xff);
+        }
+        return v;
+    }
+
+    private long getLong(long pos) {
+        MappedByteBuffer region = regions[(int) (pos >>> REGION_BITS)];
+        int offset = (int) (pos & REGION_MASK);
+        if (offset + 8 <= region.capacity()) {
+            return region.getLong(offset);
+        }
+        // Split across two regions.
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (getByte(pos + i) & 0xff);
+        }
+        return v;
+    }
+
+    private boolean hasPrefix(long record, byte[] prefix) {
+        long p = keyLenPos(record);
+        if (getInt(p) < prefix.length) {
+            return false;
+        }
+        p += 4;
+        for (int i = 0; i < prefix.length; i++) {
+            if (getByte(p + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compare (unsigned, lexicographically) the key of a record with the provided one.
+     */
+    private int compareKey(long record, byte[] key) {
+        long p = keyLenPos(record);
+        int len = getInt(p);
+        p += 4;
+        int n = Math.min(len, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = (getByte(p + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len - key.length;
+    }
+
+    private int compareKeys(long r1, long r2) {
+        long p1 = keyLenPos(r1);
+        long p2 = keyLenPos(r2);
+        int len1 = getInt(p1);
+        int len2 = getInt(p2);
+        p1 += 4;
+        p2 += 4;
+        int n = Math.min(len1, len2);
+        for (int i = 0; i < n; i++) {
+            int c = (getByte(p1 + i) & 0xff) - (getByte(p2 + i) & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len1 - len2;
+    }
+
+    private int compareRecords(long r1, long r2) {
+        int c = compareKeys(r1, r2);
+        if (c != 0) {
+            return c;
+        }
+        c = Long.compare(getLong(r1 + 1), getLong(r2 + 1));
+        if (c != 0) {
+            return c;
+        }
+        return Long.compare(r1, r2);
+    }
+
+    /**
+     * The position of the first record whose key is greater or equal (or strictly greater, if upper is true)
+     * than the provided one.
+     */
+    private int lowerBound(byte[] key, boolean upper) {
+        int lo = 0;
+        int hi = index.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareKey(index[mid], key);
+            if (c < 0 || (upper && c == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+
+    //
+    // ========== INDEX SORTING ==========
+    //
+
+
+    private void sortIndex() {
+        // Exports are mostly written in key order already, so check before sorting.
+        for (int i = 1; i < index.length; i++) {
+            if (compareRecords(index[i - 1], index[i]) > 0) {
+                quickSort(0, index.length - 1);
+                return;
+            }
+        }
+    }
+
+    private void quickSort(int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            // median of three as pivot
+            if (compareRecords(index[mid], index[lo]) < 0) {
+                swap(mid, lo);
+            }
+            if (compareRecords(index[hi], index[lo]) < 0) {
+                swap(hi, lo);
+            }
+            if (compareRecords(index[hi], index[mid]) < 0) {
+                swap(hi, mid);
+            }
+            long pivot = index[mid];
+
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compareRecords(index[i], pivot) < 0) {
+                    i++;
+                }
+                while (compareRecords(index[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // Recurse into the smaller part, loop on the larger one.
+            if (j - lo < hi - i) {
+                quickSort(lo, j);
+                lo = i;
+            } else {
+                quickSort(i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            long r = index[i];
+            int j = i - 1;
+            while (j >= lo && compareRecords(index[j], r) > 0) {
+                index[j + 1] = index[j];
+                j--;
+            }
+            index[j + 1] = r;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long t = index[i];
+        index[i] = index[j];
+        index[j] = t;
+    }
+
+}
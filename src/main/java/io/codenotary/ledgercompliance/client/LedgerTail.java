@@ -0,0 +1,295 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+import io.grpc.StatusRuntimeException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A subscription to the changes of the keys having a given prefix.
+ * <p>
+ * Each poll pins an upper bound (the current ledger tx), scans the prefix (indexed at least up to that bound) and
+ * delivers, in tx order, the entries set after the checkpoint and up to that bound; then the bound becomes
+ * the new checkpoint. When nothing has been committed since the checkpoint, the poll costs a single
+ * state request, and the interval between polls backs off exponentially up to a maximum.
+ * <p>
+ * Entries are delivered exactly once as long as the listener does not fail. If it does, the tail stops and its
+ * checkpoint stays at the last completely delivered poll, so resuming from it redelivers that poll's entries.
+ * <p>
+ * By default only the latest value of a key is delivered, even if it has been set more times since the previous
+ * poll; with full history, every value is delivered (one extra history request per changed key).
+ */
+public class LedgerTail implements AutoCloseable {
+
+    /**
+     * Receives the entries of a tail. All methods are called from the tail thread.
+     */
+    public interface Listener {
+
+        void onEntry(KVExt entry);
+
+        /**
+         * All the entries up to the provided tx have been delivered: a tail started from it won't repeat them.
+         */
+        default void onCheckpoint(long txId) {
+        }
+
+        /**
+         * A poll failed. Server errors are retried after the idle backoff; listener errors stop the tail.
+         */
+        default void onError(RuntimeException e) {
+        }
+    }
+
+    private final LedgerComplianceClient client;
+    private final ByteString prefix;
+    private final Listener listener;
+    private final int pageSize;
+    private final long minIdleMillis;
+    private final long maxIdleMillis;
+    private final boolean fullHistory;
+
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile long checkpoint;
+
+    private LedgerTail(Builder builder) {
+        this.client = builder.client;
+        this.prefix = ByteString.copyFrom(builder.prefix);
+        this.listener = builder.listener;
+        this.pageSize = builder.pageSize;
+        this.minIdleMillis = builder.minIdleMillis;
+        this.maxIdleMillis = builder.maxIdleMillis;
+        this.fullHistory = builder.fullHistory;
+        this.checkpoint = builder.fromTx;
+        this.thread = new Thread(this::run, "lc-tail");
+        this.thread.setDaemon(true);
+    }
+
+    public static Builder newBuilder(LedgerComplianceClient client) {
+        return new Builder(client);
+    }
+
+    /**
+     * The tx up to which all the entries have been delivered.
+     */
+    public long checkpoint() {
+        return checkpoint;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stop polling. An entry being delivered is completed first.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+
+    private void run() {
+        long idle = minIdleMillis;
+        while (!closed) {
+            long from = checkpoint;
+            long upTo;
+            List<ImmudbProto.Entry> batch;
+            try {
+                upTo = client.currentState().txId;
+                batch = upTo > from ? fetch(from, upTo) : null;
+            } catch (StatusRuntimeException e) {
+                listener.onError(e);
+                batch = null;
+                upTo = from;
+            }
+
+            if (batch != null) {
+                try {
+                    for (ImmudbProto.Entry entry : batch) {
+                        listener.onEntry(new KVExt(entry, null, client.valueCodec()));
+                    }
+                    checkpoint = upTo;
+                    listener.onCheckpoint(upTo);
+                } catch (RuntimeException e) {
+                    // The listener failed: stop, keeping the checkpoint of the last complete poll.
+                    closed = true;
+                    listener.onError(e);
+                    return;
+                }
+            }
+
+            idle = batch != null ? minIdleMillis : Math.min(maxIdleMillis, idle * 2);
+            try {
+                TimeUnit.MILLISECONDS.sleep(idle);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * The entries set in (from, upTo], in tx order.
+     */
+    private List<ImmudbProto.Entry> fetch(long from, long upTo) {
+        List<ImmudbProto.Entry> changed = new ArrayList<>();
+        ByteString seekKey = ByteString.EMPTY;
+        while (true) {
+            ImmudbProto.Entries entries = client.scanEntries(ImmudbProto.ScanRequest.newBuilder()
+                    .setPrefix(prefix)
+                    .setSeekKey(seekKey)
+                    .setLimit(pageSize)
+                    .setSinceTx(upTo)
+                    // Only the first page waits for the index to catch up with the bound.
+                    .setNoWait(!seekKey.isEmpty())
+                    .build());
+            int n = entries.getEntriesCount();
+            for (int i = 0; i < n; i++) {
+                ImmudbProto.Entry entry = entries.getEntries(i);
+                if (entry.getTx() > from && !entry.getKey().equals(seekKey)) {
+                    changed.add(entry);
+                }
+            }
+            if (n < pageSize || entries.getEntries(n - 1).getKey().equals(seekKey)) {
+                break;
+            }
+            seekKey = entries.getEntries(n - 1).getKey();
+        }
+
+        List<ImmudbProto.Entry> batch = fullHistory ? historyOf(changed, from, upTo) : upTo(changed, upTo);
+        batch.sort(Comparator.comparingLong(ImmudbProto.Entry::getTx));
+        return batch;
+    }
+
+    private static List<ImmudbProto.Entry> upTo(List<ImmudbProto.Entry> entries, long upTo) {
+        List<ImmudbProto.Entry> result = new ArrayList<>(entries.size());
+        for (ImmudbProto.Entry entry : entries) {
+            if (entry.getTx() <= upTo) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * All the values set in (from, upTo] for the provided keys, newest values being read first.
+     */
+    private List<ImmudbProto.Entry> historyOf(List<ImmudbProto.Entry> changed, long from, long upTo) {
+        List<ImmudbProto.Entry> result = new ArrayList<>();
+        for (ImmudbProto.Entry latest : changed) {
+            long offset = 0;
+            boolean done = false;
+            while (!done) {
+                ImmudbProto.Entries entries = client.historyEntries(ImmudbProto.HistoryRequest.newBuilder()
+                        .setKey(latest.getKey())
+                        .setOffset(offset)
+                        .setLimit(pageSize)
+                        .setDesc(true)
+                        .build());
+                for (ImmudbProto.Entry entry : entries.getEntriesList()) {
+                    if (entry.getTx() <= from) {
+                        done = true;
+                        break;
+                    }
+                    if (entry.getTx() <= upTo) {
+                        result.add(entry);
+                    }
+                }
+                offset += entries.getEntriesCount();
+                done |= entries.getEntriesCount() < pageSize;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The builder used for creating (and starting) a tail.
+     */
+    public static class Builder {
+
+        private final LedgerComplianceClient client;
+        private byte[] prefix;
+        private long fromTx;
+        private Listener listener;
+        private int pageSize;
+        private long minIdleMillis;
+        private long maxIdleMillis;
+        private boolean fullHistory;
+
+        private Builder(LedgerComplianceClient client) {
+            this.client = client;
+            this.prefix = new byte[0];
+            this.pageSize = 1000;
+            this.minIdleMillis = 50;
+            this.maxIdleMillis = 5000;
+        }
+
+        public Builder withPrefix(byte[] prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        /**
+         * Deliver the entries set after the provided tx (0, the default, means from the beginning).
+         */
+        public Builder fromTx(long fromTx) {
+            this.fromTx = fromTx;
+            return this;
+        }
+
+        public Builder withListener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public Builder withPageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        public Builder withIdleBackoff(long min, long max, TimeUnit unit) {
+            this.minIdleMillis = Math.max(1, unit.toMillis(min));
+            this.maxIdleMillis = Math.max(this.minIdleMillis, unit.toMillis(max));
+            return this;
+        }
+
+        public Builder withFullHistory(boolean fullHistory) {
+            this.fullHistory = fullHistory;
+            return this;
+        }
+
+        public LedgerTail start() {
+            if (listener == null) {
+                throw new IllegalStateException("A tail listener is required.");
+            }
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+            }
+            LedgerTail tail = new LedgerTail(this);
+            tail.thread.start();
+            return tail;
+        }
+    }
+
+}
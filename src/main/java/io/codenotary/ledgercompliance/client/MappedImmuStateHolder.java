@@ -0,0 +1,339 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import io.codenotary.immudb4j.ImmuState;
+import io.codenotary.immudb4j.ImmuStateHolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * An {@link ImmuStateHolder} backed by a memory-mapped file, that can be shared by all the processes of a host:
+ * a state verified by any of them is seen by all the others at once.
+ * <p>
+ * The file holds a fixed number of fixed-size slots, one per (server, database) pair, found by open addressing
+ * on a 64-bit digest of the pair. Writers hold an exclusive file lock on the slot range while they update it,
+ * so a slot has a single writer at a time; the lock is released by the OS if its process dies. Readers never
+ * lock: each slot is a seqlock whose content also carries a checksum, and a read is retried while a writer is
+ * active or the read was torn. Updates are monotonic: a state is only replaced by one with a higher tx id.
+ * Reads of an unchanged slot return the previously decoded state.
+ */
+public class MappedImmuStateHolder implements ImmuStateHolder, AutoCloseable {
+
+    public static final int DEFAULT_SLOTS = 1024;
+
+    static final int MAGIC = 0x4C435354;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 256;
+
+    // Slot layout: seq u64, tag u64, txId u64, hashLen u16, signatureLen u16, checksum u32, hash, signature.
+    private static final int SEQ = 0;
+    private static final int TAG = 8;
+    private static final int TX_ID = 16;
+    private static final int HASH_LEN = 24;
+    private static final int SIGNATURE_LEN = 26;
+    private static final int CHECKSUM = 28;
+    private static final int HASH = 32;
+    private static final int SIGNATURE = 96;
+
+    static final int MAX_HASH_SIZE = SIGNATURE - HASH;
+    static final int MAX_SIGNATURE_SIZE = SLOT_SIZE - SIGNATURE;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+
+    private final ConcurrentHashMap<String, Integer> slotOffsets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, DecodedState> decoded = new ConcurrentHashMap<>();
+
+    private MappedImmuStateHolder(FileChannel channel, MappedByteBuffer buffer, int slotCount) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slotCount = slotCount;
+    }
+
+    public static MappedImmuStateHolder open(Path file) throws IOException {
+        return open(file, DEFAULT_SLOTS);
+    }
+
+    /**
+     * Open the provided state file, creating it if needed.
+     *
+     * @param slots the number of slots of a new file (an existing file keeps its own)
+     */
+    public static MappedImmuStateHolder open(Path file, int slots) throws IOException {
+        if (slots <= 0 || slots > (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE) {
+            throw new IllegalArgumentException("Invalid number of slots: " + slots);
+        }
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int slotCount;
+            try (FileLock ignored = channel.lock()) {
+                slotCount = channel.size() == 0 ? initialize(channel, slots) : readHeader(channel, file);
+            }
+            long size = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new MappedImmuStateHolder(channel, buffer, slotCount);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static int initialize(FileChannel channel, int slots) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(slots).putInt(SLOT_SIZE);
+        header.clear();
+        channel.write(header, 0);
+        // Slots start zeroed: empty, with no state.
+        channel.write(ByteBuffer.allocate(1), HEADER_SIZE + (long) slots * SLOT_SIZE - 1);
+        channel.force(true);
+        return slots;
+    }
+
+    private static int readHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < 16 || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a state file (or unsupported version): " + file);
+        }
+        int slots = header.getInt();
+        if (header.getInt() != SLOT_SIZE || slots <= 0 || slots > (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE
+                || channel.size() < HEADER_SIZE + (long) slots * SLOT_SIZE) {
+            throw new IOException("Corrupted state file: " + file);
+        }
+        return slots;
+    }
+
+    @Override
+    public ImmuState getState(String serverUuid, String database) {
+        int slot = slotFor(serverUuid, database, false);
+        if (slot < 0) {
+            return null;
+        }
+        DecodedState last = decoded.get(slot);
+        boolean idle = false;
+        while (true) {
+            long seq = buffer.getLong(slot + SEQ);
+            if ((seq & 1) == 0) {
+                if (last != null && last.seq == seq) {
+                    return last.state;
+                }
+
+                long txId = buffer.getLong(slot + TX_ID);
+                int hashLen = Math.min(MAX_HASH_SIZE, buffer.getShort(slot + HASH_LEN) & 0xffff);
+                int signatureLen = Math.min(MAX_SIGNATURE_SIZE, buffer.getShort(slot + SIGNATURE_LEN) & 0xffff);
+                int checksum = buffer.getInt(slot + CHECKSUM);
+                byte[] hash = read(slot + HASH, hashLen);
+                byte[] signature = read(slot + SIGNATURE, signatureLen);
+
+                if (buffer.getLong(slot + SEQ) == seq) {
+                    if (txId == 0) {
+                        return null;
+                    }
+                    if (checksum == checksum(txId, hash, signature)) {
+                        ImmuState state = new ImmuState(database, txId, hash, signature);
+                        decoded.put(slot, new DecodedState(seq, state));
+                        return state;
+                    }
+                }
+            }
+
+            // A write in progress, or a torn read: retry while a writer holds the slot.
+            if (writerActive(slot)) {
+                idle = false;
+                Thread.yield();
+            } else if (!idle) {
+                idle = true;
+            } else {
+                // No writer, and still unreadable: the slot was left by a writer that died, until the next write.
+                return last == null ? null : last.state;
+            }
+        }
+    }
+
+    @Override
+    public void setState(String serverUuid, ImmuState state) {
+        if (state.txHash.length > MAX_HASH_SIZE || state.signature.length > MAX_SIGNATURE_SIZE) {
+            throw new IllegalArgumentException("The state does not fit in a slot.");
+        }
+        int slot = slotFor(serverUuid, state.database, true);
+        try (FileLock ignored = lockSlot(slot)) {
+            // The tx id is written last, so that a write interrupted by the death of its writer leaves the
+            // previous tx id in place, and the slot never goes back to an older state.
+            if (state.txId <= buffer.getLong(slot + TX_ID)) {
+                return;
+            }
+            long seq = buffer.getLong(slot + SEQ);
+            long locked = (seq & 1) == 0 ? seq + 1 : seq + 2;
+            buffer.putLong(slot + SEQ, locked);
+            write(slot + HASH, state.txHash);
+            write(slot + SIGNATURE, state.signature);
+            buffer.putShort(slot + HASH_LEN, (short) state.txHash.length);
+            buffer.putShort(slot + SIGNATURE_LEN, (short) state.signature.length);
+            buffer.putLong(slot + TX_ID, state.txId);
+            buffer.putInt(slot + CHECKSUM, checksum(state.txId, state.txHash, state.signature));
+            buffer.putLong(slot + SEQ, locked + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Take the exclusive lock of a slot, waiting for its current holder, in this process or another one.
+     */
+    private FileLock lockSlot(int slot) throws IOException {
+        while (true) {
+            try {
+                return channel.lock(slot, SLOT_SIZE, false);
+            } catch (OverlappingFileLockException e) {
+                // Held by another thread of this process (file locks are per process).
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Whether a writer, in this process or another one, currently holds the lock of the slot.
+     */
+    private boolean writerActive(int slot) {
+        try (FileLock lock = channel.tryLock(slot, SLOT_SIZE, true)) {
+            return lock == null;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] read(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    private void write(int offset, byte[] bytes) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.put(bytes);
+    }
+
+    private static int checksum(long txId, byte[] hash, byte[] signature) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(12).putLong(txId).putShort((short) hash.length)
+                .putShort((short) signature.length).array());
+        crc.update(hash);
+        crc.update(signature);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The offset of the slot of the provided pair, or -1 if it has none and create is false.
+     */
+    private int slotFor(String serverUuid, String database, boolean create) {
+        String id = serverUuid + '\0' + database;
+        Integer cached = slotOffsets.get(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        long tag = tagOf(id);
+        int start = (int) Long.remainderUnsigned(tag, slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            int slot = HEADER_SIZE + ((start + i) % slotCount) * SLOT_SIZE;
+            long slotTag = buffer.getLong(slot + TAG);
+            if (slotTag == 0) {
+                if (!create) {
+                    // Slots are claimed in probe order and never released: the pair has none.
+                    return -1;
+                }
+                slotTag = claim(slot, tag);
+            }
+            if (slotTag == tag) {
+                slotOffsets.put(id, slot);
+                return slot;
+            }
+        }
+        throw new IllegalStateException("No free slot left in the state file (" + slotCount + " slots).");
+    }
+
+    /**
+     * Claim a free slot for the provided tag, returning the tag the slot ends up with.
+     */
+    private long claim(int slot, long tag) {
+        try (FileLock ignored = lockSlot(slot)) {
+            long slotTag = buffer.getLong(slot + TAG);
+            if (slotTag == 0) {
+                buffer.putLong(slot + TAG, tag);
+                slotTag = tag;
+            }
+            return slotTag;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A non-zero 64-bit digest of the pair, identifying its slot.
+     */
+    private static long tagOf(String id) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(id.getBytes(StandardCharsets.UTF_8));
+            long tag = ByteBuffer.wrap(digest).getLong();
+            return tag == 0 ? 1 : tag;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Close the file. The holder must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static final class DecodedState {
+
+        final long seq;
+        final ImmuState state;
+
+        DecodedState(long seq, ImmuState state) {
+            this.seq = seq;
+            this.state = state;
+        }
+    }
+
+}
@@ -0,0 +1,255 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import io.codenotary.immudb.ImmudbProto;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import lc.schema.LcServiceGrpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * An {@code Entries} response kept as received: the message bytes are read from the transport into a single
+ * array and only indexed (the tx, and where the key and value of each entry are). Keys and values are then
+ * handed out as {@link ByteString} views over that array, so a response costs one array and two small index
+ * arrays, instead of a message object, a nested message and two byte strings per entry.
+ * <p>
+ * The referencedBy field of the entries is skipped, as by the lists built from the parsed messages.
+ */
+final class PackedEntries {
+
+    // Entries: repeated Entry entries = 1. Entry: uint64 tx = 1, bytes key = 2, bytes value = 3.
+    private static final int ENTRIES_FIELD = 1;
+    private static final int TX_FIELD = 1;
+    private static final int KEY_FIELD = 2;
+    private static final int VALUE_FIELD = 3;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_FIXED32 = 5;
+
+    static final MethodDescriptor.Marshaller<PackedEntries> MARSHALLER = new MethodDescriptor.Marshaller<PackedEntries>() {
+
+        @Override
+        public InputStream stream(PackedEntries entries) {
+            return new ByteArrayInputStream(entries.buf, 0, entries.length);
+        }
+
+        @Override
+        public PackedEntries parse(InputStream stream) {
+            try {
+                return read(stream);
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage());
+            }
+        }
+    };
+
+    static final MethodDescriptor<ImmudbProto.ScanRequest, PackedEntries> SCAN =
+            packed(LcServiceGrpc.getScanMethod());
+    static final MethodDescriptor<ImmudbProto.HistoryRequest, PackedEntries> HISTORY =
+            packed(LcServiceGrpc.getHistoryMethod());
+    static final MethodDescriptor<ImmudbProto.KeyListRequest, PackedEntries> GET_ALL =
+            packed(LcServiceGrpc.getGetAllMethod());
+
+    private final byte[] buf;
+    private final int length;
+    private final ByteString data;
+
+    private int count;
+    private long[] txs;
+    // Per entry: key offset, key length, value offset, value length.
+    private int[] spans;
+
+    private int pos;
+
+    PackedEntries(byte[] buf, int length) {
+        this.buf = buf;
+        this.length = length;
+        this.data = UnsafeByteOperations.unsafeWrap(buf);
+        this.txs = new long[16];
+        this.spans = new int[64];
+        index();
+    }
+
+    private static <ReqT> MethodDescriptor<ReqT, PackedEntries> packed(
+            MethodDescriptor<ReqT, ImmudbProto.Entries> method) {
+        return method.toBuilder(method.getRequestMarshaller(), MARSHALLER).build();
+    }
+
+    /**
+     * Read a whole message from the transport. Its size is known upfront when the stream tells it.
+     */
+    static PackedEntries read(InputStream stream) throws IOException {
+        int known = stream instanceof KnownLength ? stream.available() : -1;
+        byte[] buf = new byte[known >= 0 ? known : 8192];
+        int length = 0;
+        while (true) {
+            if (length == buf.length) {
+                // A known length is exact: the probe below then finds the end of the stream.
+                int next = stream.read();
+                if (next < 0) {
+                    break;
+                }
+                buf = Arrays.copyOf(buf, Math.max(16, buf.length * 2));
+                buf[length++] = (byte) next;
+            }
+            int n = stream.read(buf, length, buf.length - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+        return new PackedEntries(buf, length);
+    }
+
+    int size() {
+        return count;
+    }
+
+    long tx(int index) {
+        checkIndex(index);
+        return txs[index];
+    }
+
+    ByteString key(int index) {
+        checkIndex(index);
+        return data.substring(spans[4 * index], spans[4 * index] + spans[4 * index + 1]);
+    }
+
+    ByteString value(int index) {
+        checkIndex(index);
+        return data.substring(spans[4 * index + 2], spans[4 * index + 2] + spans[4 * index + 3]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+        }
+    }
+
+    private void index() {
+        pos = 0;
+        while (pos < length) {
+            long tag = readVarint(length);
+            if ((int) (tag >>> 3) == ENTRIES_FIELD && (int) (tag & 7) == WIRE_LENGTH_DELIMITED) {
+                int end = readLength(length);
+                indexEntry(end);
+            } else {
+                skipField((int) (tag & 7), length);
+            }
+        }
+    }
+
+    private void indexEntry(int end) {
+        if (count == txs.length) {
+            txs = Arrays.copyOf(txs, count * 2);
+            spans = Arrays.copyOf(spans, count * 8);
+        }
+        long tx = 0;
+        int keyOff = 0, keyLen = 0, valueOff = 0, valueLen = 0;
+        while (pos < end) {
+            long tag = readVarint(end);
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (field == TX_FIELD && wireType == WIRE_VARINT) {
+                tx = readVarint(end);
+            } else if (field == KEY_FIELD && wireType == WIRE_LENGTH_DELIMITED) {
+                int fieldEnd = readLength(end);
+                keyOff = pos;
+                keyLen = fieldEnd - pos;
+                pos = fieldEnd;
+            } else if (field == VALUE_FIELD && wireType == WIRE_LENGTH_DELIMITED) {
+                int fieldEnd = readLength(end);
+                valueOff = pos;
+                valueLen = fieldEnd - pos;
+                pos = fieldEnd;
+            } else {
+                skipField(wireType, end);
+            }
+        }
+        txs[count] = tx;
+        spans[4 * count] = keyOff;
+        spans[4 * count + 1] = keyLen;
+        spans[4 * count + 2] = valueOff;
+        spans[4 * count + 3] = valueLen;
+        count++;
+    }
+
+    private void skipField(int wireType, int limit) {
+        switch (wireType) {
+            case WIRE_VARINT:
+                readVarint(limit);
+                break;
+            case WIRE_FIXED64:
+                advance(8, limit);
+                break;
+            case WIRE_LENGTH_DELIMITED:
+                pos = readLength(limit);
+                break;
+            case WIRE_FIXED32:
+                advance(4, limit);
+                break;
+            default:
+                throw malformed();
+        }
+    }
+
+    /**
+     * Read the length of a length-delimited field, returning where the field ends.
+     */
+    private int readLength(int limit) {
+        long len = readVarint(limit);
+        if (len < 0 || len > limit - pos) {
+            throw malformed();
+        }
+        return pos + (int) len;
+    }
+
+    private void advance(int n, int limit) {
+        if (n > limit - pos) {
+            throw malformed();
+        }
+        pos += n;
+    }
+
+    private long readVarint(int limit) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos >= limit) {
+                throw malformed();
+            }
+            byte b = buf[pos++];
+            result |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw malformed();
+    }
+
+    private static IllegalArgumentException malformed() {
+        return new IllegalArgumentException("Malformed Entries message.");
+    }
+
+}
@@ -0,0 +1,424 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+import io.codenotary.immudb4j.KV;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A scan of all the keys having a given prefix, performed by several workers in parallel.
+ * <p>
+ * The key space under the prefix is split into ranges, either at the provided split points or at points
+ * interpolated between the first and the last key of the prefix. Each range is scanned page by page
+ * (continuing from the last key of the previous page) by a worker of a pool of the configured parallelism.
+ * <p>
+ * Pages are handed over through bounded queues. Ordered results are the ranges one after the other, so they come
+ * in key order (a range is consumed once the previous ones are); unordered results come as soon as any worker
+ * gets them. Closing the stream stops the workers.
+ */
+public class ParallelScan {
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "lc-scan-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    };
+
+    private final LedgerComplianceClient client;
+    private final ByteString prefix;
+    private final int parallelism;
+    private final int rangesPerWorker;
+    private final int pageSize;
+    private final int queuedPages;
+    private final long sinceTx;
+    private final boolean ordered;
+    private final List<ByteString> splitPoints;
+
+    private ParallelScan(Builder builder) {
+        this.client = builder.client;
+        this.prefix = ByteString.copyFrom(builder.prefix);
+        this.parallelism = builder.parallelism;
+        this.rangesPerWorker = builder.rangesPerWorker;
+        this.pageSize = builder.pageSize;
+        this.queuedPages = builder.queuedPages;
+        this.sinceTx = builder.sinceTx;
+        this.ordered = builder.ordered;
+        this.splitPoints = builder.splitPoints;
+    }
+
+    public static Builder newBuilder(LedgerComplianceClient client) {
+        return new Builder(client);
+    }
+
+    /**
+     * Start the scan. The stream must be closed (e.g. with try-with-resources) if not fully consumed.
+     * Server errors are thrown by the stream operations.
+     */
+    public Stream<KV> stream() {
+        ValueCodec codec = client.valueCodec();
+        return entryStream().map(e -> EntriesView.newEntryKV(e.getKey(), e.getValue(), e.getTx(), codec));
+    }
+
+    /**
+     * Start the scan, returning the raw entries.
+     */
+    Stream<ImmudbProto.Entry> entryStream() {
+        List<ByteString> points = splitPoints != null ? splitPoints : interpolateSplitPoints();
+        Run run = new Run(points);
+        Spliterator<ImmudbProto.Entry> spliterator = Spliterators.spliteratorUnknownSize(run,
+                (ordered ? Spliterator.ORDERED : 0) | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(run::cancel);
+    }
+
+    /**
+     * Split points evenly spaced between the first and the last key, as big-endian numbers over the
+     * 7 bytes following their common prefix.
+     */
+    private List<ByteString> interpolateSplitPoints() {
+        ByteString first = boundaryKey(false);
+        ByteString last = boundaryKey(true);
+        int ranges = parallelism * rangesPerWorker;
+        if (first == null || ranges == 1 || first.equals(last)) {
+            return Collections.emptyList();
+        }
+
+        int common = 0;
+        while (common < first.size() && common < last.size() && first.byteAt(common) == last.byteAt(common)) {
+            common++;
+        }
+        long lo = bytes56(first, common);
+        long hi = bytes56(last, common);
+        if (hi - lo < 2) {
+            return Collections.emptyList();
+        }
+        ranges = (int) Math.min(ranges, hi - lo);
+        long step = (hi - lo) / ranges;
+
+        List<ByteString> points = new ArrayList<>(ranges - 1);
+        byte[] point = new byte[common + 7];
+        first.copyTo(point, 0, 0, common);
+        for (int i = 1; i < ranges; i++) {
+            long v = lo + step * i;
+            for (int b = 0; b < 7; b++) {
+                point[common + b] = (byte) (v >>> (48 - 8 * b));
+            }
+            points.add(ByteString.copyFrom(point));
+        }
+        return points;
+    }
+
+    private ByteString boundaryKey(boolean last) {
+        ImmudbProto.Entries entries = client.scanEntries(ImmudbProto.ScanRequest.newBuilder()
+                .setPrefix(prefix)
+                .setLimit(1)
+                .setSinceTx(sinceTx)
+                .setDesc(last)
+                .build());
+        return entries.getEntriesCount() == 0 ? null : entries.getEntries(0).getKey();
+    }
+
+    private static long bytes56(ByteString key, int from) {
+        long v = 0;
+        for (int b = 0; b < 7; b++) {
+            int i = from + b;
+            v = (v << 8) | (i < key.size() ? key.byteAt(i) & 0xff : 0);
+        }
+        return v;
+    }
+
+    static int compare(ByteString a, ByteString b) {
+        int n = Math.min(a.size(), b.size());
+        for (int i = 0; i < n; i++) {
+            int c = (a.byteAt(i) & 0xff) - (b.byteAt(i) & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.size() - b.size();
+    }
+
+    /**
+     * A page of a range (or its end, or the failure of its worker).
+     */
+    private static final class Page {
+
+        static final Page END = new Page(Collections.emptyList(), null);
+
+        final List<ImmudbProto.Entry> entries;
+        final RuntimeException error;
+
+        Page(List<ImmudbProto.Entry> entries, RuntimeException error) {
+            this.entries = entries;
+            this.error = error;
+        }
+    }
+
+    /**
+     * One execution of the scan: the workers and the iterator over their pages.
+     */
+    private final class Run implements Iterator<ImmudbProto.Entry> {
+
+        private final ExecutorService executor;
+        private final List<BlockingQueue<Page>> queues = new ArrayList<>();
+        private final int ranges;
+        private volatile boolean cancelled;
+
+        // Consumer side.
+        private int currentQueue;
+        private int endedRanges;
+        private List<ImmudbProto.Entry> page = Collections.emptyList();
+        private int index;
+
+        Run(List<ByteString> points) {
+            this.ranges = points.size() + 1;
+            this.executor = Executors.newFixedThreadPool(Math.min(parallelism, ranges), THREAD_FACTORY);
+            if (ordered) {
+                for (int i = 0; i < ranges; i++) {
+                    queues.add(new ArrayBlockingQueue<>(queuedPages));
+                }
+            } else {
+                queues.add(new ArrayBlockingQueue<>(queuedPages * parallelism));
+            }
+            // Ranges are submitted in key order, so the one being consumed is always started.
+            for (int i = 0; i < ranges; i++) {
+                ByteString from = i == 0 ? null : points.get(i - 1);
+                ByteString to = i == ranges - 1 ? null : points.get(i);
+                BlockingQueue<Page> queue = queues.get(ordered ? i : 0);
+                executor.execute(() -> scanRange(from, to, queue));
+            }
+            executor.shutdown();
+        }
+
+        private void scanRange(ByteString from, ByteString to, BlockingQueue<Page> queue) {
+            try {
+                ByteString seekKey = from == null ? ByteString.EMPTY : from;
+                boolean firstPage = true;
+                boolean done = false;
+                while (!done && !cancelled) {
+                    ImmudbProto.Entries entries = client.scanEntries(ImmudbProto.ScanRequest.newBuilder()
+                            .setPrefix(prefix)
+                            .setSeekKey(seekKey)
+                            .setLimit(pageSize)
+                            .setSinceTx(sinceTx)
+                            .build());
+                    int n = entries.getEntriesCount();
+                    List<ImmudbProto.Entry> inRange = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        ImmudbProto.Entry entry = entries.getEntries(i);
+                        ByteString key = entry.getKey();
+                        if (to != null && compare(key, to) >= 0) {
+                            done = true;
+                            break;
+                        }
+                        // The seek key of a continuation page was delivered with the previous page.
+                        if (firstPage || !key.equals(seekKey)) {
+                            inRange.add(entry);
+                        }
+                    }
+                    if (!inRange.isEmpty()) {
+                        queue.put(new Page(inRange, null));
+                    }
+                    ByteString lastKey = n == 0 ? seekKey : entries.getEntries(n - 1).getKey();
+                    done |= n < pageSize || (!firstPage && lastKey.equals(seekKey));
+                    seekKey = lastKey;
+                    firstPage = false;
+                }
+                queue.put(Page.END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                try {
+                    queue.put(new Page(Collections.emptyList(), e));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (index >= page.size()) {
+                if (endedRanges == ranges) {
+                    return false;
+                }
+                Page next;
+                try {
+                    next = queues.get(currentQueue).take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                    throw new IllegalStateException("Interrupted while scanning.", e);
+                }
+                if (next.error != null) {
+                    cancel();
+                    throw next.error;
+                }
+                if (next == Page.END) {
+                    endedRanges++;
+                    if (ordered) {
+                        currentQueue++;
+                    }
+                    continue;
+                }
+                page = next.entries;
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public ImmudbProto.Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(index++);
+        }
+
+        void cancel() {
+            cancelled = true;
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The builder used for creating a parallel scan.
+     */
+    public static class Builder {
+
+        private final LedgerComplianceClient client;
+        private byte[] prefix;
+        private int parallelism;
+        private int rangesPerWorker;
+        private int pageSize;
+        private int queuedPages;
+        private long sinceTx;
+        private boolean ordered;
+        private List<ByteString> splitPoints;
+
+        private Builder(LedgerComplianceClient client) {
+            this.client = client;
+            this.prefix = new byte[0];
+            this.parallelism = Runtime.getRuntime().availableProcessors();
+            this.rangesPerWorker = 4;
+            this.pageSize = 1000;
+            this.queuedPages = 4;
+            this.ordered = true;
+        }
+
+        public Builder withPrefix(byte[] prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        public Builder withPrefix(String prefix) {
+            return withPrefix(prefix.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * The number of workers, i.e. of concurrent scan requests.
+         */
+        public Builder withParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * The number of ranges per worker when the split points are interpolated (4 by default):
+         * more, smaller ranges balance key spaces that are not evenly populated.
+         */
+        public Builder withRangesPerWorker(int rangesPerWorker) {
+            this.rangesPerWorker = rangesPerWorker;
+            return this;
+        }
+
+        public Builder withPageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * The number of pages each range (or, if unordered, each worker) may have fetched ahead of the consumer.
+         */
+        public Builder withQueuedPages(int queuedPages) {
+            this.queuedPages = queuedPages;
+            return this;
+        }
+
+        /**
+         * Wait for the index to be up to date at least with the provided tx.
+         */
+        public Builder withSinceTx(long sinceTx) {
+            this.sinceTx = sinceTx;
+            return this;
+        }
+
+        /**
+         * Deliver the entries in key order (the default), or as soon as fetched.
+         */
+        public Builder withOrdered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        /**
+         * Split the key space at the provided (full) keys instead of interpolating split points, e.g. when the
+         * distribution of the keys is known. Range boundaries belong to the range they start.
+         */
+        public Builder withSplitPoints(List<byte[]> splitPoints) {
+            List<ByteString> points = new ArrayList<>(splitPoints.size());
+            for (byte[] point : splitPoints) {
+                ByteString p = ByteString.copyFrom(point);
+                if (!points.isEmpty() && compare(points.get(points.size() - 1), p) >= 0) {
+                    throw new IllegalArgumentException("Split points must be strictly increasing.");
+                }
+                points.add(p);
+            }
+            this.splitPoints = points;
+            return this;
+        }
+
+        public ParallelScan build() {
+            if (parallelism <= 0 || rangesPerWorker <= 0 || pageSize <= 0 || queuedPages <= 0) {
+                throw new IllegalArgumentException("Parallelism, ranges, page size and queued pages must be positive.");
+            }
+            return new ParallelScan(this);
+        }
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+import io.codenotary.immudb4j.ImmuState;
+import io.codenotary.immudb4j.TxMetadata;
+import io.codenotary.immudb4j.crypto.CryptoUtils;
+import io.codenotary.immudb4j.exceptions.VerificationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A writer of verified sets keeping several of them in flight, so that a single logical writer is not
+ * limited to one verified write per round trip.
+ * <p>
+ * Every set proves its tx against the trusted state at the time it is sent. Responses are verified on the
+ * writer thread, in tx order among those received, and the trusted state moves forward along the chain:
+ * a newer tx extends it when the linear part of its proof goes through the trusted tx, as it does when the
+ * writes are consecutive. Otherwise, or when a response comes after a newer tx has been verified already,
+ * the write is verified again against the trusted state with a verifiable get (one more round trip).
+ * <p>
+ * The future of a write completes once its tx has been verified; it fails with a
+ * {@link VerificationException} if the proofs don't hold.
+ */
+public class PipelinedVerifiedWriter implements AutoCloseable {
+
+    private static final Comparator<Write> TX_ORDER = Comparator.comparingLong(w -> w.txId);
+
+    private final LedgerComplianceClient client;
+    private final int depth;
+    private final Semaphore slots;
+    private final ExecutorService verifier;
+    private final PriorityQueue<Write> received = new PriorityQueue<>(TX_ORDER);
+
+    // Written by the verification thread only.
+    private volatile ImmuState trusted;
+    private volatile boolean closed;
+
+    private PipelinedVerifiedWriter(Builder builder) {
+        this.client = builder.client;
+        this.depth = builder.depth;
+        this.slots = new Semaphore(depth);
+        this.verifier = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "lc-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.trusted = client.state();
+    }
+
+    public static Builder newBuilder(LedgerComplianceClient client) {
+        return new Builder(client);
+    }
+
+    public CompletableFuture<TxMetadata> submit(String key, byte[] value) {
+        return submit(key.getBytes(StandardCharsets.UTF_8), value);
+    }
+
+    /**
+     * Send a verified set, waiting first if the pipeline is full.
+     */
+    public CompletableFuture<TxMetadata> submit(byte[] key, byte[] value) {
+        if (closed) {
+            throw new IllegalStateException("The writer is closed.");
+        }
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e.getMessage());
+        }
+
+        ValueCodec codec = client.valueCodec();
+        Write write = new Write(key, codec == null ? value : codec.encode(value), trusted);
+        ImmudbProto.VerifiableSetRequest req = ImmudbProto.VerifiableSetRequest.newBuilder()
+                .setSetRequest(ImmudbProto.SetRequest.newBuilder()
+                        .addKVs(ImmudbProto.KeyValue.newBuilder()
+                                .setKey(write.keyBS)
+                                .setValue(ByteString.copyFrom(write.stored))
+                                .build())
+                        .build())
+                .setProveSinceTx(write.sent.txId)
+                .build();
+        ListenableFuture<ImmudbProto.VerifiableTx> call;
+        try {
+            call = client.verifiableSetAsync(req);
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        call.addListener(() -> onResponse(write, call), MoreExecutors.directExecutor());
+        return write.result;
+    }
+
+    /**
+     * The sets sent whose verification has not completed yet.
+     */
+    public int inFlight() {
+        return depth - slots.availablePermits();
+    }
+
+    /**
+     * The tx of the latest state verified by the writer.
+     */
+    public long trustedTxId() {
+        return trusted.txId;
+    }
+
+    /**
+     * Wait for the writes in flight to be verified, then stop the writer thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        slots.acquireUninterruptibly(depth);
+        slots.release(depth);
+        verifier.shutdown();
+    }
+
+    private void onResponse(Write write, ListenableFuture<ImmudbProto.VerifiableTx> call) {
+        try {
+            write.vtx = call.get();
+            write.txId = write.vtx.getTx().getMetadata().getId();
+        } catch (ExecutionException e) {
+            write.error = new RuntimeException(e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            // The call is done already: it can't happen.
+            Thread.currentThread().interrupt();
+            write.error = new RuntimeException(e.getMessage());
+        }
+        synchronized (received) {
+            received.add(write);
+        }
+        try {
+            verifier.execute(this::verifyReceived);
+        } catch (RejectedExecutionException e) {
+            verifyReceived();
+        }
+    }
+
+    /**
+     * Verify, in tx order, all the responses received so far.
+     */
+    private void verifyReceived() {
+        while (true) {
+            Write write;
+            synchronized (received) {
+                write = received.poll();
+            }
+            if (write == null) {
+                return;
+            }
+            try {
+                verify(write);
+            } finally {
+                slots.release();
+            }
+        }
+    }
+
+    private synchronized void verify(Write write) {
+        if (write.error != null) {
+            client.keyWritten(write.key);
+            write.result.completeExceptionally(write.error);
+            return;
+        }
+        try {
+            ImmuState current = trusted;
+            ImmuState next = client.verifyChainedSet(write.vtx, write.sent, current, write.keyBS,
+                    CryptoUtils.encodeKey(write.key), write.stored);
+            if (next != current) {
+                trusted = next;
+                client.advanceState(next);
+            }
+            client.keyWritten(write.key);
+            write.result.complete(TxMetadata.valueOf(write.vtx.getTx().getMetadata()));
+        } catch (VerificationException | RuntimeException e) {
+            write.result.completeExceptionally(e);
+        }
+    }
+
+    private static final class Write {
+
+        final byte[] key;
+        final ByteString keyBS;
+        final byte[] stored;
+        final ImmuState sent;
+        final CompletableFuture<TxMetadata> result = new CompletableFuture<>();
+
+        ImmudbProto.VerifiableTx vtx;
+        RuntimeException error;
+        // Failed calls come first.
+        long txId = Long.MIN_VALUE;
+
+        Write(byte[] key, byte[] stored, ImmuState sent) {
+            this.key = key;
+            this.keyBS = ByteString.copyFrom(key);
+            this.stored = stored;
+            this.sent = sent;
+        }
+    }
+
+    /**
+     * The builder used for creating (and starting) a pipelined writer.
+     */
+    public static class Builder {
+
+        private final LedgerComplianceClient client;
+        private int depth;
+
+        private Builder(LedgerComplianceClient client) {
+            this.client = client;
+            this.depth = 16;
+        }
+
+        /**
+         * The maximum number of sets in flight (16 by default).
+         */
+        public Builder withDepth(int depth) {
+            this.depth = depth;
+            return this;
+        }
+
+        public PipelinedVerifiedWriter start() {
+            if (depth <= 0) {
+                throw new IllegalArgumentException("Depth must be positive: " + depth);
+            }
+            return new PipelinedVerifiedWriter(this);
+        }
+    }
+
+}
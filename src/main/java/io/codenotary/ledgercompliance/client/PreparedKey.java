@@ -0,0 +1,73 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb4j.crypto.CryptoUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A key encoded once, for being used in many operations.
+ * It holds the key bytes, their protobuf representation and the encoding used in the inclusion proofs,
+ * so operations on a PreparedKey do not allocate anything for handling the key.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public final class PreparedKey {
+
+    final byte[] bytes;
+    final ByteString byteString;
+    final byte[] encoded;
+
+    private PreparedKey(byte[] bytes) {
+        this.bytes = bytes;
+        this.byteString = ByteString.copyFrom(bytes);
+        this.encoded = CryptoUtils.encodeKey(bytes);
+    }
+
+    public static PreparedKey of(String key) {
+        return new PreparedKey(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PreparedKey of(byte[] key) {
+        return new PreparedKey(key.clone());
+    }
+
+    /**
+     * A copy of the key bytes.
+     */
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof PreparedKey && Arrays.equals(bytes, ((PreparedKey) o).bytes));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedKey{" + byteString + "}";
+    }
+
+}
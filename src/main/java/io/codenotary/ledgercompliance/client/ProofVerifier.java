@@ -0,0 +1,498 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+import io.codenotary.immudb4j.crypto.CryptoUtils;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Verification of the immudb proofs straight from their protobuf messages.
+ * <p>
+ * The immudb4j path converts every message into its own objects first (a byte array per hash, a Tx with its
+ * hash tree, a KV with its encoded copies) and hashes through freshly allocated buffers. Here the hashes are
+ * compared and fed to the digest in place, through scratch buffers owned by the calling thread: once they
+ * have grown to the largest tx seen, a verification allocates nothing.
+ * <p>
+ * The algorithms are the ones of immudb (and immudb4j), step by step. Instances are not thread safe:
+ * use {@link #get()}. The arrays returned by the digest methods are scratch space too, valid until the
+ * next call of the same method.
+ */
+final class ProofVerifier {
+
+    static final int DIGEST_SIZE = 32;
+
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+    private static final int MAX_CHUNK = 64 * 1024;
+
+    // The prefixes immudb4j puts in front of plain keys and values, taken from it so that the two never diverge.
+    static final byte[] KEY_PREFIX = CryptoUtils.encodeKey(new byte[0]);
+    static final byte[] VALUE_PREFIX = CryptoUtils.encodeKV(new byte[0], new byte[0]).getValue();
+    static final byte[] NO_PREFIX = new byte[0];
+
+    private static final ThreadLocal<ProofVerifier> LOCAL = ThreadLocal.withInitial(ProofVerifier::new);
+
+    private final MessageDigest sha256;
+
+    private final byte[] kvDigest = new byte[DIGEST_SIZE];
+    private final byte[] txAlh = new byte[DIGEST_SIZE];
+
+    // Scratch space of the verification methods, never handed out.
+    private final byte[] calc = new byte[DIGEST_SIZE];
+    private final byte[] calcTarget = new byte[DIGEST_SIZE];
+    private final byte[] term = new byte[DIGEST_SIZE];
+    private final byte[] sourceCheck = new byte[DIGEST_SIZE];
+    private final byte[] targetCheck = new byte[DIGEST_SIZE];
+    private final byte[] blTxAlh = new byte[DIGEST_SIZE];
+    private final byte[] alhInput = new byte[8 + 2 * DIGEST_SIZE];
+    private final byte[] innerInput = new byte[8 + 4 + DIGEST_SIZE + 8 + DIGEST_SIZE];
+    private byte[] chunk = new byte[256];
+    private byte[] levels = new byte[16 * DIGEST_SIZE];
+
+    private ProofVerifier() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The verifier of the calling thread.
+     */
+    static ProofVerifier get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * The digest of a KV as immudb computes it: sha256(encodedKey || sha256(valuePrefix || value)).
+     */
+    byte[] kvDigest(byte[] encodedKey, byte[] valuePrefix, byte[] value) {
+        sha256.update(valuePrefix);
+        sha256.update(value);
+        finish(kvDigest, 0);
+        sha256.update(encodedKey);
+        sha256.update(kvDigest);
+        finish(kvDigest, 0);
+        return kvDigest;
+    }
+
+    /**
+     * The digest of a plain (not yet encoded) key and value, as read from an entry.
+     */
+    byte[] kvDigest(ByteString key, ByteString value) {
+        sha256.update(VALUE_PREFIX);
+        update(value);
+        finish(kvDigest, 0);
+        sha256.update(KEY_PREFIX);
+        update(key);
+        sha256.update(kvDigest);
+        finish(kvDigest, 0);
+        return kvDigest;
+    }
+
+    /**
+     * The accumulated linear hash of a tx, or null if its metadata holds malformed hashes.
+     */
+    byte[] alh(ImmudbProto.TxMetadata md) {
+        return alh(md, txAlh) ? txAlh : null;
+    }
+
+    /**
+     * Tell if the entry with the provided key has the provided digest in a tx, and if the tx entries
+     * hash to the tree root written in the tx metadata.
+     */
+    boolean verifyTxInclusion(ImmudbProto.Tx tx, byte[] proofKey, byte[] kvDigest) {
+        int n = tx.getEntriesCount();
+        if (n == 0 || !isDigest(tx.getMetadata().getEH())) {
+            return false;
+        }
+        if (levels.length < n * DIGEST_SIZE) {
+            levels = new byte[Integer.highestOneBit(n * DIGEST_SIZE - 1) << 1];
+        }
+
+        boolean found = false;
+        for (int i = 0; i < n; i++) {
+            ImmudbProto.TxEntry entry = tx.getEntries(i);
+            if (!isDigest(entry.getHValue())) {
+                return false;
+            }
+            update(entry.getKey());
+            update(entry.getHValue());
+            finish(term, 0);
+            if (!found && equal(proofKey, entry.getKey())) {
+                if (!equal(term, 0, kvDigest, 0)) {
+                    return false;
+                }
+                found = true;
+            }
+            sha256.update(LEAF_PREFIX);
+            sha256.update(term);
+            finish(levels, i * DIGEST_SIZE);
+        }
+        if (!found) {
+            return false;
+        }
+
+        // Reduce the levels in place: pairs are hashed together, an odd last node moves up as it is.
+        for (int width = n; width > 1; width = (width + 1) / 2) {
+            for (int i = 0; i + 1 < width; i += 2) {
+                hashNode(levels, i * DIGEST_SIZE, levels, (i + 1) * DIGEST_SIZE, levels, i / 2 * DIGEST_SIZE);
+            }
+            if (width % 2 == 1) {
+                System.arraycopy(levels, (width - 1) * DIGEST_SIZE, levels, width / 2 * DIGEST_SIZE, DIGEST_SIZE);
+            }
+        }
+        return equal(levels, 0, tx.getMetadata().getEH());
+    }
+
+    /**
+     * Tell if an inclusion proof leads from the provided KV digest to the provided tree root.
+     */
+    boolean verifyInclusion(ImmudbProto.InclusionProof proof, byte[] kvDigest, ByteString root) {
+        sha256.update(LEAF_PREFIX);
+        sha256.update(kvDigest, 0, DIGEST_SIZE);
+        finish(calc, 0);
+
+        long i = proof.getLeaf();
+        long r = proof.getWidth() - 1;
+        int n = proof.getTermsCount();
+        for (int t = 0; t < n; t++) {
+            if (!copyDigest(proof.getTerms(t), term)) {
+                return false;
+            }
+            if (i % 2 == 0 && i != r) {
+                hashNode(calc, 0, term, 0, calc, 0);
+            } else {
+                hashNode(term, 0, calc, 0, calc, 0);
+            }
+            i /= 2;
+            r /= 2;
+        }
+        return i == r && equal(calc, 0, root);
+    }
+
+    /**
+     * Tell if a dual proof links the provided source and target txs, their alhs being trusted.
+     */
+    boolean verifyDualProof(ImmudbProto.DualProof proof, long sourceId, long targetId,
+                            byte[] sourceAlh, byte[] targetAlh) {
+
+        if (!proof.hasSourceTxMetadata() || !proof.hasTargetTxMetadata()) {
+            return false;
+        }
+        ImmudbProto.TxMetadata source = proof.getSourceTxMetadata();
+        ImmudbProto.TxMetadata target = proof.getTargetTxMetadata();
+        if (source.getId() != sourceId || target.getId() != targetId) {
+            return false;
+        }
+        if (sourceId == 0 || sourceId > targetId) {
+            return false;
+        }
+        if (!alh(source, sourceCheck) || !equal(sourceCheck, 0, sourceAlh, 0)
+                || !alh(target, targetCheck) || !equal(targetCheck, 0, targetAlh, 0)) {
+            return false;
+        }
+
+        long targetBlTxId = target.getBlTxId();
+        if (sourceId < targetBlTxId) {
+            sha256.update(LEAF_PREFIX);
+            sha256.update(sourceAlh, 0, DIGEST_SIZE);
+            finish(calc, 0);
+            if (!verifyAhInclusion(proof, sourceId, targetBlTxId, target.getBlRoot())) {
+                return false;
+            }
+        }
+
+        if (source.getBlTxId() > 0
+                && !verifyConsistency(proof, source.getBlTxId(), targetBlTxId, source.getBlRoot(), target.getBlRoot())) {
+            return false;
+        }
+
+        if (targetBlTxId > 0) {
+            if (!copyDigest(proof.getTargetBlTxAlh(), blTxAlh)) {
+                return false;
+            }
+            sha256.update(LEAF_PREFIX);
+            sha256.update(blTxAlh);
+            finish(calc, 0);
+            if (!verifyLastInclusion(proof, targetBlTxId, target.getBlRoot())) {
+                return false;
+            }
+        }
+
+        if (sourceId < targetBlTxId) {
+            return verifyLinearProof(proof.getLinearProof(), targetBlTxId, targetId, blTxAlh, targetAlh);
+        }
+        return verifyLinearProof(proof.getLinearProof(), sourceId, targetId, sourceAlh, targetAlh);
+    }
+
+    /**
+     * Inclusion of the leaf in {@link #calc} (tx i) in the accumulated hash tree of tx j.
+     */
+    private boolean verifyAhInclusion(ImmudbProto.DualProof proof, long i, long j, ByteString jRoot) {
+        int n = proof.getInclusionProofCount();
+        if (i > j || i == 0 || (i < j && n == 0)) {
+            return false;
+        }
+        long i1 = i - 1;
+        long j1 = j - 1;
+        for (int t = 0; t < n; t++) {
+            if (!copyDigest(proof.getInclusionProof(t), term)) {
+                return false;
+            }
+            if (i1 % 2 == 0 && i1 != j1) {
+                hashNode(calc, 0, term, 0, calc, 0);
+            } else {
+                hashNode(term, 0, calc, 0, calc, 0);
+            }
+            i1 >>= 1;
+            j1 >>= 1;
+        }
+        return equal(calc, 0, jRoot);
+    }
+
+    private boolean verifyConsistency(ImmudbProto.DualProof proof, long i, long j, ByteString iRoot, ByteString jRoot) {
+        int n = proof.getConsistencyProofCount();
+        if (i > j || i == 0 || (i < j && n == 0)) {
+            return false;
+        }
+        if (i == j && n == 0) {
+            return isDigest(iRoot) && iRoot.equals(jRoot);
+        }
+
+        long fn = i - 1;
+        long sn = j - 1;
+        while (fn % 2 == 1) {
+            fn >>= 1;
+            sn >>= 1;
+        }
+        if (!copyDigest(proof.getConsistencyProof(0), calc)) {
+            return false;
+        }
+        System.arraycopy(calc, 0, calcTarget, 0, DIGEST_SIZE);
+        for (int t = 1; t < n; t++) {
+            if (!copyDigest(proof.getConsistencyProof(t), term)) {
+                return false;
+            }
+            if (fn % 2 == 1 || fn == sn) {
+                hashNode(term, 0, calc, 0, calc, 0);
+                hashNode(term, 0, calcTarget, 0, calcTarget, 0);
+                while (fn % 2 == 0 && fn != 0) {
+                    fn >>= 1;
+                    sn >>= 1;
+                }
+            } else {
+                hashNode(calcTarget, 0, term, 0, calcTarget, 0);
+            }
+            fn >>= 1;
+            sn >>= 1;
+        }
+        return equal(calc, 0, iRoot) && equal(calcTarget, 0, jRoot);
+    }
+
+    /**
+     * Inclusion of the leaf in {@link #calc} as the last one of the accumulated hash tree of tx i.
+     */
+    private boolean verifyLastInclusion(ImmudbProto.DualProof proof, long i, ByteString root) {
+        if (i == 0) {
+            return false;
+        }
+        int n = proof.getLastInclusionProofCount();
+        for (int t = 0; t < n; t++) {
+            if (!copyDigest(proof.getLastInclusionProof(t), term)) {
+                return false;
+            }
+            hashNode(term, 0, calc, 0, calc, 0);
+        }
+        return equal(calc, 0, root);
+    }
+
+    private boolean verifyLinearProof(ImmudbProto.LinearProof proof, long sourceId, long targetId,
+                                      byte[] sourceAlh, byte[] targetAlh) {
+        int n = proof.getTermsCount();
+        if (proof.getSourceTxId() != sourceId || proof.getTargetTxId() != targetId
+                || sourceId == 0 || sourceId > targetId || n == 0) {
+            return false;
+        }
+        if (!copyDigest(proof.getTerms(0), calc) || !equal(calc, 0, sourceAlh, 0)) {
+            return false;
+        }
+        for (int t = 1; t < n; t++) {
+            if (!chainAlh(sourceId + t, proof.getTerms(t))) {
+                return false;
+            }
+        }
+        return equal(calc, 0, targetAlh, 0);
+    }
+
+    /**
+     * Replace the alh in {@link #calc} with the one of the following tx, given its inner hash.
+     */
+    private boolean chainAlh(long txId, ByteString innerHash) {
+        if (!isDigest(innerHash)) {
+            return false;
+        }
+        putLong(alhInput, 0, txId);
+        System.arraycopy(calc, 0, alhInput, 8, DIGEST_SIZE);
+        innerHash.copyTo(alhInput, 8 + DIGEST_SIZE);
+        sha256.update(alhInput);
+        finish(calc, 0);
+        return true;
+    }
+
+    /**
+     * Tell if the alh of the provided tx, as chained by a linear proof, is the provided one.
+     * Meaningful only once the proof itself has been verified (as part of a dual proof): then a match means
+     * that the target tx of the proof extends the provided one.
+     */
+    boolean linearProofLinks(ImmudbProto.LinearProof proof, long txId, byte[] alh) {
+        long sourceId = proof.getSourceTxId();
+        if (txId < sourceId || txId > proof.getTargetTxId() || txId - sourceId >= proof.getTermsCount()) {
+            return false;
+        }
+        if (!copyDigest(proof.getTerms(0), calc)) {
+            return false;
+        }
+        int steps = (int) (txId - sourceId);
+        for (int t = 1; t <= steps; t++) {
+            if (!chainAlh(sourceId + t, proof.getTerms(t))) {
+                return false;
+            }
+        }
+        return equal(calc, 0, alh, 0);
+    }
+
+    private boolean alh(ImmudbProto.TxMetadata md, byte[] out) {
+        ByteString eh = md.getEH();
+        ByteString blRoot = md.getBlRoot();
+        ByteString prevAlh = md.getPrevAlh();
+        if (!isDigest(eh) || !isDigest(blRoot) || !isDigest(prevAlh)) {
+            return false;
+        }
+        putLong(innerInput, 0, md.getTs());
+        putInt(innerInput, 8, md.getNentries());
+        eh.copyTo(innerInput, 12);
+        putLong(innerInput, 12 + DIGEST_SIZE, md.getBlTxId());
+        blRoot.copyTo(innerInput, 20 + DIGEST_SIZE);
+        sha256.update(innerInput);
+        finish(alhInput, 8 + DIGEST_SIZE);
+
+        putLong(alhInput, 0, md.getId());
+        prevAlh.copyTo(alhInput, 8);
+        sha256.update(alhInput);
+        finish(out, 0);
+        return true;
+    }
+
+    private void hashNode(byte[] left, int leftOff, byte[] right, int rightOff, byte[] out, int outOff) {
+        sha256.update(NODE_PREFIX);
+        sha256.update(left, leftOff, DIGEST_SIZE);
+        sha256.update(right, rightOff, DIGEST_SIZE);
+        finish(out, outOff);
+    }
+
+    /**
+     * Feed a ByteString to the digest through the chunk buffer (its own accessors would copy it whole).
+     */
+    private void update(ByteString data) {
+        int size = data.size();
+        if (size > chunk.length && chunk.length < MAX_CHUNK) {
+            chunk = new byte[Math.min(MAX_CHUNK, Integer.highestOneBit(size - 1) << 1)];
+        }
+        for (int off = 0; off < size; off += chunk.length) {
+            int len = Math.min(chunk.length, size - off);
+            data.copyTo(chunk, off, 0, len);
+            sha256.update(chunk, 0, len);
+        }
+    }
+
+    private void finish(byte[] out, int off) {
+        try {
+            sha256.digest(out, off, DIGEST_SIZE);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isDigest(ByteString data) {
+        return data.size() == DIGEST_SIZE;
+    }
+
+    private static boolean copyDigest(ByteString data, byte[] out) {
+        if (!isDigest(data)) {
+            return false;
+        }
+        data.copyTo(out, 0);
+        return true;
+    }
+
+    private static boolean equal(byte[] a, int off, ByteString b) {
+        if (!isDigest(b)) {
+            return false;
+        }
+        for (int i = 0; i < DIGEST_SIZE; i++) {
+            if (a[off + i] != b.byteAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(byte[] a, int aOff, byte[] b, int bOff) {
+        if (b.length - bOff < DIGEST_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < DIGEST_SIZE; i++) {
+            if (a[aOff + i] != b[bOff + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(byte[] key, ByteString other) {
+        if (key.length != other.size()) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != other.byteAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putLong(byte[] b, int off, long v) {
+        for (int i = 7; i >= 0; i--) {
+            b[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        for (int i = 3; i >= 0; i--) {
+            b[off + i] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+}
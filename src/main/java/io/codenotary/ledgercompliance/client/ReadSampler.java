@@ -0,0 +1,87 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Picks the unverified reads to verify in the background: a random fraction of them, within a budget
+ * of verifications per second (a token bucket holding up to one second of budget), and counts the outcomes.
+ */
+final class ReadSampler {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final double fraction;
+    private final int maxPerSecond;
+
+    private double tokens;
+    private long refilledAt;
+
+    final LongAdder reads = new LongAdder();
+    final LongAdder sampled = new LongAdder();
+    final LongAdder verified = new LongAdder();
+    final LongAdder tampered = new LongAdder();
+    final LongAdder skipped = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    ReadSampler(double fraction, int maxPerSecond) {
+        if (fraction <= 0 || fraction > 1) {
+            throw new IllegalArgumentException("Sampled fraction must be in (0, 1]: " + fraction);
+        }
+        if (maxPerSecond < 0) {
+            throw new IllegalArgumentException("Max verifications per second must not be negative: " + maxPerSecond);
+        }
+        this.fraction = fraction;
+        this.maxPerSecond = maxPerSecond;
+        this.tokens = maxPerSecond;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Count a read, and tell if it is to be verified.
+     */
+    boolean sample() {
+        reads.increment();
+        if (fraction < 1 && ThreadLocalRandom.current().nextDouble() >= fraction) {
+            return false;
+        }
+        if (maxPerSecond > 0 && !tryAcquire()) {
+            skipped.increment();
+            return false;
+        }
+        sampled.increment();
+        return true;
+    }
+
+    private synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(maxPerSecond, tokens + (now - refilledAt) * maxPerSecond / NANOS_PER_SECOND);
+        refilledAt = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    VerificationCoverage coverage() {
+        return new VerificationCoverage(reads.sum(), sampled.sum(), verified.sum(), tampered.sum(),
+                skipped.sum(), errors.sum());
+    }
+
+}
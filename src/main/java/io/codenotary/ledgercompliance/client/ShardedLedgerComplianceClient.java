@@ -0,0 +1,415 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+import io.codenotary.immudb4j.ImmuState;
+import io.codenotary.immudb4j.KV;
+import io.codenotary.immudb4j.TxMetadata;
+import io.codenotary.immudb4j.exceptions.VerificationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * A client spreading the keys over several ledgers (the shards), each one reached through its own
+ * {@link LedgerComplianceClient} and so verified against its own {@link ImmuState}.
+ * <p>
+ * Keys are routed by consistent hashing: every shard owns a number of virtual nodes on a hash ring, placed by
+ * hashing the shard name, and a key belongs to the first virtual node following its hash. Adding a shard moves
+ * only the keys falling on its virtual nodes, so shard names (not their order) must stay the same across runs.
+ * <p>
+ * Single-key operations go to the owning shard. Multi-key operations are split per shard and run on the shards
+ * in parallel; prefix scans are run on all the shards and merged in key order.
+ */
+public class ShardedLedgerComplianceClient {
+
+    // The most entries a scan returns (the server's limit, also applying when none is asked for).
+    static final int SERVER_SCAN_LIMIT = 1000;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "lc-shard-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    };
+
+    private final List<String> names;
+    private final List<LedgerComplianceClient> shards;
+    // The ring: virtual node hashes, sorted, and the shard owning each of them.
+    private final long[] ring;
+    private final int[] owners;
+    private final ExecutorService executor;
+
+    private ShardedLedgerComplianceClient(Builder builder) {
+        this.names = new ArrayList<>(builder.names);
+        this.shards = new ArrayList<>(builder.shards);
+
+        int n = shards.size() * builder.virtualNodes;
+        long[] hashes = new long[n];
+        int[] shardOf = new int[n];
+        Integer[] order = new Integer[n];
+        for (int s = 0, i = 0; s < shards.size(); s++) {
+            for (int v = 0; v < builder.virtualNodes; v++, i++) {
+                byte[] node = (names.get(s) + "#" + v).getBytes(StandardCharsets.UTF_8);
+                hashes[i] = BloomKeyFilter.hash(node, 0, node.length, 0);
+                shardOf[i] = s;
+                order[i] = i;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        this.ring = new long[n];
+        this.owners = new int[n];
+        for (int i = 0; i < n; i++) {
+            ring[i] = hashes[order[i]];
+            owners[i] = shardOf[order[i]];
+        }
+
+        this.executor = Executors.newFixedThreadPool(shards.size(), THREAD_FACTORY);
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    public String shardName(int shard) {
+        return names.get(shard);
+    }
+
+    /**
+     * The index of the shard owning the provided key.
+     */
+    public int shardOf(byte[] key) {
+        long h = BloomKeyFilter.hash(key, 0, key.length, 0);
+        int i = Arrays.binarySearch(ring, h);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == ring.length ? 0 : i];
+    }
+
+    public int shardOf(String key) {
+        return shardOf(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The client of the shard owning the provided key, for the operations not offered here.
+     */
+    public LedgerComplianceClient clientFor(byte[] key) {
+        return shards.get(shardOf(key));
+    }
+
+    public LedgerComplianceClient clientFor(String key) {
+        return shards.get(shardOf(key));
+    }
+
+    public LedgerComplianceClient shard(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * The last verified state of each shard, in shard order.
+     */
+    public List<ImmuState> states() {
+        List<ImmuState> states = new ArrayList<>(shards.size());
+        for (LedgerComplianceClient shard : shards) {
+            states.add(shard.state());
+        }
+        return states;
+    }
+
+    //
+    // ========== SINGLE KEY ==========
+    //
+
+    public void set(String key, byte[] value) {
+        clientFor(key).set(key, value);
+    }
+
+    public void set(byte[] key, byte[] value) {
+        clientFor(key).set(key, value);
+    }
+
+    public TxMetadata verifiedSet(String key, byte[] value) throws VerificationException {
+        return clientFor(key).verifiedSet(key, value);
+    }
+
+    public TxMetadata verifiedSet(byte[] key, byte[] value) throws VerificationException {
+        return clientFor(key).verifiedSet(key, value);
+    }
+
+    public byte[] get(String key) {
+        return clientFor(key).get(key);
+    }
+
+    public byte[] get(byte[] key) {
+        return clientFor(key).get(key);
+    }
+
+    public byte[] verifiedGet(String key) throws VerificationException {
+        return clientFor(key).verifiedGet(key);
+    }
+
+    public byte[] verifiedGet(byte[] key) throws VerificationException {
+        return clientFor(key).verifiedGet(key);
+    }
+
+    public List<KV> history(String key, int limit, long offset, boolean reverse) {
+        return clientFor(key).history(key, limit, offset, reverse);
+    }
+
+    public List<KV> history(byte[] key, int limit, long offset, boolean reverse) {
+        return clientFor(key).history(key, limit, offset, reverse);
+    }
+
+    //
+    // ========== MULTI KEY ==========
+    //
+
+    /**
+     * Set all the provided pairs: each shard sets its own keys in a single tx, all the shards in parallel.
+     */
+    public void setAll(Map<String, byte[]> entries) {
+        List<ImmudbProto.SetRequest.Builder> perShard = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            perShard.add(ImmudbProto.SetRequest.newBuilder());
+        }
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            int s = shardOf(entry.getKey());
+            perShard.get(s).addKVs(ImmudbProto.KeyValue.newBuilder()
+                    .setKey(ByteString.copyFrom(entry.getKey(), StandardCharsets.UTF_8))
+                    .setValue(ByteString.copyFrom(shards.get(s).encodeValue(entry.getValue()))));
+        }
+        onShards(null, s -> {
+            ImmudbProto.SetRequest.Builder request = perShard.get(s);
+            return request.getKVsCount() == 0 ? null : shards.get(s).setEntries(request.build());
+        });
+    }
+
+    /**
+     * Get multiple key-value pairs, with one request per involved shard, all the shards in parallel.
+     * The pairs come in the order of the provided keys; keys not found are left out.
+     */
+    public List<KV> getAll(List<String> keys) {
+        List<List<String>> perShard = emptyPerShard();
+        for (String key : keys) {
+            perShard.get(shardOf(key)).add(key);
+        }
+        List<List<KV>> results = onShards(perShard, s -> shards.get(s).getAll(perShard.get(s)));
+
+        Map<String, KV> found = new HashMap<>(keys.size() * 2);
+        for (List<KV> result : results) {
+            if (result != null) {
+                for (KV kv : result) {
+                    found.put(new String(kv.getKey(), StandardCharsets.UTF_8), kv);
+                }
+            }
+        }
+        List<KV> ordered = new ArrayList<>(found.size());
+        for (String key : keys) {
+            KV kv = found.get(key);
+            if (kv != null) {
+                ordered.add(kv);
+            }
+        }
+        return ordered;
+    }
+
+    //
+    // ========== SCAN ==========
+    //
+
+    public List<KV> scan(String prefix) {
+        return scan(prefix.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public List<KV> scan(byte[] prefix) {
+        return scan(prefix, 0, false);
+    }
+
+    /**
+     * Scan the prefix on all the shards in parallel and merge the results in key order.
+     * A limit applies to the merged results, so each shard is asked for as many. Without a limit (0), each shard
+     * returns up to the server's scan limit: the merged results then stop at the last key of the shards having
+     * reached it, since the keys following it may be missing.
+     */
+    public List<KV> scan(byte[] prefix, long limit, boolean reverse) {
+        long shardLimit = limit > 0 ? limit : SERVER_SCAN_LIMIT;
+        List<List<KV>> results = onShards(null, s -> shards.get(s).scan(prefix, 0, shardLimit, reverse));
+
+        int total = 0;
+        byte[] stop = null;
+        for (List<KV> result : results) {
+            total += result.size();
+            if (result.size() >= shardLimit) {
+                byte[] last = result.get(result.size() - 1).getKey();
+                if (stop == null || (reverse ? compareKeys(last, stop) > 0 : compareKeys(last, stop) < 0)) {
+                    stop = last;
+                }
+            }
+        }
+        int max = limit > 0 ? (int) Math.min(total, limit) : total;
+        List<KV> merged = new ArrayList<>(max);
+        int[] next = new int[results.size()];
+        while (merged.size() < max) {
+            int best = -1;
+            for (int s = 0; s < results.size(); s++) {
+                if (next[s] == results.get(s).size()) {
+                    continue;
+                }
+                if (best < 0) {
+                    best = s;
+                    continue;
+                }
+                int c = compareKeys(results.get(s).get(next[s]).getKey(), results.get(best).get(next[best]).getKey());
+                if (reverse ? c > 0 : c < 0) {
+                    best = s;
+                }
+            }
+            KV kv = results.get(best).get(next[best]++);
+            if (stop != null && (reverse ? compareKeys(kv.getKey(), stop) < 0 : compareKeys(kv.getKey(), stop) > 0)) {
+                break;
+            }
+            merged.add(kv);
+        }
+        return merged;
+    }
+
+    /**
+     * Shut down all the shard clients.
+     */
+    public synchronized void shutdown() {
+        executor.shutdownNow();
+        for (LedgerComplianceClient shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    /**
+     * Run the provided call on every shard having work (a non-empty list), or on all the shards when there's
+     * no work list, in parallel; the results come in shard order (null for the shards skipped).
+     */
+    private <T> List<T> onShards(List<? extends List<?>> work, IntFunction<T> call) {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            final int shard = s;
+            boolean skip = work != null && work.get(s).isEmpty();
+            futures.add(skip ? null : executor.submit(() -> call.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        for (Future<T> future : futures) {
+            if (future == null) {
+                results.add(null);
+                continue;
+            }
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e.getMessage());
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause().getMessage());
+            }
+        }
+        return results;
+    }
+
+    private <T> List<List<T>> emptyPerShard() {
+        List<List<T>> perShard = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            perShard.add(new ArrayList<>());
+        }
+        return perShard;
+    }
+
+    private static int compareKeys(byte[] k1, byte[] k2) {
+        int n = Math.min(k1.length, k2.length);
+        for (int i = 0; i < n; i++) {
+            int c = (k1[i] & 0xff) - (k2[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return k1.length - k2.length;
+    }
+
+    /**
+     * The builder used for creating a sharded client out of the clients of its shards.
+     */
+    public static class Builder {
+
+        private final List<String> names;
+        private final List<LedgerComplianceClient> shards;
+        private int virtualNodes;
+
+        private Builder() {
+            this.names = new ArrayList<>();
+            this.shards = new ArrayList<>();
+            this.virtualNodes = 128;
+        }
+
+        /**
+         * Add a shard. Its name places it on the hash ring, so it must not change once keys have been written.
+         */
+        public Builder addShard(String name, LedgerComplianceClient client) {
+            if (names.contains(name)) {
+                throw new IllegalArgumentException("Duplicate shard name: " + name);
+            }
+            names.add(name);
+            shards.add(client);
+            return this;
+        }
+
+        /**
+         * The number of points each shard has on the hash ring: more points spread the keys more evenly.
+         */
+        public Builder withVirtualNodes(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        public ShardedLedgerComplianceClient build() {
+            if (shards.isEmpty()) {
+                throw new IllegalStateException("At least one shard is required.");
+            }
+            if (virtualNodes <= 0) {
+                throw new IllegalArgumentException("Virtual nodes must be positive: " + virtualNodes);
+            }
+            return new ShardedLedgerComplianceClient(this);
+        }
+    }
+
+}
@@ -0,0 +1,331 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Self-consistent proofs over a synthetic chain of transactions, used for warming up (class loading and JIT
+ * compilation of) the verification code before real traffic, and by the proof benchmarks.
+ * <p>
+ * A {@link Sample} holds the messages a verified set and a verified get receive: a tx with a few entries,
+ * the inclusion proof of one of them and a dual proof against an older tx. Every tx links the previous ones
+ * (or, with a lag, the ones up to a few txs before), so the dual proof has all of its parts (accumulated tree
+ * inclusion and consistency, last inclusion, linear proof). The proofs are built here from their definitions,
+ * independently of the verifier. They never touch the server nor the local state.
+ */
+final class SyntheticProofs {
+
+    private static final int DIGEST_SIZE = ProofVerifier.DIGEST_SIZE;
+
+    /**
+     * The messages of a verified write (or read) of the entry at {@link #index} of the target tx,
+     * with the client state at the source tx.
+     */
+    static final class Sample {
+
+        final ImmudbProto.Tx tx;
+        final ImmudbProto.InclusionProof inclusionProof;
+        final ImmudbProto.DualProof dualProof;
+        final int index;
+        final byte[] key;
+        final byte[] value;
+        final long sourceId;
+        final byte[] sourceAlh;
+        final long targetId;
+        final byte[] targetAlh;
+        // The alhs of all the txs of the chain, by tx id.
+        final byte[][] alhs;
+
+        Sample(ImmudbProto.Tx tx, ImmudbProto.InclusionProof inclusionProof, ImmudbProto.DualProof dualProof,
+               int index, byte[] key, byte[] value, long sourceId, byte[] sourceAlh, byte[] targetAlh, byte[][] alhs) {
+            this.tx = tx;
+            this.inclusionProof = inclusionProof;
+            this.dualProof = dualProof;
+            this.index = index;
+            this.key = key;
+            this.value = value;
+            this.sourceId = sourceId;
+            this.sourceAlh = sourceAlh;
+            this.targetId = tx.getMetadata().getId();
+            this.targetAlh = targetAlh;
+            this.alhs = alhs;
+        }
+
+        byte[] encodedKey() {
+            return concat(ProofVerifier.KEY_PREFIX, key);
+        }
+    }
+
+    private SyntheticProofs() {
+    }
+
+    /**
+     * Run the provided number of verification rounds, alternating the proofs of a write and of a read.
+     *
+     * @return the number of rounds whose proofs verified (all of them, unless the proof formats changed)
+     */
+    static int verify(int rounds) {
+        Sample sample = sample(4, 64, 5, 12);
+        byte[] encodedKey = sample.encodedKey();
+        ByteString key = ByteString.copyFrom(sample.key);
+        ByteString value = ByteString.copyFrom(sample.value);
+
+        int verified = 0;
+        for (int i = 0; i < rounds; i++) {
+            ProofVerifier verifier = ProofVerifier.get();
+            boolean ok;
+            try {
+                if (i % 2 == 0) {
+                    byte[] kvDigest = verifier.kvDigest(encodedKey, ProofVerifier.VALUE_PREFIX, sample.value);
+                    ok = verifier.verifyTxInclusion(sample.tx, encodedKey, kvDigest);
+                } else {
+                    byte[] kvDigest = verifier.kvDigest(key, value);
+                    ok = verifier.verifyInclusion(sample.inclusionProof, kvDigest, sample.tx.getMetadata().getEH());
+                }
+                byte[] targetAlh = verifier.alh(sample.tx.getMetadata());
+                ok &= targetAlh != null && verifier.verifyDualProof(
+                        sample.dualProof, sample.sourceId, sample.targetId, sample.sourceAlh, targetAlh);
+            } catch (RuntimeException e) {
+                ok = false;
+            }
+            if (ok) {
+                verified++;
+            }
+        }
+        return verified;
+    }
+
+    /**
+     * Build a chain of txs up to the target one, every tx having the previous one as its last linked tx.
+     *
+     * @param entries   the entries of the target tx
+     * @param valueSize the size of their values
+     * @param sourceId  the tx of the (trusted) client state
+     * @param targetId  the tx the proofs lead to
+     */
+    static Sample sample(int entries, int valueSize, long sourceId, long targetId) {
+        return sample(entries, valueSize, sourceId, targetId, 0);
+    }
+
+    /**
+     * Build a chain of txs up to the target one, every tx t having the tx t - 1 - lag as its last linked tx:
+     * the linear proof then spans (at least) the last lag + 1 txs.
+     */
+    static Sample sample(int entries, int valueSize, long sourceId, long targetId, int lag) {
+        if (entries <= 0 || sourceId <= 0 || sourceId >= targetId || lag < 0 || targetId - 1 - lag < 1) {
+            throw new IllegalArgumentException("Invalid sample: " + entries + " entries, tx " + sourceId
+                    + " to " + targetId + ", lag " + lag);
+        }
+        int n = (int) targetId;
+
+        // The entries of the target tx.
+        int index = entries / 2;
+        byte[][] entryDigests = new byte[entries][];
+        ImmudbProto.Tx.Builder tx = ImmudbProto.Tx.newBuilder();
+        byte[] key = null;
+        byte[] value = null;
+        for (int i = 0; i < entries; i++) {
+            byte[] k = ("synthetic-key-" + i).getBytes();
+            byte[] v = new byte[valueSize];
+            for (int j = 0; j < valueSize; j++) {
+                v[j] = (byte) (i * 31 + j);
+            }
+            byte[] encodedKey = concat(ProofVerifier.KEY_PREFIX, k);
+            byte[] hValue = sha256(ProofVerifier.VALUE_PREFIX, v);
+            entryDigests[i] = leaf(sha256(encodedKey, hValue));
+            tx.addEntries(ImmudbProto.TxEntry.newBuilder()
+                    .setKey(ByteString.copyFrom(encodedKey))
+                    .setHValue(ByteString.copyFrom(hValue))
+                    .setVLen(valueSize)
+                    .build());
+            if (i == index) {
+                key = k;
+                value = v;
+            }
+        }
+
+        // The chain: tx t links tx t - 1 - lag, so its accumulated tree holds the alhs of the txs 1 .. t - 1 - lag.
+        ImmudbProto.TxMetadata[] mds = new ImmudbProto.TxMetadata[n + 1];
+        byte[][] alhs = new byte[n + 1][];
+        byte[][] ahLeaves = new byte[n][];
+        alhs[0] = new byte[DIGEST_SIZE];
+        for (int t = 1; t <= n; t++) {
+            byte[] eh = t == n ? root(entryDigests, 0, entries) : sha256(longBytes(t));
+            int blTxId = Math.max(0, t - 1 - lag);
+            byte[] blRoot = blTxId > 0 ? root(ahLeaves, 1, blTxId + 1) : new byte[DIGEST_SIZE];
+            mds[t] = ImmudbProto.TxMetadata.newBuilder()
+                    .setId(t)
+                    .setPrevAlh(ByteString.copyFrom(alhs[t - 1]))
+                    .setTs(1_600_000_000L + t)
+                    .setNentries(t == n ? entries : 1)
+                    .setEH(ByteString.copyFrom(eh))
+                    .setBlTxId(blTxId)
+                    .setBlRoot(ByteString.copyFrom(blRoot))
+                    .build();
+            alhs[t] = sha256(longBytes(t), alhs[t - 1], innerHash(mds[t]));
+            if (t < n) {
+                ahLeaves[t] = leaf(alhs[t]);
+            }
+        }
+        tx.setMetadata(mds[n]);
+
+        ImmudbProto.InclusionProof inclusionProof = ImmudbProto.InclusionProof.newBuilder()
+                .setLeaf(index)
+                .setWidth(entries)
+                .addAllTerms(path(entryDigests, 0, entries, index))
+                .build();
+
+        long sourceBlTxId = Math.max(0, sourceId - 1 - lag);
+        long targetBlTxId = targetId - 1 - lag;
+        ImmudbProto.DualProof.Builder dualProof = ImmudbProto.DualProof.newBuilder()
+                .setSourceTxMetadata(mds[(int) sourceId])
+                .setTargetTxMetadata(mds[n])
+                .setTargetBlTxAlh(ByteString.copyFrom(alhs[(int) targetBlTxId]));
+        if (sourceId < targetBlTxId) {
+            dualProof.addAllInclusionProof(path(ahLeaves, 1, (int) targetBlTxId + 1, (int) sourceId - 1));
+        }
+        if (sourceBlTxId > 0) {
+            dualProof.addAllConsistencyProof(consistency(ahLeaves, (int) sourceBlTxId, (int) targetBlTxId));
+        }
+        dualProof.addAllLastInclusionProof(path(ahLeaves, 1, (int) targetBlTxId + 1, (int) targetBlTxId - 1));
+
+        long linearFrom = Math.max(sourceId, targetBlTxId);
+        ImmudbProto.LinearProof.Builder linearProof = ImmudbProto.LinearProof.newBuilder()
+                .setSourceTxId(linearFrom)
+                .setTargetTxId(targetId)
+                .addTerms(ByteString.copyFrom(alhs[(int) linearFrom]));
+        for (long t = linearFrom + 1; t <= targetId; t++) {
+            linearProof.addTerms(ByteString.copyFrom(innerHash(mds[(int) t])));
+        }
+        dualProof.setLinearProof(linearProof.build());
+
+        return new Sample(tx.build(), inclusionProof, dualProof.build(), index, key, value,
+                sourceId, alhs[(int) sourceId], alhs[n], alhs);
+    }
+
+    /**
+     * The root of the tree of the leaves in [from, to) (RFC 6962: the left subtree is the largest power of 2).
+     */
+    private static byte[] root(byte[][] leaves, int from, int to) {
+        if (to - from == 1) {
+            return leaves[from];
+        }
+        int k = Integer.highestOneBit(to - from - 1);
+        return node(root(leaves, from, from + k), root(leaves, from + k, to));
+    }
+
+    /**
+     * The audit path of the leaf at the provided offset of the tree of the leaves in [from, to), leaf first.
+     */
+    private static List<ByteString> path(byte[][] leaves, int from, int to, int offset) {
+        List<ByteString> terms = new ArrayList<>();
+        if (to - from > 1) {
+            int k = Integer.highestOneBit(to - from - 1);
+            if (offset < k) {
+                terms.addAll(path(leaves, from, from + k, offset));
+                terms.add(ByteString.copyFrom(root(leaves, from + k, to)));
+            } else {
+                terms.addAll(path(leaves, from + k, to, offset - k));
+                terms.add(ByteString.copyFrom(root(leaves, from, from + k)));
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * The consistency proof between the trees of the first i and j leaves (leaves[1 ..]), as immudb builds it:
+     * the RFC 6962 one, starting with the root of the first tree when its size is a power of 2.
+     */
+    private static List<ByteString> consistency(byte[][] leaves, int i, int j) {
+        List<ByteString> terms = new ArrayList<>();
+        if (i == j) {
+            return terms;
+        }
+        if (Integer.bitCount(i) == 1) {
+            terms.add(ByteString.copyFrom(root(leaves, 1, i + 1)));
+        }
+        subProof(leaves, 1, j + 1, i, true, terms);
+        return terms;
+    }
+
+    private static void subProof(byte[][] leaves, int from, int to, int m, boolean complete, List<ByteString> terms) {
+        int n = to - from;
+        if (m == n) {
+            if (!complete) {
+                terms.add(ByteString.copyFrom(root(leaves, from, to)));
+            }
+            return;
+        }
+        int k = Integer.highestOneBit(n - 1);
+        if (m <= k) {
+            subProof(leaves, from, from + k, m, complete, terms);
+            terms.add(ByteString.copyFrom(root(leaves, from + k, to)));
+        } else {
+            subProof(leaves, from + k, to, m - k, false, terms);
+            terms.add(ByteString.copyFrom(root(leaves, from, from + k)));
+        }
+    }
+
+    private static byte[] innerHash(ImmudbProto.TxMetadata md) {
+        return sha256(ByteBuffer.allocate(8 + 4 + DIGEST_SIZE + 8 + DIGEST_SIZE)
+                .putLong(md.getTs())
+                .putInt(md.getNentries())
+                .put(md.getEH().toByteArray())
+                .putLong(md.getBlTxId())
+                .put(md.getBlRoot().toByteArray())
+                .array());
+    }
+
+    private static byte[] leaf(byte[] digest) {
+        return sha256(new byte[]{0}, digest);
+    }
+
+    private static byte[] node(byte[] left, byte[] right) {
+        return sha256(new byte[]{1}, left, right);
+    }
+
+    private static byte[] longBytes(long v) {
+        return ByteBuffer.allocate(8).putLong(v).array();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] c = new byte[a.length + b.length];
+        System.arraycopy(a, 0, c, 0, a.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    private static byte[] sha256(byte[]... parts) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts) {
+                md.update(part);
+            }
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import io.codenotary.immudb4j.exceptions.VerificationException;
+
+/**
+ * Receives the verification failures detected in the background, after the entry has been returned
+ * (see {@link LedgerComplianceClient.LedgerComplianceClientBuilder#withOptimisticVerifiedReads}).
+ * All methods are called from a verification thread.
+ */
+public interface TamperListener {
+
+    /**
+     * The proofs of an entry already returned to the application did not verify.
+     * The tamper has been reported to the server already.
+     *
+     * @param key  the key that was read
+     * @param txId the tx of the entry
+     */
+    void onTamper(byte[] key, long txId, VerificationException e);
+
+    /**
+     * The tamper report sent to the server failed. {@link #onTamper} is called anyway.
+     */
+    default void onReportError(byte[] key, long txId, RuntimeException e) {
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+/**
+ * Transforms the values written to and read from the ledger (see
+ * {@link LedgerComplianceClient.LedgerComplianceClientBuilder#withValueCodec(ValueCodec)}).
+ * <p>
+ * The ledger (and so its proofs) always deal with the encoded bytes. A codec must be able to tell the values
+ * it has encoded from the others, since a ledger may hold values written without a codec.
+ */
+public interface ValueCodec {
+
+    /**
+     * The bytes to store for the provided value.
+     */
+    byte[] encode(byte[] value);
+
+    /**
+     * The value represented by the stored bytes; stored bytes that were not produced by this codec
+     * are returned as they are.
+     */
+    byte[] decode(byte[] stored);
+
+}
@@ -0,0 +1,304 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of the digest of the latest value of keys, used for skipping writes of unchanged values.
+ * <p>
+ * Entries live in primitive arrays, in buckets of a few slots (open addressing within the bucket); a full bucket
+ * evicts its least recently written entry. Each entry holds a 64-bit hash of the key and a 128-bit SHA-256 prefix
+ * of the key and value, so a write is only skipped if that exact pair is known to be the latest.
+ * <p>
+ * A digest is only recorded when nothing else can have changed the key in the meantime: a write that overlapped
+ * another write of the same key, or that failed, leaves the digest unknown, and so does a read that overlapped a
+ * write. Tokens from a global counter order the reads and writes for that purpose.
+ */
+final class ValueDigestCache {
+
+    static final int BUCKET_SLOTS = 8;
+
+    // Slot layout (longs): key hash (0 if empty), digest high, digest low, last token, writes in flight.
+    private static final int STRIDE = 5;
+    private static final int KEY = 0;
+    private static final int DIGEST_HIGH = 1;
+    private static final int DIGEST_LOW = 2;
+    private static final int TOKEN = 3;
+    private static final int IN_FLIGHT = 4;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final long[] slots;
+    // Per bucket: the highest token of the entries evicted (or not tracked) in it.
+    private final long[] evictedTokens;
+    // Per bucket: the writes in flight that found no slot; while any, nothing is skipped or recorded.
+    private final int[] untrackedWrites;
+    private final int bucketMask;
+    private final Object[] locks;
+    private final AtomicLong tokens = new AtomicLong();
+
+    /**
+     * A write being performed, as returned by {@link #beginWrite}.
+     */
+    static final class Ticket {
+
+        final long keyHash;
+        final long digestHigh;
+        final long digestLow;
+        final long token;
+        final boolean tracked;
+        // Whether the write was the only one of its key (and bucket, if untracked) in flight when it began.
+        final boolean exclusive;
+
+        Ticket(long keyHash, long digestHigh, long digestLow, long token, boolean tracked, boolean exclusive) {
+            this.keyHash = keyHash;
+            this.digestHigh = digestHigh;
+            this.digestLow = digestLow;
+            this.token = token;
+            this.tracked = tracked;
+            this.exclusive = exclusive;
+        }
+    }
+
+    ValueDigestCache(int maxKeys) {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("Max keys must be positive: " + maxKeys);
+        }
+        int buckets = Integer.highestOneBit(Math.max(1, (maxKeys + BUCKET_SLOTS - 1) / BUCKET_SLOTS));
+        if (buckets * BUCKET_SLOTS < maxKeys) {
+            buckets <<= 1;
+        }
+        this.slots = new long[buckets * BUCKET_SLOTS * STRIDE];
+        this.evictedTokens = new long[buckets];
+        this.untrackedWrites = new int[buckets];
+        this.bucketMask = buckets - 1;
+        this.locks = new Object[Math.min(buckets, 256)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Start a write of the pair.
+     *
+     * @param skipUnchanged if true and the pair is known to be the latest, nothing is started
+     * @return the ticket to end the write with, or null if the write can be skipped
+     */
+    Ticket beginWrite(byte[] key, byte[] value, boolean skipUnchanged) {
+        long keyHash = keyHash(key);
+        byte[] digest = digest(key, value);
+        long high = toLong(digest, 0);
+        long low = toLong(digest, 8);
+        int bucket = (int) keyHash & bucketMask;
+
+        synchronized (locks[bucket % locks.length]) {
+            int slot = find(bucket, keyHash);
+            if (slot >= 0 && skipUnchanged && slots[slot + IN_FLIGHT] == 0 && untrackedWrites[bucket] == 0
+                    && slots[slot + DIGEST_HIGH] == high && slots[slot + DIGEST_LOW] == low) {
+                return null;
+            }
+            long token = tokens.incrementAndGet();
+            if (slot < 0) {
+                slot = claim(bucket, keyHash);
+            }
+            if (slot < 0) {
+                // All the slots have writes in flight.
+                evictedTokens[bucket] = token;
+                untrackedWrites[bucket]++;
+                return new Ticket(keyHash, high, low, token, false, false);
+            }
+            boolean exclusive = slots[slot + IN_FLIGHT] == 0 && untrackedWrites[bucket] == 0;
+            slots[slot + TOKEN] = token;
+            slots[slot + IN_FLIGHT]++;
+            return new Ticket(keyHash, high, low, token, true, exclusive);
+        }
+    }
+
+    /**
+     * End a write: its digest is recorded if it succeeded and did not overlap any other write of the key.
+     */
+    void endWrite(Ticket ticket, boolean succeeded) {
+        int bucket = (int) ticket.keyHash & bucketMask;
+        synchronized (locks[bucket % locks.length]) {
+            long endToken = tokens.incrementAndGet();
+            int slot = find(bucket, ticket.keyHash);
+            if (!ticket.tracked) {
+                untrackedWrites[bucket]--;
+                evictedTokens[bucket] = endToken;
+                if (slot >= 0) {
+                    slots[slot + DIGEST_HIGH] = 0;
+                    slots[slot + DIGEST_LOW] = 0;
+                    slots[slot + TOKEN] = endToken;
+                }
+                return;
+            }
+            // A tracked slot is not evicted while its writes are in flight.
+            boolean alone = ticket.exclusive && slots[slot + TOKEN] == ticket.token && untrackedWrites[bucket] == 0;
+            slots[slot + IN_FLIGHT]--;
+            if (succeeded && alone) {
+                slots[slot + DIGEST_HIGH] = ticket.digestHigh;
+                slots[slot + DIGEST_LOW] = ticket.digestLow;
+            } else {
+                slots[slot + DIGEST_HIGH] = 0;
+                slots[slot + DIGEST_LOW] = 0;
+            }
+            slots[slot + TOKEN] = endToken;
+        }
+    }
+
+    /**
+     * Forget the latest value of the key (it has been written some other way).
+     */
+    void invalidate(byte[] key) {
+        long keyHash = keyHash(key);
+        int bucket = (int) keyHash & bucketMask;
+        synchronized (locks[bucket % locks.length]) {
+            long token = tokens.incrementAndGet();
+            int slot = find(bucket, keyHash);
+            if (slot < 0) {
+                evictedTokens[bucket] = token;
+                return;
+            }
+            slots[slot + DIGEST_HIGH] = 0;
+            slots[slot + DIGEST_LOW] = 0;
+            slots[slot + TOKEN] = token;
+        }
+    }
+
+    /**
+     * The token to take before a read whose result is then passed to {@link #seed}.
+     */
+    long readToken() {
+        return tokens.get();
+    }
+
+    /**
+     * Record the value read for the key, unless a write of the key was performed since the read began.
+     */
+    void seed(byte[] key, byte[] value, long readToken) {
+        long keyHash = keyHash(key);
+        int bucket = (int) keyHash & bucketMask;
+        byte[] digest = digest(key, value);
+        synchronized (locks[bucket % locks.length]) {
+            int slot = find(bucket, keyHash);
+            if (slot < 0) {
+                if (evictedTokens[bucket] > readToken) {
+                    return;
+                }
+                slot = claim(bucket, keyHash);
+                if (slot < 0) {
+                    return;
+                }
+                slots[slot + TOKEN] = readToken;
+            }
+            if (slots[slot + IN_FLIGHT] != 0 || slots[slot + TOKEN] > readToken || untrackedWrites[bucket] != 0) {
+                return;
+            }
+            slots[slot + DIGEST_HIGH] = toLong(digest, 0);
+            slots[slot + DIGEST_LOW] = toLong(digest, 8);
+        }
+    }
+
+    private int find(int bucket, long keyHash) {
+        int start = bucket * BUCKET_SLOTS * STRIDE;
+        for (int i = 0; i < BUCKET_SLOTS; i++) {
+            int slot = start + i * STRIDE;
+            long k = slots[slot + KEY];
+            if (k == keyHash) {
+                return slot;
+            }
+            if (k == 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Take a slot of the bucket for the key: a free one or, evicting its entry, the least recently written
+     * one with no write in flight. Returns -1 if all slots have writes in flight.
+     */
+    private int claim(int bucket, long keyHash) {
+        int start = bucket * BUCKET_SLOTS * STRIDE;
+        int victim = -1;
+        for (int i = 0; i < BUCKET_SLOTS; i++) {
+            int slot = start + i * STRIDE;
+            if (slots[slot + KEY] == 0) {
+                victim = slot;
+                break;
+            }
+            if (slots[slot + IN_FLIGHT] == 0 && (victim < 0 || slots[slot + TOKEN] < slots[victim + TOKEN])) {
+                victim = slot;
+            }
+        }
+        if (victim < 0) {
+            return -1;
+        }
+        if (slots[victim + KEY] != 0) {
+            evictedTokens[bucket] = Math.max(evictedTokens[bucket], slots[victim + TOKEN]);
+        }
+        slots[victim + KEY] = keyHash;
+        slots[victim + DIGEST_HIGH] = 0;
+        slots[victim + DIGEST_LOW] = 0;
+        slots[victim + TOKEN] = 0;
+        slots[victim + IN_FLIGHT] = 0;
+        return victim;
+    }
+
+    /**
+     * A non-zero 64-bit hash of the key (FNV-1a, with a final avalanche).
+     */
+    static long keyHash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private static byte[] digest(byte[] key, byte[] value) {
+        MessageDigest sha = SHA256.get();
+        sha.update((byte) (key.length >>> 24));
+        sha.update((byte) (key.length >>> 16));
+        sha.update((byte) (key.length >>> 8));
+        sha.update((byte) key.length);
+        sha.update(key);
+        sha.update(value);
+        return sha.digest();
+    }
+
+    private static long toLong(byte[] b, int off) {
+        long v = 0;
+        for (int i = off; i < off + 8; i++) {
+            v = (v << 8) | (b[i] & 0xffL);
+        }
+        return v;
+    }
+
+}
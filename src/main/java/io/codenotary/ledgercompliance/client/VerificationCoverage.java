@@ -0,0 +1,106 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+/**
+ * The counters of the sampled verification of unverified reads, since the client was built
+ * (see {@link LedgerComplianceClient.LedgerComplianceClientBuilder#withSampledVerification}).
+ * <p>
+ * Each sampled read is verified independently of the others, so a tampered entry read {@code n} times
+ * goes unnoticed with probability {@code (1 - coverage)^n}.
+ */
+public final class VerificationCoverage {
+
+    private final long reads;
+    private final long sampled;
+    private final long verified;
+    private final long tampered;
+    private final long skipped;
+    private final long errors;
+
+    VerificationCoverage(long reads, long sampled, long verified, long tampered, long skipped, long errors) {
+        this.reads = reads;
+        this.sampled = sampled;
+        this.verified = verified;
+        this.tampered = tampered;
+        this.skipped = skipped;
+        this.errors = errors;
+    }
+
+    /**
+     * The entries returned by unverified reads.
+     */
+    public long getReads() {
+        return reads;
+    }
+
+    /**
+     * The reads picked for verification. Those not completed yet are neither verified nor tampered.
+     */
+    public long getSampled() {
+        return sampled;
+    }
+
+    /**
+     * The sampled reads whose entry matched a verified one.
+     */
+    public long getVerified() {
+        return verified;
+    }
+
+    /**
+     * The sampled reads whose entry differed from the verified one, or whose proofs failed.
+     */
+    public long getTampered() {
+        return tampered;
+    }
+
+    /**
+     * The reads picked but not verified because the budget per second or the verifier queue were exhausted.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * The sampled reads whose verification could not complete (e.g. server errors), not reported as tampered.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * The fraction of the reads whose entry has been checked, tampered ones included.
+     */
+    public double getCoverage() {
+        return reads == 0 ? 0 : (double) (verified + tampered) / reads;
+    }
+
+    /**
+     * The probability that a tampered entry is detected when read the provided number of times,
+     * at the current coverage.
+     */
+    public double detectionProbability(long timesRead) {
+        return 1 - Math.pow(1 - getCoverage(), timesRead);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("reads=%d sampled=%d verified=%d tampered=%d skipped=%d errors=%d coverage=%.4f",
+                reads, sampled, verified, tampered, skipped, errors, getCoverage());
+    }
+
+}
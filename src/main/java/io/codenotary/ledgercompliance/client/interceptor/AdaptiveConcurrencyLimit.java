@@ -0,0 +1,142 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client.interceptor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrency limit that adapts to the observed round trip times (AIMD).
+ * <p>
+ * The limit grows by one for each call completed within {@code rttTolerance} times the baseline RTT
+ * while the limit was actually being used (at least half of it in flight), and shrinks by
+ * {@code backoffRatio} when a call is slower than that or is dropped (UNAVAILABLE, DEADLINE_EXCEEDED,
+ * RESOURCE_EXHAUSTED). The baseline is the minimum RTT of the previous window of samples, so it follows
+ * lasting changes of the backend latency.
+ * <p>
+ * Calls over the limit are rejected immediately instead of being queued.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    public static final double DEFAULT_RTT_TOLERANCE = 2.0;
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+    private static final int BASELINE_WINDOW = 500;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+
+    // Guarded by this.
+    private long baselineRtt;
+    private long windowMinRtt = Long.MAX_VALUE;
+    private int windowSamples;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, DEFAULT_RTT_TOLERANCE, DEFAULT_BACKOFF_RATIO);
+    }
+
+    /**
+     * @param rttTolerance how many times the baseline RTT a call may take before the limit is decreased
+     * @param backoffRatio the factor (in (0, 1)) the limit is multiplied by on each decrease
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit,
+                                    double rttTolerance, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid limits: initial %d, min %d, max %d", initialLimit, minLimit, maxLimit));
+        }
+        if (rttTolerance < 1) {
+            throw new IllegalArgumentException("RTT tolerance must be at least 1: " + rttTolerance);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be in (0, 1): " + backoffRatio);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.backoffRatio = backoffRatio;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Take a slot, if the limit allows it.
+     *
+     * @return the number of calls in flight including this one, or -1 if the call must be rejected
+     */
+    public int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * Release a slot taken by a call that has not been sent after all.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Release a slot and update the limit with the outcome of the call.
+     *
+     * @param inFlightAtStart what {@link #tryAcquire()} returned for the call
+     */
+    public void release(long rttNanos, int inFlightAtStart, boolean dropped) {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            if (dropped) {
+                decrease();
+                return;
+            }
+
+            windowMinRtt = Math.min(windowMinRtt, rttNanos);
+            if (baselineRtt == 0 || ++windowSamples >= BASELINE_WINDOW) {
+                baselineRtt = windowMinRtt;
+                windowMinRtt = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+
+            if (rttNanos > baselineRtt * rttTolerance) {
+                decrease();
+            } else if (inFlightAtStart * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        }
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+}
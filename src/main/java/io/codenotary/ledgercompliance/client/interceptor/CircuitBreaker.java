@@ -0,0 +1,125 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client.interceptor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A circuit breaker that opens after a number of consecutive failures (UNAVAILABLE or DEADLINE_EXCEEDED).
+ * <p>
+ * While open, calls are rejected immediately. After the open duration, a single trial call is let through
+ * (half open): its success closes the breaker, its failure opens it again. The outcomes of calls let through
+ * before the breaker opened tell nothing about the trial, and are ignored until the breaker closes.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private volatile State state = State.CLOSED;
+    private volatile int consecutiveFailures;
+    // Incremented each time the breaker opens: the permit of the calls let through until it opens again.
+    private volatile long epoch;
+
+    // Guarded by this.
+    private long openUntil;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be positive: " + failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * Let a call through, if the breaker allows it. A call that is let through must then report its outcome
+     * with the returned permit (or give it back with {@link #release(long)}).
+     *
+     * @return the permit of the call, or -1 if the call must be rejected
+     */
+    public long tryAcquire() {
+        long permit = epoch;
+        if (state == State.CLOSED) {
+            return permit;
+        }
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - openUntil >= 0) {
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == State.HALF_OPEN && !trialInFlight) {
+                trialInFlight = true;
+                return epoch;
+            }
+            return state == State.CLOSED ? epoch : -1;
+        }
+    }
+
+    /**
+     * Give back the permit of a call that has not been sent (or whose outcome tells nothing, as when cancelled).
+     */
+    public synchronized void release(long permit) {
+        if (isTrial(permit)) {
+            trialInFlight = false;
+        }
+    }
+
+    public void onSuccess(long permit) {
+        if (state == State.CLOSED && consecutiveFailures == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                consecutiveFailures = 0;
+            } else if (isTrial(permit)) {
+                consecutiveFailures = 0;
+                state = State.CLOSED;
+                trialInFlight = false;
+            }
+        }
+    }
+
+    public synchronized void onFailure(long permit) {
+        boolean open;
+        if (state == State.CLOSED) {
+            open = permit == epoch && ++consecutiveFailures >= failureThreshold;
+        } else {
+            open = isTrial(permit);
+        }
+        if (open) {
+            state = State.OPEN;
+            openUntil = System.nanoTime() + openNanos;
+            trialInFlight = false;
+            epoch++;
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // Guarded by this. Only the trial is let through with the current epoch while half open.
+    private boolean isTrial(long permit) {
+        return state == State.HALF_OPEN && trialInFlight && permit == epoch;
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client.interceptor;
+
+import io.grpc.*;
+
+import java.util.Set;
+
+/**
+ * Compresses the requests of the provided methods (bare names, e.g. "VerifiableSet") with the given compressor.
+ * Responses are compressed according to the server configuration; the client accepts gzip by default.
+ */
+public class CompressionInterceptor implements ClientInterceptor {
+
+    private final String compressor;
+    private final Set<String> methods;
+
+    public CompressionInterceptor(String compressor, Set<String> methods) {
+        this.compressor = compressor;
+        this.methods = methods;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        String fullName = method.getFullMethodName();
+        if (methods.contains(fullName.substring(fullName.lastIndexOf('/') + 1))) {
+            callOptions = callOptions.withCompression(compressor);
+        }
+        return next.newCall(method, callOptions);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client.interceptor;
+
+import com.google.protobuf.MessageLite;
+import io.codenotary.ledgercompliance.client.jfr.RpcEvent;
+import io.grpc.*;
+
+/**
+ * Records a {@link RpcEvent} for each call. When the event is not enabled in the running recordings
+ * (the default), calls go straight to the next channel.
+ */
+public class FlightRecorderInterceptor implements ClientInterceptor {
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        RpcEvent event = new RpcEvent();
+        if (!event.isEnabled()) {
+            return next.newCall(method, callOptions);
+        }
+        event.method = method.getFullMethodName();
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                event.begin();
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onMessage(RespT message) {
+                        event.responseBytes += sizeOf(message);
+                        super.onMessage(message);
+                    }
+
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        event.end();
+                        if (event.shouldCommit()) {
+                            event.status = status.getCode().name();
+                            event.commit();
+                        }
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+
+            @Override
+            public void sendMessage(ReqT message) {
+                event.requestBytes += sizeOf(message);
+                super.sendMessage(message);
+            }
+        };
+    }
+
+    private static long sizeOf(Object message) {
+        // The serialized size of a protobuf message is memoized, so this does not serialize it twice.
+        return message instanceof MessageLite ? ((MessageLite) message).getSerializedSize() : 0;
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client.interceptor;
+
+/**
+ * The classes of calls that get their own concurrency limit and circuit breaker.
+ */
+public enum OperationClass {
+
+    /**
+     * Set, VerifiableSet, ExecAll, ZAdd, VerifiableZAdd, SetReference and the other calls writing to the ledger.
+     */
+    WRITE,
+
+    /**
+     * VerifiableGet and VerifiableGetExt.
+     */
+    VERIFIED_READ,
+
+    /**
+     * Scan, History, ZScan, GetAll and their Ext variants.
+     */
+    SCAN,
+
+    /**
+     * Everything else: Get, CurrentState, Health, ...
+     */
+    READ;
+
+    /**
+     * The class of a method, given its bare name (e.g. "VerifiableSet").
+     */
+    public static OperationClass of(String method) {
+        switch (method) {
+            case "Set":
+            case "VerifiableSet":
+            case "ExecAll":
+            case "ZAdd":
+            case "VerifiableZAdd":
+            case "SetReference":
+            case "VerifiableSetReference":
+            case "SendData":
+            case "ReportTamper":
+                return WRITE;
+            case "VerifiableGet":
+            case "VerifiableGetExt":
+                return VERIFIED_READ;
+            case "Scan":
+            case "History":
+            case "HistoryExt":
+            case "ZScan":
+            case "ZScanExt":
+            case "GetAll":
+                return SCAN;
+            default:
+                return READ;
+        }
+    }
+
+}
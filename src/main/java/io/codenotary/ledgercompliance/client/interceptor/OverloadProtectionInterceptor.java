@@ -0,0 +1,173 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client.interceptor;
+
+import io.grpc.*;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Applies the concurrency limits and circuit breakers configured per {@link OperationClass}.
+ * Rejected calls fail immediately, without reaching the network: with RESOURCE_EXHAUSTED when over
+ * the concurrency limit, and with UNAVAILABLE when the circuit breaker is open.
+ */
+public class OverloadProtectionInterceptor implements ClientInterceptor {
+
+    private final Map<OperationClass, AdaptiveConcurrencyLimit> limits;
+    private final Map<OperationClass, CircuitBreaker> breakers;
+
+    public OverloadProtectionInterceptor(Map<OperationClass, AdaptiveConcurrencyLimit> limits,
+                                         Map<OperationClass, CircuitBreaker> breakers) {
+        this.limits = limits.isEmpty() ? limits : new EnumMap<>(limits);
+        this.breakers = breakers.isEmpty() ? breakers : new EnumMap<>(breakers);
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        String fullName = method.getFullMethodName();
+        OperationClass opClass = OperationClass.of(fullName.substring(fullName.lastIndexOf('/') + 1));
+        AdaptiveConcurrencyLimit limit = limits.get(opClass);
+        CircuitBreaker breaker = breakers.get(opClass);
+        if (limit == null && breaker == null) {
+            return next.newCall(method, callOptions);
+        }
+        return new ProtectedCall<>(next.newCall(method, callOptions), opClass, limit, breaker);
+    }
+
+    /**
+     * A call taking its concurrency slot and circuit breaker permit when started, and giving them back when
+     * closed. A rejected call fails as soon as it is started, without starting the underlying one.
+     */
+    private static final class ProtectedCall<ReqT, RespT>
+            extends ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT> {
+
+        private final OperationClass opClass;
+        private final AdaptiveConcurrencyLimit limit;
+        private final CircuitBreaker breaker;
+
+        private volatile boolean cancelled;
+        private volatile boolean rejected;
+
+        ProtectedCall(ClientCall<ReqT, RespT> delegate, OperationClass opClass, AdaptiveConcurrencyLimit limit,
+                      CircuitBreaker breaker) {
+            super(delegate);
+            this.opClass = opClass;
+            this.limit = limit;
+            this.breaker = breaker;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            if (cancelled) {
+                // Cancelled before being started: nothing to take, the call closes right away.
+                super.start(responseListener, headers);
+                return;
+            }
+
+            int inFlight = 0;
+            if (limit != null) {
+                inFlight = limit.tryAcquire();
+                if (inFlight < 0) {
+                    reject(responseListener, Status.RESOURCE_EXHAUSTED.withDescription(
+                            "Concurrency limit reached for " + opClass + " calls (" + limit.getLimit() + ")."));
+                    return;
+                }
+            }
+            long permit = 0;
+            if (breaker != null) {
+                permit = breaker.tryAcquire();
+                if (permit < 0) {
+                    if (limit != null) {
+                        limit.release();
+                    }
+                    reject(responseListener, Status.UNAVAILABLE.withDescription(
+                            "Circuit breaker open for " + opClass + " calls."));
+                    return;
+                }
+            }
+
+            int inFlightAtStart = inFlight;
+            long breakerPermit = permit;
+            long start = System.nanoTime();
+            try {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        Status.Code code = status.getCode();
+                        boolean failed = code == Status.Code.UNAVAILABLE || code == Status.Code.DEADLINE_EXCEEDED;
+                        if (limit != null) {
+                            boolean dropped = failed || code == Status.Code.RESOURCE_EXHAUSTED;
+                            limit.release(System.nanoTime() - start, inFlightAtStart, dropped);
+                        }
+                        if (breaker != null) {
+                            if (failed) {
+                                breaker.onFailure(breakerPermit);
+                            } else if (code == Status.Code.CANCELLED) {
+                                breaker.release(breakerPermit);
+                            } else {
+                                breaker.onSuccess(breakerPermit);
+                            }
+                        }
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            } catch (RuntimeException e) {
+                if (limit != null) {
+                    limit.release();
+                }
+                if (breaker != null) {
+                    breaker.release(breakerPermit);
+                }
+                throw e;
+            }
+        }
+
+        private void reject(Listener<RespT> responseListener, Status status) {
+            rejected = true;
+            responseListener.onClose(status, new Metadata());
+        }
+
+        @Override
+        public void request(int numMessages) {
+            if (!rejected) {
+                super.request(numMessages);
+            }
+        }
+
+        @Override
+        public void cancel(String message, Throwable cause) {
+            cancelled = true;
+            if (!rejected) {
+                super.cancel(message, cause);
+            }
+        }
+
+        @Override
+        public void halfClose() {
+            if (!rejected) {
+                super.halfClose();
+            }
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+            if (!rejected) {
+                super.sendMessage(message);
+            }
+        }
+    }
+}
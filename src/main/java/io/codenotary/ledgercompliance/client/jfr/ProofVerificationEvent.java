@@ -0,0 +1,56 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The verification of an inclusion proof or of a dual proof.
+ */
+@Name("io.codenotary.ledgercompliance.ProofVerification")
+@Label("LC Proof Verification")
+@Category({"Ledger Compliance", "Verification"})
+@Description("The client-side verification of an inclusion or dual proof")
+@Enabled(false)
+@StackTrace(false)
+public final class ProofVerificationEvent extends Event {
+
+    public static final String INCLUSION = "inclusion";
+    public static final String DUAL = "dual";
+
+    @Label("Proof")
+    public String proof;
+
+    @Label("Source Tx")
+    public long sourceTx;
+
+    @Label("Target Tx")
+    public long targetTx;
+
+    @Label("Tx Span")
+    @Description("The number of transactions between the source and the target of the proof")
+    public long txSpan;
+
+    @Label("Verified")
+    public boolean verified;
+
+}
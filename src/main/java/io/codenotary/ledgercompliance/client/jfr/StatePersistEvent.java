@@ -0,0 +1,43 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The saving of a (verified) state into the client's state holder.
+ */
+@Name("io.codenotary.ledgercompliance.StatePersist")
+@Label("LC State Persist")
+@Category({"Ledger Compliance", "State"})
+@Description("A verified state saved into the state holder")
+@Enabled(false)
+@StackTrace(false)
+public final class StatePersistEvent extends Event {
+
+    @Label("Server Id")
+    public String serverId;
+
+    @Label("Tx")
+    public long txId;
+
+}
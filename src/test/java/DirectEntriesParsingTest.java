@@ -0,0 +1,60 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+import io.codenotary.immudb4j.KV;
+import io.codenotary.ledgercompliance.client.LedgerComplianceClient;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+public class DirectEntriesParsingTest extends LcClientIntegrationTest {
+
+    @Test(testName = "entries read from the transport match the parsed ones")
+    public void t1() throws IOException {
+
+        LedgerComplianceClient client = newClientBuilder()
+                .withDirectEntriesParsing(true)
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            lcClient.set("direct-" + i, ("value-" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        lcClient.set("direct-0", "value-0-bis".getBytes(StandardCharsets.UTF_8));
+
+        assertSameEntries(client.scan("direct-"), lcClient.scan("direct-"));
+        assertSameEntries(client.scan("direct-", 0, 3, true), lcClient.scan("direct-", 0, 3, true));
+        assertSameEntries(client.history("direct-0", 10, 0, false), lcClient.history("direct-0", 10, 0, false));
+        List<String> keys = Arrays.asList("direct-1", "direct-3");
+        assertSameEntries(client.getAll(keys), lcClient.getAll(keys));
+
+        Assert.assertTrue(client.history("direct-missing", 10, 0, false).isEmpty());
+
+        client.shutdown();
+    }
+
+    private static void assertSameEntries(List<KV> actual, List<KV> expected) {
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(actual.get(i).getKey(), expected.get(i).getKey());
+            Assert.assertEquals(actual.get(i).getValue(), expected.get(i).getValue());
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import io.codenotary.immudb4j.KV;
+import io.codenotary.ledgercompliance.client.LedgerExporter;
+import io.codenotary.ledgercompliance.client.LedgerSnapshotReader;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class ExportTest extends LcClientIntegrationTest {
+
+    @Test(testName = "exportPrefix, exportHistory")
+    public void t1() throws IOException {
+
+        String prefix = "ExportTest_t1__";
+        byte[] k1 = (prefix + "k1").getBytes(StandardCharsets.UTF_8);
+        byte[] k2 = (prefix + "k2").getBytes(StandardCharsets.UTF_8);
+
+        lcClient.set(k1, new byte[]{1});
+        lcClient.set(k1, new byte[]{2});
+        lcClient.set(k2, new byte[]{3});
+
+        // A small page size, for going through the continuation pages as well.
+        LedgerExporter exporter = new LedgerExporter(lcClient, 1);
+
+        Path prefixFile = Files.createTempFile("lc-export-prefix", ".lcex");
+        Path historyFile = Files.createTempFile("lc-export-history", ".lcex");
+        try {
+            Assert.assertEquals(exporter.exportPrefix(prefix, prefixFile), 2);
+            Assert.assertEquals(exporter.exportHistory(Arrays.asList(k1, k2), historyFile), 3);
+            Assert.assertTrue(Files.size(historyFile) > Files.size(prefixFile));
+        } finally {
+            Files.deleteIfExists(prefixFile);
+            Files.deleteIfExists(historyFile);
+        }
+    }
+
+    @Test(testName = "export, then get, scan and history from the snapshot")
+    public void t2() throws IOException {
+
+        String prefix = "ExportTest_t2__";
+        byte[] k1 = (prefix + "k1").getBytes(StandardCharsets.UTF_8);
+        byte[] k2 = (prefix + "k2").getBytes(StandardCharsets.UTF_8);
+
+        lcClient.set(k1, new byte[]{1});
+        lcClient.set(k1, new byte[]{2});
+        lcClient.set(k2, new byte[]{3});
+
+        Path file = Files.createTempFile("lc-export-history", ".lcex");
+        try {
+            new LedgerExporter(lcClient).exportHistory(Arrays.asList(k2, k1), file);
+
+            try (LedgerSnapshotReader snapshot = LedgerSnapshotReader.open(file)) {
+                Assert.assertEquals(snapshot.size(), 3);
+                Assert.assertEquals(snapshot.get(k1), new byte[]{2});
+                Assert.assertEquals(snapshot.get(k2), new byte[]{3});
+                Assert.assertNull(snapshot.get(prefix + "k3"));
+
+                List<KV> scan = snapshot.scan(prefix);
+                Assert.assertEquals(scan.size(), 2);
+                Assert.assertEquals(scan.get(0).getKey(), k1);
+                Assert.assertEquals(scan.get(1).getKey(), k2);
+
+                List<KV> history = snapshot.history(k1, 10, 0, false);
+                Assert.assertEquals(history.size(), 2);
+                Assert.assertEquals(history.get(0).getValue(), new byte[]{1});
+                Assert.assertEquals(history.get(1).getValue(), new byte[]{2});
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
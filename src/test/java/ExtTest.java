@@ -0,0 +1,87 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import io.codenotary.immudb4j.exceptions.VerificationException;
+import io.codenotary.ledgercompliance.client.KVExt;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+public class ExtTest extends LcClientIntegrationTest {
+
+    @Test(testName = "historyExt, historyExt within a time window, verifiedGetExt")
+    public void t1() throws VerificationException {
+
+        byte[] key = "ExtTest_t1__key".getBytes(StandardCharsets.UTF_8);
+
+        for (byte i = 0; i < 5; i++) {
+            lcClient.set(key, new byte[]{i});
+        }
+
+        List<KVExt> history = lcClient.historyExt(key, 10, 0, false);
+        Assert.assertEquals(history.size(), 5);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(history.get(i).getKey(), key);
+            Assert.assertEquals(history.get(i).getValue(), new byte[]{(byte) i});
+            Assert.assertNotNull(history.get(i).getTimestamp());
+        }
+
+        Instant from = history.get(1).getTimestamp();
+        Instant to = history.get(3).getTimestamp();
+        List<KVExt> window = lcClient.historyExt(key, from, to, 2);
+        Assert.assertFalse(window.isEmpty());
+        for (KVExt kv : window) {
+            Assert.assertFalse(kv.getTimestamp().isBefore(from));
+            Assert.assertFalse(kv.getTimestamp().isAfter(to));
+        }
+
+        KVExt latest = lcClient.verifiedGetExt(key);
+        Assert.assertEquals(latest.getValue(), new byte[]{4});
+        Assert.assertEquals(latest.getTx(), history.get(4).getTx());
+    }
+
+    @Test(testName = "time windows reject an empty page size or a reversed window")
+    public void t2() {
+
+        byte[] key = "ExtTest_t2__key".getBytes(StandardCharsets.UTF_8);
+        Instant now = Instant.now();
+
+        try {
+            lcClient.historyExt(key, now, now, 0);
+            Assert.fail("A page size of 0 must be rejected.");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            lcClient.zScanExt(key, now, now, 0);
+            Assert.fail("A page size of 0 must be rejected.");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            lcClient.historyExt(key, now, now.minusSeconds(1), 10);
+            Assert.fail("A window ending before it starts must be rejected.");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            lcClient.zScanExt(key, now, now.minusSeconds(1), 10);
+            Assert.fail("A window ending before it starts must be rejected.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+}
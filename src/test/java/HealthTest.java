@@ -14,9 +14,13 @@ See the License for the specific language governing permissions and
 limitations under the License.
 */
 
+import io.codenotary.ledgercompliance.client.LedgerComplianceClient;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
 public class HealthTest extends LcClientIntegrationTest {
 
     @Test(testName = "Simple test of health")
@@ -26,4 +30,19 @@ public class HealthTest extends LcClientIntegrationTest {
 
     }
 
+    @Test(testName = "Eager connect and warm-up")
+    public void t2() throws IOException {
+
+        LedgerComplianceClient client = newClientBuilder()
+                .withWarmUp(100, 10, TimeUnit.SECONDS)
+                .build();
+        try {
+            Assert.assertTrue(client.health());
+            Assert.assertNotNull(client.state());
+        } finally {
+            client.shutdown();
+        }
+
+    }
+
 }
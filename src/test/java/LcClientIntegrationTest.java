@@ -29,12 +29,16 @@ public abstract class LcClientIntegrationTest {
 
     @BeforeClass
     public static void beforeClass() throws IOException {
+        lcClient = newClientBuilder().build();
+    }
+
+    protected static LedgerComplianceClient.LedgerComplianceClientBuilder newClientBuilder() throws IOException {
 
         FileImmuStateHolder stateHolder = FileImmuStateHolder.newBuilder()
                 .withStatesFolder("states")
                 .build();
 
-        lcClient = LedgerComplianceClient.newBuilder()
+        return LedgerComplianceClient.newBuilder()
                 .withStateHolder(stateHolder)
                 .withServerUrl("localhost")
                 // Note: In a minimal setup, you can have just the DataService (that listens on :3324)
@@ -43,8 +47,7 @@ public abstract class LcClientIntegrationTest {
                 //.withServerPort(3324)
                 .withServerPort(33080)
                 .withTLS(false)
-                .withApiKey(API_KEY)
-                .build();
+                .withApiKey(API_KEY);
 
     }
 
@@ -0,0 +1,56 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+import io.codenotary.immudb4j.KV;
+import io.codenotary.ledgercompliance.client.LedgerIndexes;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class LedgerIndexesTest extends LcClientIntegrationTest {
+
+    @Test(testName = "values are indexed in the same tx and queried by score")
+    public void t1() throws Exception {
+
+        String set = "by-length-" + System.nanoTime();
+        LedgerIndexes indexes = LedgerIndexes.newBuilder(lcClient)
+                .addIndex(set, value -> value.length)
+                .build();
+
+        indexes.set("indexed-a", "aaa".getBytes(StandardCharsets.UTF_8));
+        indexes.set("indexed-b", "b".getBytes(StandardCharsets.UTF_8));
+        indexes.set("indexed-c", "cc".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(lcClient.get("indexed-a"), "aaa".getBytes(StandardCharsets.UTF_8));
+
+        List<KV> byLength = indexes.query(set, 10, false);
+        Assert.assertEquals(byLength.size(), 3);
+        Assert.assertEquals(byLength.get(0).getKey(), "indexed-b".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(byLength.get(2).getKey(), "indexed-a".getBytes(StandardCharsets.UTF_8));
+
+        List<KV> ranged = indexes.range(set, 2, 3, 10, false);
+        Assert.assertEquals(ranged.size(), 2);
+
+        // The old score of a changed value is not returned.
+        indexes.set("indexed-b", "bbbb".getBytes(StandardCharsets.UTF_8));
+        byLength = indexes.query(set, 10, false);
+        Assert.assertEquals(byLength.size(), 3);
+        Assert.assertEquals(byLength.get(2).getKey(), "indexed-b".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(byLength.get(2).getValue(), "bbbb".getBytes(StandardCharsets.UTF_8));
+    }
+
+}
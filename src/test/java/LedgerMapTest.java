@@ -0,0 +1,53 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import io.codenotary.immudb4j.exceptions.VerificationException;
+import io.codenotary.ledgercompliance.client.LedgerCodecs;
+import io.codenotary.ledgercompliance.client.LedgerMap;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public class LedgerMapTest extends LcClientIntegrationTest {
+
+    @Test(testName = "put, verifiedPut, get, verifiedGet, scan, history")
+    public void t1() throws VerificationException {
+
+        LedgerMap<Long, String> map = new LedgerMap<>(lcClient, "LedgerMapTest_t1__",
+                LedgerCodecs.int64(), LedgerCodecs.utf8());
+
+        map.put(1L, "one");
+        map.verifiedPut(2L, "two");
+        map.put(1L, "uno");
+
+        Assert.assertEquals(map.get(1L), "uno");
+        Assert.assertEquals(map.verifiedGet(2L), "two");
+        Assert.assertFalse(map.tryGet(3L).isPresent());
+
+        List<Map.Entry<Long, String>> scan = map.scan();
+        Assert.assertEquals(scan.size(), 2);
+        Assert.assertEquals(scan.get(0).getKey(), Long.valueOf(1));
+        Assert.assertEquals(scan.get(1).getValue(), "two");
+
+        List<String> history = map.history(1L, 10, 0, false);
+        Assert.assertEquals(history.size(), 2);
+        Assert.assertEquals(history.get(0), "one");
+        Assert.assertEquals(history.get(1), "uno");
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+import io.codenotary.immudb4j.ImmuState;
+import io.codenotary.immudb4j.exceptions.VerificationException;
+import io.codenotary.ledgercompliance.client.LedgerComplianceClient;
+import io.codenotary.ledgercompliance.client.MappedImmuStateHolder;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MappedStateHolderTest extends LcClientIntegrationTest {
+
+    @Test(testName = "states are shared between holders and never go back")
+    public void t1() throws IOException {
+
+        Path file = Files.createTempFile("lc-states", ".map");
+        Files.delete(file);
+
+        try (MappedImmuStateHolder first = MappedImmuStateHolder.open(file, 8);
+             MappedImmuStateHolder second = MappedImmuStateHolder.open(file)) {
+
+            Assert.assertNull(second.getState("server", "db"));
+
+            first.setState("server", new ImmuState("db", 5, new byte[32], new byte[]{1, 2, 3}));
+            ImmuState state = second.getState("server", "db");
+            Assert.assertNotNull(state);
+            Assert.assertEquals(state.txId, 5);
+            Assert.assertEquals(state.signature, new byte[]{1, 2, 3});
+
+            second.setState("server", new ImmuState("db", 3, new byte[32], new byte[0]));
+            Assert.assertEquals(first.getState("server", "db").txId, 5);
+
+            second.setState("server", new ImmuState("db", 9, new byte[32], new byte[0]));
+            Assert.assertEquals(first.getState("server", "db").txId, 9);
+            Assert.assertNull(first.getState("server", "other"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(testName = "clients sharing a mapped state file")
+    public void t2() throws IOException, VerificationException {
+
+        Path file = Files.createTempFile("lc-states", ".map");
+        Files.delete(file);
+
+        try (MappedImmuStateHolder firstHolder = MappedImmuStateHolder.open(file);
+             MappedImmuStateHolder secondHolder = MappedImmuStateHolder.open(file)) {
+
+            LedgerComplianceClient first = newClientBuilder().withStateHolder(firstHolder).build();
+            LedgerComplianceClient second = newClientBuilder().withStateHolder(secondHolder).build();
+
+            byte[] value = "shared".getBytes(StandardCharsets.UTF_8);
+            first.verifiedSet("mapped-state", value);
+            Assert.assertEquals(second.verifiedGet("mapped-state"), value);
+
+            first.shutdown();
+            second.shutdown();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+import io.codenotary.immudb4j.exceptions.VerificationException;
+import io.codenotary.ledgercompliance.client.LedgerComplianceClient;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OptimisticReadTest extends LcClientIntegrationTest {
+
+    @Test(testName = "optimistic verified reads are verified in the background")
+    public void t1() throws IOException, VerificationException, InterruptedException {
+
+        AtomicInteger tampers = new AtomicInteger();
+        LedgerComplianceClient client = newClientBuilder()
+                .withOptimisticVerifiedReads((key, txId, e) -> tampers.incrementAndGet())
+                .withVerifierThreads(2, 100)
+                .build();
+
+        byte[] v1 = "optimistic-1".getBytes(StandardCharsets.UTF_8);
+        byte[] v2 = "optimistic-2".getBytes(StandardCharsets.UTF_8);
+        lcClient.verifiedSet("optimistic", v1);
+        long txId = lcClient.state().txId;
+        lcClient.verifiedSet("optimistic", v2);
+
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(client.verifiedGet("optimistic"), v2);
+            Assert.assertEquals(client.verifiedGetAt("optimistic", txId), v1);
+        }
+
+        Assert.assertTrue(client.awaitVerifications(10, TimeUnit.SECONDS));
+        Assert.assertEquals(client.getPendingVerifications(), 0);
+        Assert.assertEquals(tampers.get(), 0);
+
+        client.shutdown();
+    }
+
+}
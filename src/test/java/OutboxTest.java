@@ -0,0 +1,72 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+import io.codenotary.ledgercompliance.client.LedgerOutbox;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+public class OutboxTest extends LcClientIntegrationTest {
+
+    @Test(testName = "appended pairs are drained into the ledger")
+    public void t1() throws IOException, InterruptedException {
+
+        Path dir = Files.createTempDirectory("lc-outbox");
+
+        try (LedgerOutbox outbox = LedgerOutbox.newBuilder(lcClient)
+                .withDirectory(dir)
+                .withMaxBatch(10, 1024 * 1024)
+                .start()) {
+
+            for (int i = 0; i < 25; i++) {
+                // Keys repeat, so that batches are split.
+                outbox.append("outbox-" + (i % 15), ("value-" + i).getBytes(StandardCharsets.UTF_8));
+            }
+            Assert.assertEquals(outbox.appended(), 25);
+
+            Assert.assertTrue(outbox.awaitDrained(10, TimeUnit.SECONDS));
+            Assert.assertEquals(outbox.committed(), 25);
+            Assert.assertEquals(outbox.pending(), 0);
+        }
+
+        Assert.assertEquals(lcClient.get("outbox-9"), "value-24".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(lcClient.get("outbox-14"), "value-14".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(testName = "a reopened outbox continues the sequence")
+    public void t2() throws IOException, InterruptedException {
+
+        Path dir = Files.createTempDirectory("lc-outbox");
+
+        try (LedgerOutbox outbox = LedgerOutbox.newBuilder(lcClient).withDirectory(dir).start()) {
+            outbox.append("outbox-reopen", new byte[]{1});
+            Assert.assertTrue(outbox.awaitDrained(10, TimeUnit.SECONDS));
+        }
+
+        try (LedgerOutbox outbox = LedgerOutbox.newBuilder(lcClient).withDirectory(dir).start()) {
+            Assert.assertEquals(outbox.committed(), 1);
+            Assert.assertEquals(outbox.append("outbox-reopen", new byte[]{2}), 2);
+            Assert.assertTrue(outbox.awaitDrained(10, TimeUnit.SECONDS));
+        }
+
+        Assert.assertEquals(lcClient.get("outbox-reopen"), new byte[]{2});
+    }
+
+}
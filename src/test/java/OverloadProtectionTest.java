@@ -0,0 +1,114 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import io.codenotary.ledgercompliance.client.interceptor.AdaptiveConcurrencyLimit;
+import io.codenotary.ledgercompliance.client.interceptor.CircuitBreaker;
+import io.codenotary.ledgercompliance.client.interceptor.OperationClass;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class OverloadProtectionTest {
+
+    @Test(testName = "concurrency limit rejects, grows and shrinks")
+    public void t1() {
+
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10);
+
+        int first = limit.tryAcquire();
+        int second = limit.tryAcquire();
+        Assert.assertEquals(limit.tryAcquire(), -1);
+
+        // Fast calls with the limit in use make it grow.
+        limit.release(1_000_000, first, false);
+        limit.release(1_000_000, second, false);
+        Assert.assertEquals(limit.getLimit(), 4);
+        Assert.assertEquals(limit.getInFlight(), 0);
+
+        // A call much slower than the baseline makes it shrink.
+        limit.release(10_000_000, limit.tryAcquire(), false);
+        Assert.assertEquals(limit.getLimit(), 3);
+
+        // So does a dropped call, down to the minimum.
+        for (int i = 0; i < 100; i++) {
+            limit.release(1_000_000, limit.tryAcquire(), true);
+        }
+        Assert.assertEquals(limit.getLimit(), 1);
+    }
+
+    @Test(testName = "circuit breaker opens, half opens and closes")
+    public void t2() throws InterruptedException {
+
+        CircuitBreaker breaker = new CircuitBreaker(3, 50, TimeUnit.MILLISECONDS);
+
+        breaker.onFailure(breaker.tryAcquire());
+        breaker.onFailure(breaker.tryAcquire());
+        long permit = breaker.tryAcquire();
+        Assert.assertTrue(permit >= 0);
+        breaker.onFailure(permit);
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+        Assert.assertEquals(breaker.tryAcquire(), -1);
+
+        Thread.sleep(60);
+        long trial = breaker.tryAcquire();
+        Assert.assertTrue(trial >= 0);
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.HALF_OPEN);
+        // Only one trial call at a time.
+        Assert.assertEquals(breaker.tryAcquire(), -1);
+
+        breaker.onSuccess(trial);
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        Assert.assertTrue(breaker.tryAcquire() >= 0);
+
+        Assert.assertEquals(OperationClass.of("VerifiableSet"), OperationClass.WRITE);
+        Assert.assertEquals(OperationClass.of("ZScan"), OperationClass.SCAN);
+    }
+
+    @Test(testName = "only the trial call closes a half open circuit breaker")
+    public void t3() throws InterruptedException {
+
+        CircuitBreaker breaker = new CircuitBreaker(1, 50, TimeUnit.MILLISECONDS);
+
+        long early = breaker.tryAcquire();
+        long lateFailure = breaker.tryAcquire();
+        breaker.onFailure(breaker.tryAcquire());
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+
+        Thread.sleep(60);
+        long trial = breaker.tryAcquire();
+        Assert.assertTrue(trial >= 0);
+
+        // Calls let through before the breaker opened neither close nor reopen it.
+        breaker.onSuccess(early);
+        breaker.onFailure(lateFailure);
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.HALF_OPEN);
+        Assert.assertEquals(breaker.tryAcquire(), -1);
+
+        // A trial given back lets another one through.
+        breaker.release(trial);
+        trial = breaker.tryAcquire();
+        Assert.assertTrue(trial >= 0);
+        breaker.onFailure(trial);
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+
+        Thread.sleep(60);
+        trial = breaker.tryAcquire();
+        breaker.onSuccess(trial);
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+    }
+
+}
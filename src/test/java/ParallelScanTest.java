@@ -0,0 +1,82 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+import io.codenotary.immudb4j.KV;
+import io.codenotary.ledgercompliance.client.ParallelScan;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ParallelScanTest extends LcClientIntegrationTest {
+
+    private static final int KEYS = 250;
+
+    @BeforeClass
+    public void setUp() {
+        for (int i = 0; i < KEYS; i++) {
+            lcClient.set(String.format("pscan-%04d", i), new byte[]{(byte) i});
+        }
+    }
+
+    @Test(testName = "ordered parallel scan matches the sequential one")
+    public void t1() {
+
+        List<KV> sequential = lcClient.scan("pscan-", 0, KEYS, false);
+        Assert.assertEquals(sequential.size(), KEYS);
+
+        List<String> expected = sequential.stream()
+                .map(kv -> new String(kv.getKey(), StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+
+        try (Stream<KV> parallel = ParallelScan.newBuilder(lcClient)
+                .withPrefix("pscan-")
+                .withParallelism(4)
+                .withPageSize(16)
+                .build()
+                .stream()) {
+            List<String> keys = parallel
+                    .map(kv -> new String(kv.getKey(), StandardCharsets.UTF_8))
+                    .collect(Collectors.toList());
+            Assert.assertEquals(keys, expected);
+        }
+    }
+
+    @Test(testName = "unordered parallel scan with explicit split points")
+    public void t2() {
+
+        try (Stream<KV> parallel = ParallelScan.newBuilder(lcClient)
+                .withPrefix("pscan-")
+                .withParallelism(3)
+                .withPageSize(10)
+                .withOrdered(false)
+                .withSplitPoints(Arrays.asList(
+                        "pscan-0050".getBytes(StandardCharsets.UTF_8),
+                        "pscan-0100".getBytes(StandardCharsets.UTF_8),
+                        "pscan-0175".getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .stream()) {
+            Assert.assertEquals(parallel.map(kv -> new String(kv.getKey(), StandardCharsets.UTF_8))
+                    .distinct()
+                    .count(), KEYS);
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+import io.codenotary.immudb4j.TxMetadata;
+import io.codenotary.immudb4j.exceptions.VerificationException;
+import io.codenotary.ledgercompliance.client.PipelinedVerifiedWriter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class PipelinedWriterTest extends LcClientIntegrationTest {
+
+    @Test(testName = "pipelined verified sets")
+    public void t1() throws VerificationException {
+
+        List<CompletableFuture<TxMetadata>> writes = new ArrayList<>();
+        try (PipelinedVerifiedWriter writer = lcClient.pipelinedVerifiedWriter(8)) {
+            for (int i = 0; i < 100; i++) {
+                writes.add(writer.submit("pipelined-" + i, ("value-" + i).getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+
+        long lastTx = 0;
+        for (CompletableFuture<TxMetadata> write : writes) {
+            Assert.assertTrue(write.isDone());
+            lastTx = Math.max(lastTx, write.join().id);
+        }
+        Assert.assertTrue(lcClient.state().txId >= lastTx);
+
+        for (int i = 0; i < 100; i += 10) {
+            Assert.assertEquals(lcClient.verifiedGet("pipelined-" + i), ("value-" + i).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+}
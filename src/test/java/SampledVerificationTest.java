@@ -0,0 +1,78 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+import io.codenotary.ledgercompliance.client.LedgerComplianceClient;
+import io.codenotary.ledgercompliance.client.VerificationCoverage;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SampledVerificationTest extends LcClientIntegrationTest {
+
+    @Test(testName = "unverified reads are verified in the background")
+    public void t1() throws IOException, InterruptedException {
+
+        AtomicInteger tampers = new AtomicInteger();
+        LedgerComplianceClient client = newClientBuilder()
+                .withSampledVerification(1.0, 0, (key, txId, e) -> tampers.incrementAndGet())
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            lcClient.set("sampled-" + i, ("value-" + i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        client.get("sampled-0");
+        Assert.assertEquals(client.getAll(Arrays.asList("sampled-1", "sampled-2")).size(), 2);
+        Assert.assertEquals(client.scan("sampled-").size(), 5);
+
+        Assert.assertTrue(client.awaitVerifications(10, TimeUnit.SECONDS));
+        VerificationCoverage coverage = client.getVerificationCoverage();
+        Assert.assertEquals(coverage.getReads(), 8);
+        Assert.assertEquals(coverage.getVerified(), 8);
+        Assert.assertEquals(coverage.getTampered(), 0);
+        Assert.assertEquals(coverage.getCoverage(), 1.0);
+        Assert.assertEquals(tampers.get(), 0);
+
+        client.shutdown();
+    }
+
+    @Test(testName = "sampled verifications stay within the budget")
+    public void t2() throws IOException, InterruptedException {
+
+        LedgerComplianceClient client = newClientBuilder()
+                .withSampledVerification(1.0, 2, (key, txId, e) -> {
+                })
+                .build();
+
+        lcClient.set("sampled-budget", "value".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < 20; i++) {
+            client.get("sampled-budget");
+        }
+
+        Assert.assertTrue(client.awaitVerifications(10, TimeUnit.SECONDS));
+        VerificationCoverage coverage = client.getVerificationCoverage();
+        Assert.assertEquals(coverage.getReads(), 20);
+        Assert.assertTrue(coverage.getVerified() <= 3);
+        Assert.assertEquals(coverage.getVerified() + coverage.getSkipped(), 20);
+
+        client.shutdown();
+    }
+
+}
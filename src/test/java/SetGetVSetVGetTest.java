@@ -17,6 +17,7 @@ limitations under the License.
 import com.google.common.base.Charsets;
 import io.codenotary.immudb4j.KV;
 import io.codenotary.immudb4j.exceptions.VerificationException;
+import io.codenotary.ledgercompliance.client.PreparedKey;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -98,4 +99,24 @@ public class SetGetVSetVGetTest extends LcClientIntegrationTest {
 
     }
 
+    @Test(testName = "set, get, verifiedSet, verifiedGet, history with a PreparedKey")
+    public void t4() throws VerificationException {
+
+        PreparedKey key = PreparedKey.of("sgvsvgTest_t4__k1");
+        byte[] v1 = "sgvsvgTest_t4__v1".getBytes(StandardCharsets.UTF_8);
+        byte[] v2 = "sgvsvgTest_t4__v2".getBytes(StandardCharsets.UTF_8);
+
+        lcClient.set(key, v1);
+        Assert.assertEquals(lcClient.get(key), v1);
+
+        lcClient.verifiedSet(key, v2);
+        Assert.assertEquals(lcClient.verifiedGet(key), v2);
+
+        List<KV> history = lcClient.history(key, 10, 0, false);
+        Assert.assertEquals(history.size(), 2);
+        Assert.assertEquals(history.get(0).getValue(), v1);
+        Assert.assertEquals(history.get(1).getValue(), v2);
+
+    }
+
 }
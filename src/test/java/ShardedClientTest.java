@@ -0,0 +1,68 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+import io.codenotary.immudb4j.KV;
+import io.codenotary.ledgercompliance.client.ShardedLedgerComplianceClient;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ShardedClientTest extends LcClientIntegrationTest {
+
+    @Test(testName = "keys are routed to their shard and multi-key reads are merged")
+    public void t1() throws Exception {
+
+        ShardedLedgerComplianceClient client = newShardedClient();
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            entries.put("sharded-" + i, ("value-" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        client.setAll(entries);
+
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            Assert.assertEquals(client.get(entry.getKey()), entry.getValue());
+            Assert.assertEquals(client.clientFor(entry.getKey()).get(entry.getKey()), entry.getValue());
+        }
+
+        List<String> keys = Arrays.asList("sharded-7", "sharded-2", "sharded-missing", "sharded-5");
+        List<KV> found = client.getAll(keys);
+        Assert.assertEquals(found.size(), 3);
+        Assert.assertEquals(found.get(0).getKey(), "sharded-7".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(found.get(1).getKey(), "sharded-2".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(found.get(2).getKey(), "sharded-5".getBytes(StandardCharsets.UTF_8));
+
+        client.verifiedSet("sharded-verified", "value".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(client.verifiedGet("sharded-verified"), "value".getBytes(StandardCharsets.UTF_8));
+
+        client.shutdown();
+    }
+
+    // Both shards are on the same ledger here: merged scans are tested against distinct ledgers in
+    // ShardedLedgerComplianceClientTest.
+    private ShardedLedgerComplianceClient newShardedClient() throws IOException {
+        return ShardedLedgerComplianceClient.newBuilder()
+                .addShard("shard-a", newClientBuilder().build())
+                .addShard("shard-b", newClientBuilder().build())
+                .build();
+    }
+
+}
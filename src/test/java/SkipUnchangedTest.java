@@ -0,0 +1,54 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+import io.codenotary.immudb4j.exceptions.VerificationException;
+import io.codenotary.ledgercompliance.client.LedgerComplianceClient;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class SkipUnchangedTest extends LcClientIntegrationTest {
+
+    @Test(testName = "unchanged values are not written again")
+    public void t1() throws IOException, VerificationException {
+
+        LedgerComplianceClient client = newClientBuilder().withSkipUnchangedWrites(1000).build();
+
+        byte[] v1 = "snapshot-1".getBytes(StandardCharsets.UTF_8);
+        byte[] v2 = "snapshot-2".getBytes(StandardCharsets.UTF_8);
+
+        client.set("skip-unchanged", v1);
+        long txId = client.currentState().txId;
+
+        client.set("skip-unchanged", v1);
+        Assert.assertEquals(client.getSkippedWrites(), 1);
+        Assert.assertEquals(client.currentState().txId, txId);
+
+        client.set("skip-unchanged", v2);
+        Assert.assertEquals(client.getSkippedWrites(), 1);
+        Assert.assertEquals(client.get("skip-unchanged"), v2);
+
+        // Reads seed the cache too.
+        lcClient.set("skip-seeded", v1);
+        Assert.assertEquals(client.verifiedGet("skip-seeded"), v1);
+        client.set("skip-seeded", v1);
+        Assert.assertEquals(client.getSkippedWrites(), 2);
+
+        client.shutdown();
+    }
+
+}
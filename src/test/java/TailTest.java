@@ -0,0 +1,57 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import io.codenotary.ledgercompliance.client.KVExt;
+import io.codenotary.ledgercompliance.client.LedgerTail;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class TailTest extends LcClientIntegrationTest {
+
+    @Test(testName = "tail delivers each new entry once, in tx order")
+    public void t1() throws InterruptedException {
+
+        String prefix = "TailTest_t1__";
+        long fromTx = lcClient.currentState().txId;
+
+        BlockingQueue<KVExt> queue = new LinkedBlockingQueue<>();
+
+        try (LedgerTail tail = lcClient.tail(prefix, fromTx, queue::add)) {
+
+            lcClient.set(prefix + "k1", new byte[]{1});
+            lcClient.set(prefix + "k2", new byte[]{2});
+            lcClient.set("TailTest_other", new byte[]{3});
+
+            KVExt e1 = queue.poll(10, TimeUnit.SECONDS);
+            KVExt e2 = queue.poll(10, TimeUnit.SECONDS);
+
+            Assert.assertNotNull(e1);
+            Assert.assertNotNull(e2);
+            Assert.assertEquals(e1.getKey(), (prefix + "k1").getBytes(StandardCharsets.UTF_8));
+            Assert.assertEquals(e2.getKey(), (prefix + "k2").getBytes(StandardCharsets.UTF_8));
+            Assert.assertTrue(e1.getTx() < e2.getTx());
+
+            Assert.assertNull(queue.poll(1, TimeUnit.SECONDS));
+            Assert.assertTrue(tail.checkpoint() >= e2.getTx());
+        }
+    }
+
+}
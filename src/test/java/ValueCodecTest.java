@@ -0,0 +1,62 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import io.codenotary.immudb4j.KV;
+import io.codenotary.immudb4j.exceptions.VerificationException;
+import io.codenotary.ledgercompliance.client.DeflateValueCodec;
+import io.codenotary.ledgercompliance.client.LedgerComplianceClient;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class ValueCodecTest extends LcClientIntegrationTest {
+
+    @Test(testName = "verifiedSet, verifiedGet, get, history with a compressing codec")
+    public void t1() throws IOException, VerificationException {
+
+        LedgerComplianceClient client = newClientBuilder()
+                .withValueCodec(new DeflateValueCodec(64))
+                .withCallCompression("gzip", "Set", "VerifiableSet")
+                .build();
+
+        try {
+            String key = "ValueCodecTest_t1__k1";
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < 1000; i++) {
+                json.append("{\"id\":").append(i).append(",\"status\":\"ok\"},");
+            }
+            byte[] value = json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+
+            client.verifiedSet(key, value);
+            Assert.assertEquals(client.verifiedGet(key), value);
+            Assert.assertEquals(client.get(key), value);
+
+            // Readers without the codec get the stored (compressed) bytes.
+            byte[] stored = lcClient.get(key);
+            Assert.assertTrue(DeflateValueCodec.isCompressed(stored));
+            Assert.assertTrue(stored.length < value.length);
+
+            List<KV> history = client.history(key, 10, 0, true);
+            Assert.assertEquals(history.get(0).getValue(), value);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+import io.codenotary.immudb4j.KV;
+import io.codenotary.immudb4j.TxMetadata;
+import io.codenotary.immudb4j.exceptions.VerificationException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class VerifiedZTest extends LcClientIntegrationTest {
+
+    @Test(testName = "set, verifiedZAdd, verifiedZScan")
+    public void t1() throws VerificationException {
+
+        byte[] value1 = {0, 1, 2, 3};
+        byte[] value2 = {4, 5, 6, 7};
+
+        String keyPrefix = "VerifiedZTest_t1__";
+        String set = keyPrefix + "set";
+        String key1 = keyPrefix + "key1";
+        String key2 = keyPrefix + "key2";
+
+        lcClient.set(key1, value1);
+        lcClient.set(key2, value2);
+
+        lcClient.verifiedZAdd(set, 2, key1);
+        TxMetadata txMd = lcClient.verifiedZAdd(set, 1, key2);
+
+        List<KV> zScan = lcClient.verifiedZScan(set, txMd.id, 5, false);
+
+        Assert.assertEquals(zScan.size(), 2);
+        Assert.assertEquals(zScan.get(0).getKey(), key2.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(zScan.get(0).getValue(), value2);
+        Assert.assertEquals(zScan.get(1).getKey(), key1.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(zScan.get(1).getValue(), value1);
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+import io.codenotary.immudb4j.ImmuState;
+import io.codenotary.immudb4j.exceptions.VerificationException;
+import io.grpc.stub.StreamObserver;
+import lc.schema.LcServiceGrpc;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The advance of the trusted state by the verified sets of the {@link PipelinedVerifiedWriter}: through the
+ * linear proof of a set when it goes through the trusted tx, through a verified get otherwise.
+ */
+public class ChainedSetTest {
+
+    // Txs link the tx 5 before them: the linear proof of the target tx 12 goes from tx 7 to tx 12.
+    private static final int LAG = 4;
+    private static final long SENT = 3;
+    private static final long TARGET = 12;
+    private static final long LINEAR_FROM = TARGET - 1 - LAG;
+
+    private final ProofVerifier verifier = ProofVerifier.get();
+
+    @Test(testName = "the link holds for every tx of the linear proof")
+    public void linkInsideLinearProof() {
+        SyntheticProofs.Sample x = SyntheticProofs.sample(2, 16, SENT, TARGET, LAG);
+        ImmudbProto.LinearProof proof = x.dualProof.getLinearProof();
+        Assert.assertEquals(proof.getSourceTxId(), LINEAR_FROM);
+        for (long tx = LINEAR_FROM; tx <= TARGET; tx++) {
+            Assert.assertTrue(verifier.linearProofLinks(proof, tx, x.alhs[(int) tx]), "tx " + tx);
+        }
+    }
+
+    @Test(testName = "the link fails for a wrong alh")
+    public void linkWrongAlh() {
+        SyntheticProofs.Sample x = SyntheticProofs.sample(2, 16, SENT, TARGET, LAG);
+        ImmudbProto.LinearProof proof = x.dualProof.getLinearProof();
+        for (long tx = LINEAR_FROM; tx <= TARGET; tx++) {
+            Assert.assertFalse(verifier.linearProofLinks(proof, tx, flip(x.alhs[(int) tx])), "tx " + tx);
+            Assert.assertFalse(verifier.linearProofLinks(proof, tx, x.alhs[(int) tx - 1]), "tx " + tx);
+        }
+    }
+
+    @Test(testName = "the link fails outside of the linear proof")
+    public void linkOutsideLinearProof() {
+        SyntheticProofs.Sample x = SyntheticProofs.sample(2, 16, SENT, TARGET, LAG);
+        ImmudbProto.LinearProof proof = x.dualProof.getLinearProof();
+        for (long tx = 1; tx < LINEAR_FROM; tx++) {
+            Assert.assertFalse(verifier.linearProofLinks(proof, tx, x.alhs[(int) tx]), "tx " + tx);
+        }
+        Assert.assertFalse(verifier.linearProofLinks(proof, TARGET + 1, x.targetAlh));
+    }
+
+    @Test(testName = "a trusted tx inside the linear proof is advanced without asking the server")
+    public void chainedThroughLinearProof() throws Exception {
+        VerifiableGetService service = new VerifiableGetService();
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder().build();
+            try {
+                SyntheticProofs.Sample x = SyntheticProofs.sample(2, 16, SENT, TARGET, LAG);
+                ImmuState trusted = state(x, 9);
+
+                ImmuState advanced = verifyChainedSet(client, x, trusted);
+                Assert.assertEquals(advanced.txId, TARGET);
+                Assert.assertEquals(advanced.txHash, x.targetAlh);
+                Assert.assertTrue(service.requests.isEmpty());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test(testName = "a trusted tx before the linear proof is advanced through a verified get")
+    public void chainedThroughVerifiedGet() throws Exception {
+        VerifiableGetService service = new VerifiableGetService();
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder().build();
+            try {
+                SyntheticProofs.Sample x = SyntheticProofs.sample(2, 16, SENT, TARGET, LAG);
+                ImmuState trusted = state(x, 5);
+
+                ImmuState advanced = verifyChainedSet(client, x, trusted);
+                Assert.assertEquals(advanced.txId, TARGET);
+                Assert.assertEquals(advanced.txHash, x.targetAlh);
+                Assert.assertEquals(service.requests.size(), 1);
+                ImmudbProto.VerifiableGetRequest request = service.requests.get(0);
+                Assert.assertEquals(request.getKeyRequest().getAtTx(), TARGET);
+                Assert.assertEquals(request.getProveSinceTx(), 5);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test(testName = "a wrong trusted alh fails the link and the verified get")
+    public void wrongTrustedAlh() throws Exception {
+        VerifiableGetService service = new VerifiableGetService();
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder().build();
+            try {
+                SyntheticProofs.Sample x = SyntheticProofs.sample(2, 16, SENT, TARGET, LAG);
+                ImmuState trusted = new ImmuState(TestServer.API_KEY, 9, flip(x.alhs[9]), new byte[0]);
+
+                try {
+                    verifyChainedSet(client, x, trusted);
+                    Assert.fail("A set not linked to the trusted state has been accepted.");
+                } catch (VerificationException expected) {
+                    // The dual proof of the verified get does not start from the (wrong) trusted alh.
+                }
+                Assert.assertEquals(service.requests.size(), 1);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    private static ImmuState verifyChainedSet(LedgerComplianceClient client, SyntheticProofs.Sample x,
+                                              ImmuState trusted) throws VerificationException {
+        ImmudbProto.VerifiableTx vtx = ImmudbProto.VerifiableTx.newBuilder()
+                .setTx(x.tx)
+                .setDualProof(x.dualProof)
+                .build();
+        ImmuState sent = state(x, SENT);
+        return client.verifyChainedSet(vtx, sent, trusted, ByteString.copyFrom(x.key), x.encodedKey(), x.value);
+    }
+
+    private static ImmuState state(SyntheticProofs.Sample x, long txId) {
+        return new ImmuState(TestServer.API_KEY, txId, x.alhs[(int) txId].clone(), new byte[0]);
+    }
+
+    private static byte[] flip(byte[] b) {
+        byte[] flipped = b.clone();
+        flipped[0] ^= 1;
+        return flipped;
+    }
+
+    /**
+     * Serves the verified gets of the target tx of the chain, proven from the requested tx.
+     */
+    private static final class VerifiableGetService extends LcServiceGrpc.LcServiceImplBase {
+
+        final List<ImmudbProto.VerifiableGetRequest> requests = new ArrayList<>();
+
+        @Override
+        public synchronized void verifiableGet(ImmudbProto.VerifiableGetRequest request,
+                                               StreamObserver<ImmudbProto.VerifiableEntry> responseObserver) {
+            requests.add(request);
+            SyntheticProofs.Sample x = SyntheticProofs.sample(2, 16, request.getProveSinceTx(),
+                    request.getKeyRequest().getAtTx(), LAG);
+            responseObserver.onNext(ImmudbProto.VerifiableEntry.newBuilder()
+                    .setEntry(ImmudbProto.Entry.newBuilder()
+                            .setTx(x.targetId)
+                            .setKey(ByteString.copyFrom(x.key))
+                            .setValue(ByteString.copyFrom(x.value))
+                            .build())
+                    .setVerifiableTx(ImmudbProto.VerifiableTx.newBuilder()
+                            .setTx(x.tx)
+                            .setDualProof(x.dualProof)
+                            .build())
+                    .setInclusionProof(x.inclusionProof)
+                    .build());
+            responseObserver.onCompleted();
+        }
+    }
+
+}
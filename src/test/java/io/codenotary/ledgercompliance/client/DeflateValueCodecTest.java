@@ -0,0 +1,94 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class DeflateValueCodecTest {
+
+    private final DeflateValueCodec codec = new DeflateValueCodec(16);
+
+    @Test(testName = "compressible values are compressed and read back")
+    public void compressed() {
+        byte[] value = new byte[4096];
+        Arrays.fill(value, (byte) 'a');
+
+        byte[] stored = codec.encode(value);
+        Assert.assertTrue(DeflateValueCodec.isCompressed(stored));
+        Assert.assertTrue(stored.length < value.length);
+        Assert.assertEquals(codec.decode(stored), value);
+    }
+
+    @Test(testName = "small and incompressible values are stored as they are")
+    public void stored() {
+        byte[] small = "small".getBytes(StandardCharsets.UTF_8);
+        Assert.assertSame(codec.encode(small), small);
+        Assert.assertEquals(codec.decode(small), small);
+
+        byte[] random = new byte[1024];
+        new Random(7).nextBytes(random);
+        random[0] = 1;
+        Assert.assertSame(codec.encode(random), random);
+        Assert.assertEquals(codec.decode(random), random);
+    }
+
+    @Test(testName = "values starting with the header read back as they were written")
+    public void headerLookalikes() {
+        byte[] header = {0x00, 'L', 'C', 'Z', DeflateValueCodec.FORMAT_DEFLATE, 0, 0, 0x10, 0};
+
+        byte[] small = Arrays.copyOf(header, 12);
+        assertRoundTrip(small);
+
+        byte[] random = new byte[1024];
+        new Random(7).nextBytes(random);
+        System.arraycopy(header, 0, random, 0, header.length);
+        assertRoundTrip(random);
+
+        byte[] storedHeader = {0x00, 'L', 'C', 'Z', DeflateValueCodec.FORMAT_STORED, 'x'};
+        assertRoundTrip(storedHeader);
+
+        assertRoundTrip(Arrays.copyOf(header, 4));
+        assertRoundTrip(new byte[0]);
+    }
+
+    @Test(testName = "headers claiming an impossible length are rejected")
+    public void badLengths() {
+        byte[] value = new byte[4096];
+        Arrays.fill(value, (byte) 'a');
+        byte[] stored = codec.encode(value);
+
+        for (byte first : new byte[]{(byte) 0x80, 0x7f}) {
+            byte[] corrupted = stored.clone();
+            corrupted[DeflateValueCodec.MAGIC.length + 1] = first;
+            try {
+                codec.decode(corrupted);
+                Assert.fail("A bad length must be rejected.");
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+
+    private void assertRoundTrip(byte[] value) {
+        byte[] stored = codec.encode(value.clone());
+        Assert.assertEquals(codec.decode(stored), value);
+    }
+
+}
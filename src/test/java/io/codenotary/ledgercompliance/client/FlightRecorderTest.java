@@ -0,0 +1,98 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import io.codenotary.ledgercompliance.client.jfr.FlightRecorderSupport;
+import io.codenotary.ledgercompliance.client.jfr.ProofVerificationEvent;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+public class FlightRecorderTest {
+
+    private static final String RPC = "io.codenotary.ledgercompliance.Rpc";
+    private static final String PROOF = "io.codenotary.ledgercompliance.ProofVerification";
+    private static final String STATE = "io.codenotary.ledgercompliance.StatePersist";
+
+    @Test(testName = "a verified read is recorded as RPC, proof and state events")
+    public void events() throws Exception {
+        if (!FlightRecorderSupport.AVAILABLE) {
+            throw new SkipException("No Flight Recorder in this JVM.");
+        }
+
+        SyntheticLedgerService service = new SyntheticLedgerService();
+        Path dump = Files.createTempFile("lc-client", ".jfr");
+        try (TestServer server = TestServer.start(service); Recording recording = new Recording()) {
+            // The events are disabled by default.
+            recording.enable(RPC).withoutThreshold();
+            recording.enable(PROOF).withoutThreshold();
+            recording.enable(STATE).withoutThreshold();
+            recording.start();
+
+            LedgerComplianceClient client = server.clientBuilder().build();
+            try {
+                Assert.assertEquals(client.verifiedGet(service.sample.key), service.sample.value);
+            } finally {
+                client.shutdown();
+            }
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        Set<String> rpcs = new HashSet<>();
+        Set<String> proofs = new HashSet<>();
+        Set<Long> states = new HashSet<>();
+        try {
+            for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+                switch (event.getEventType().getName()) {
+                    case RPC:
+                        String method = event.getString("method");
+                        rpcs.add(method.substring(method.lastIndexOf('/') + 1));
+                        Assert.assertEquals(event.getString("status"), "OK");
+                        break;
+                    case PROOF:
+                        proofs.add(event.getString("proof"));
+                        Assert.assertTrue(event.getBoolean("verified"));
+                        break;
+                    case STATE:
+                        states.add(event.getLong("txId"));
+                        break;
+                    default:
+                }
+            }
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+
+        Assert.assertTrue(rpcs.contains("CurrentState"), "" + rpcs);
+        Assert.assertTrue(rpcs.contains("VerifiableGet"), "" + rpcs);
+        Assert.assertTrue(proofs.contains(ProofVerificationEvent.INCLUSION), "" + proofs);
+        Assert.assertTrue(proofs.contains(ProofVerificationEvent.DUAL), "" + proofs);
+        // The state fetched at first, then the one the read advanced to.
+        Assert.assertTrue(states.contains(service.sample.sourceId), "" + states);
+        Assert.assertTrue(states.contains(service.sample.targetId), "" + states);
+    }
+
+}
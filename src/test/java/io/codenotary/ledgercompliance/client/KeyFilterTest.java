@@ -0,0 +1,155 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KeyFilterTest {
+
+    private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+    @Test(testName = "misses of keys never seen are answered without the server")
+    public void filteredMisses() throws Exception {
+        Service service = new Service();
+        put(service, "present");
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder().withKeyFilter(1000, 0.001).build();
+            try {
+                Assert.assertEquals(client.bootstrapKeyFilter(new byte[0]), 1);
+
+                Assert.assertEquals(client.tryGet("present").get(), VALUE);
+                Assert.assertFalse(client.tryGet("absent").isPresent());
+                try {
+                    client.get("absent");
+                    Assert.fail("A missing key has been found.");
+                } catch (KeyNotFoundException expected) {
+                }
+                Assert.assertEquals(service.getRequests.get(), 1);
+
+                Assert.assertFalse(client.tryVerifiedGet("absent").isPresent());
+                try {
+                    client.verifiedGet("absent");
+                    Assert.fail("A missing key has been found.");
+                } catch (KeyNotFoundException expected) {
+                }
+                Assert.assertEquals(service.verifiableGetRequests.get(), 0);
+
+                // Keys written through the client are learnt.
+                client.set("written", VALUE);
+                Assert.assertEquals(client.tryGet("written").get(), VALUE);
+                Assert.assertEquals(service.getRequests.get(), 2);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test(testName = "without a key filter, misses are asked to the server and keep their status")
+    public void unfilteredMisses() throws Exception {
+        Service service = new Service();
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder().build();
+            try {
+                Assert.assertEquals(client.bootstrapKeyFilter(new byte[0]), 0);
+
+                Assert.assertFalse(client.tryGet("absent").isPresent());
+                try {
+                    client.get("absent");
+                    Assert.fail("A missing key has been found.");
+                } catch (KeyNotFoundException expected) {
+                    Assert.assertEquals(expected.getStatus().getCode(), Status.Code.NOT_FOUND);
+                }
+                Assert.assertEquals(service.getRequests.get(), 2);
+
+                Assert.assertFalse(client.tryVerifiedGet("absent").isPresent());
+                try {
+                    client.verifiedGet("absent");
+                    Assert.fail("A missing key has been found.");
+                } catch (StatusRuntimeException expected) {
+                    // As thrown before misses had their own exception.
+                    Assert.assertTrue(expected instanceof KeyNotFoundException);
+                    Assert.assertEquals(expected.getStatus().getCode(), Status.Code.NOT_FOUND);
+                }
+                Assert.assertEquals(service.verifiableGetRequests.get(), 2);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test(testName = "the key filter is bootstrapped from the keys of a prefix, page by page")
+    public void bootstrap() throws Exception {
+        Service service = new Service();
+        int keys = 2500;
+        for (int i = 0; i < keys; i++) {
+            put(service, "boot-" + i);
+        }
+        put(service, "other");
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder().withKeyFilter(10000, 0.001).build();
+            try {
+                Assert.assertEquals(client.bootstrapKeyFilter("boot-".getBytes(StandardCharsets.UTF_8)), keys);
+
+                for (int i = 0; i < keys; i += 100) {
+                    Assert.assertTrue(client.tryGet("boot-" + i).isPresent());
+                }
+                Assert.assertEquals(service.getRequests.get(), keys / 100);
+                // Out of the bootstrapped prefix: not known to the filter.
+                Assert.assertFalse(client.tryGet("other").isPresent());
+                Assert.assertEquals(service.getRequests.get(), keys / 100);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    private static void put(InMemoryLedgerService service, String key) {
+        ByteString keyBS = ByteString.copyFrom(key, StandardCharsets.UTF_8);
+        service.entries.put(keyBS, ImmudbProto.Entry.newBuilder()
+                .setTx(service.txId.incrementAndGet())
+                .setKey(keyBS)
+                .setValue(ByteString.copyFrom(VALUE))
+                .build());
+    }
+
+    /**
+     * Answers verifiable gets of missing keys as the server does (there is no proof to return otherwise).
+     */
+    private static final class Service extends InMemoryLedgerService {
+
+        final AtomicInteger verifiableGetRequests = new AtomicInteger();
+
+        @Override
+        public void verifiableGet(ImmudbProto.VerifiableGetRequest request,
+                                  StreamObserver<ImmudbProto.VerifiableEntry> responseObserver) {
+            verifiableGetRequests.incrementAndGet();
+            Status status = entries.containsKey(request.getKeyRequest().getKey())
+                    ? Status.UNIMPLEMENTED
+                    : Status.NOT_FOUND.withDescription(LedgerComplianceExceptions.KEY_NOT_FOUND);
+            responseObserver.onError(status.asRuntimeException());
+        }
+    }
+
+}
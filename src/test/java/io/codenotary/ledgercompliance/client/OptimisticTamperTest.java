@@ -0,0 +1,96 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import io.codenotary.immudb4j.exceptions.VerificationException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class OptimisticTamperTest {
+
+    @Test(testName = "a tampered optimistic read is reported, and the state advances on verified ones only")
+    public void tamperReported() throws Exception {
+        SyntheticLedgerService service = new SyntheticLedgerService();
+        Listener listener = new Listener();
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder().withOptimisticVerifiedReads(listener).build();
+            try {
+                service.tamper = true;
+                Assert.assertEquals(client.verifiedGet(service.sample.key), service.servedValue());
+                Assert.assertTrue(client.awaitVerifications(10, TimeUnit.SECONDS));
+
+                Assert.assertEquals(listener.tampers.size(), 1);
+                Assert.assertEquals((long) listener.tampers.get(0), service.sample.targetId);
+                Assert.assertEquals(listener.reportErrors.size(), 0);
+                Assert.assertEquals(service.reports.size(), 1);
+                Assert.assertEquals(service.reports.get(0).getPayload().getIndex(), service.sample.targetId);
+                Assert.assertEquals(client.state().txId, service.sample.sourceId);
+
+                service.tamper = false;
+                Assert.assertEquals(client.verifiedGet(service.sample.key), service.sample.value);
+                Assert.assertTrue(client.awaitVerifications(10, TimeUnit.SECONDS));
+
+                Assert.assertEquals(listener.tampers.size(), 1);
+                Assert.assertEquals(client.state().txId, service.sample.targetId);
+                Assert.assertEquals(client.state().txHash, service.sample.targetAlh);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test(testName = "a failed tamper report is passed to the listener")
+    public void reportError() throws Exception {
+        SyntheticLedgerService service = new SyntheticLedgerService();
+        service.tamper = true;
+        service.failReports = true;
+        Listener listener = new Listener();
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder().withOptimisticVerifiedReads(listener).build();
+            try {
+                client.verifiedGet(service.sample.key);
+                Assert.assertTrue(client.awaitVerifications(10, TimeUnit.SECONDS));
+
+                Assert.assertEquals(listener.reportErrors.size(), 1);
+                Assert.assertEquals(listener.tampers.size(), 1);
+                Assert.assertEquals(service.reports.size(), 1);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    private static final class Listener implements TamperListener {
+
+        final List<Long> tampers = new CopyOnWriteArrayList<>();
+        final List<Long> reportErrors = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onTamper(byte[] key, long txId, VerificationException e) {
+            tampers.add(txId);
+        }
+
+        @Override
+        public void onReportError(byte[] key, long txId, RuntimeException e) {
+            reportErrors.add(txId);
+        }
+    }
+
+}
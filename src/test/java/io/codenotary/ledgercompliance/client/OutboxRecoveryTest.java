@@ -0,0 +1,180 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import io.codenotary.immudb.ImmudbProto;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class OutboxRecoveryTest {
+
+    private static final int PAIRS = 10;
+
+    @Test(testName = "pairs appended while the ledger is unavailable are sent in order once reopened")
+    public void replay() throws Exception {
+        Path dir = Files.createTempDirectory("lc-outbox");
+        Service service = new Service();
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder().build();
+            try {
+                service.unavailable = true;
+                List<String> appended = new ArrayList<>();
+                try (LedgerOutbox outbox = newOutbox(client, dir)) {
+                    for (int i = 0; i < PAIRS; i++) {
+                        // Keys repeat, so that batches are split.
+                        appended.add(pair(i));
+                        Assert.assertEquals(outbox.append(key(i), value(i)), i + 1);
+                    }
+                    Assert.assertFalse(outbox.awaitDrained(200, TimeUnit.MILLISECONDS));
+                    Assert.assertEquals(outbox.committed(), 0);
+                    Assert.assertEquals(outbox.pending(), PAIRS);
+                }
+                Assert.assertTrue(service.received.isEmpty());
+
+                service.unavailable = false;
+                try (LedgerOutbox outbox = newOutbox(client, dir)) {
+                    Assert.assertEquals(outbox.appended(), PAIRS);
+                    Assert.assertTrue(outbox.awaitDrained(10, TimeUnit.SECONDS));
+                    Assert.assertEquals(outbox.committed(), PAIRS);
+                }
+                Assert.assertEquals(service.received, appended);
+                Assert.assertEquals(client.get(key(PAIRS - 1)), value(PAIRS - 1));
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test(testName = "a torn record at the tail of a segment is dropped when reopened")
+    public void tornTail() throws Exception {
+        Path dir = Files.createTempDirectory("lc-outbox");
+        Service service = new Service();
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder().build();
+            try {
+                service.unavailable = true;
+                try (LedgerOutbox outbox = newOutbox(client, dir)) {
+                    for (int i = 0; i < 3; i++) {
+                        outbox.append(key(i), value(i));
+                    }
+                }
+
+                // Corrupt the last byte of the value of the third record.
+                int recordLength = LedgerOutbox.RECORD_HEADER_SIZE + LedgerOutbox.BODY_HEADER_SIZE
+                        + key(0).length() + value(0).length;
+                try (FileChannel segment = FileChannel.open(segment(dir), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    ByteBuffer b = ByteBuffer.allocate(1);
+                    long pos = 3L * recordLength - 1;
+                    segment.read(b, pos);
+                    b.put(0, (byte) (b.get(0) ^ 1));
+                    b.rewind();
+                    segment.write(b, pos);
+                }
+
+                service.unavailable = false;
+                try (LedgerOutbox outbox = newOutbox(client, dir)) {
+                    Assert.assertEquals(outbox.appended(), 2);
+                    // The sequence goes on from the last valid record, over the dropped one.
+                    Assert.assertEquals(outbox.append(key(3), value(3)), 3);
+                    Assert.assertTrue(outbox.awaitDrained(10, TimeUnit.SECONDS));
+                }
+                List<String> expected = new ArrayList<>();
+                expected.add(pair(0));
+                expected.add(pair(1));
+                expected.add(pair(3));
+                Assert.assertEquals(service.received, expected);
+
+                // The dropped record stays dropped.
+                try (LedgerOutbox outbox = newOutbox(client, dir)) {
+                    Assert.assertEquals(outbox.appended(), 3);
+                    Assert.assertEquals(outbox.committed(), 3);
+                }
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    private static LedgerOutbox newOutbox(LedgerComplianceClient client, Path dir) throws IOException {
+        return LedgerOutbox.newBuilder(client)
+                .withDirectory(dir)
+                .withSegmentSize(64 * 1024)
+                .withRetryBackoff(10, 50, TimeUnit.MILLISECONDS)
+                .start();
+    }
+
+    private static Path segment(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "outbox-*.seg")) {
+            for (Path file : stream) {
+                segments.add(file);
+            }
+        }
+        Assert.assertEquals(segments.size(), 1);
+        return segments.get(0);
+    }
+
+    private static String key(int i) {
+        return "outbox-" + (i % 4);
+    }
+
+    private static byte[] value(int i) {
+        return String.format("value-%02d", i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String pair(int i) {
+        return key(i) + "=" + new String(value(i), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records the pairs it receives, in order, and fails the sets while unavailable.
+     */
+    private static final class Service extends InMemoryLedgerService {
+
+        final List<String> received = new CopyOnWriteArrayList<>();
+
+        volatile boolean unavailable;
+
+        @Override
+        public void set(ImmudbProto.SetRequest request, StreamObserver<ImmudbProto.TxMetadata> responseObserver) {
+            if (unavailable) {
+                responseObserver.onError(Status.UNAVAILABLE.withDescription("unavailable").asRuntimeException());
+                return;
+            }
+            for (ImmudbProto.KeyValue kv : request.getKVsList()) {
+                received.add(kv.getKey().toStringUtf8() + "=" + kv.getValue().toStringUtf8());
+            }
+            super.set(request, responseObserver);
+        }
+    }
+
+}
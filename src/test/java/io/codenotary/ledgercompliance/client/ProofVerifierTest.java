@@ -0,0 +1,321 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb.ImmudbProto;
+import io.codenotary.immudb4j.Tx;
+import io.codenotary.immudb4j.TxMetadata;
+import io.codenotary.immudb4j.crypto.CryptoUtils;
+import io.codenotary.immudb4j.crypto.DualProof;
+import io.codenotary.immudb4j.crypto.InclusionProof;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Checks {@link ProofVerifier} against the immudb4j proof checks it replaces, on valid, tampered and malformed
+ * proofs. Where immudb4j throws on malformed input, the proof counts as rejected.
+ */
+public class ProofVerifierTest {
+
+    private static final int[] ENTRIES = {1, 2, 3, 5, 8};
+    private static final int MAX_TX = 12;
+
+    private final ProofVerifier verifier = ProofVerifier.get();
+
+    @Test(testName = "alh matches the immudb4j one")
+    public void alh() {
+        for (int t = 2; t <= MAX_TX; t++) {
+            SyntheticProofs.Sample x = SyntheticProofs.sample(3, 16, 1, t);
+            ImmudbProto.TxMetadata md = x.tx.getMetadata();
+            Assert.assertEquals(verifier.alh(md), TxMetadata.valueOf(md).alh());
+            Assert.assertEquals(verifier.alh(md), x.targetAlh);
+        }
+    }
+
+    @Test(testName = "valid proofs are accepted by both")
+    public void validProofs() {
+        for (int entries : ENTRIES) {
+            for (long t = 2; t <= MAX_TX; t++) {
+                for (long s = 1; s < t; s++) {
+                    SyntheticProofs.Sample x = SyntheticProofs.sample(entries, 10 + entries, s, t);
+                    assertBoth(true, txInclusion(x, x.value), refTxInclusion(x, x.value));
+                    assertBoth(true, inclusion(x.inclusionProof, x, x.value, eh(x)),
+                            refInclusion(x.inclusionProof, x, x.value, eh(x)));
+                    assertBoth(true, dual(x.dualProof, s, t, x.sourceAlh, x.targetAlh),
+                            refDual(x.dualProof, s, t, x.sourceAlh, x.targetAlh));
+                }
+            }
+        }
+    }
+
+    @Test(testName = "a different value is rejected by both")
+    public void wrongValue() {
+        for (int entries : ENTRIES) {
+            SyntheticProofs.Sample x = SyntheticProofs.sample(entries, 16, 3, 9);
+            byte[] value = x.value.clone();
+            value[0] ^= 1;
+            assertBoth(false, txInclusion(x, value), refTxInclusion(x, value));
+            assertBoth(false, inclusion(x.inclusionProof, x, value, eh(x)),
+                    refInclusion(x.inclusionProof, x, value, eh(x)));
+        }
+    }
+
+    @Test(testName = "tampered terms are rejected by both")
+    public void tamperedTerms() {
+        for (int entries : ENTRIES) {
+            for (long t = 2; t <= MAX_TX; t++) {
+                for (long s = 1; s < t; s++) {
+                    SyntheticProofs.Sample x = SyntheticProofs.sample(entries, 16, s, t);
+                    for (ImmudbProto.InclusionProof p : tamperedInclusionProofs(x.inclusionProof)) {
+                        assertBoth(false, inclusion(p, x, x.value, eh(x)), refInclusion(p, x, x.value, eh(x)));
+                    }
+                    for (ImmudbProto.DualProof p : tamperedDualProofs(x.dualProof)) {
+                        assertBoth(false, dual(p, s, t, x.sourceAlh, x.targetAlh),
+                                refDual(p, s, t, x.sourceAlh, x.targetAlh));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(testName = "tampered tx entries and metadata are rejected by both")
+    public void tamperedTx() {
+        for (int entries : ENTRIES) {
+            SyntheticProofs.Sample x = SyntheticProofs.sample(entries, 16, 2, 7);
+            for (int i = 0; i < entries; i++) {
+                ImmudbProto.TxEntry entry = x.tx.getEntries(i);
+                SyntheticProofs.Sample tampered = withTx(x, x.tx.toBuilder()
+                        .setEntries(i, entry.toBuilder().setHValue(flip(entry.getHValue())).build())
+                        .build());
+                assertBoth(false, txInclusion(tampered, x.value), refTxInclusion(tampered, x.value));
+            }
+            ImmudbProto.TxMetadata md = x.tx.getMetadata();
+            SyntheticProofs.Sample tampered = withTx(x, x.tx.toBuilder()
+                    .setMetadata(md.toBuilder().setEH(flip(md.getEH())).build())
+                    .build());
+            assertBoth(false, txInclusion(tampered, x.value), refTxInclusion(tampered, x.value));
+        }
+    }
+
+    @Test(testName = "wrong ids and alhs are rejected by both")
+    public void wrongAlhs() {
+        for (long t = 3; t <= MAX_TX; t++) {
+            for (long s = 1; s < t; s++) {
+                SyntheticProofs.Sample x = SyntheticProofs.sample(3, 16, s, t);
+                byte[] sourceAlh = x.sourceAlh.clone();
+                sourceAlh[7] ^= 1;
+                byte[] targetAlh = x.targetAlh.clone();
+                targetAlh[7] ^= 1;
+                assertBoth(false, dual(x.dualProof, s, t, sourceAlh, x.targetAlh),
+                        refDual(x.dualProof, s, t, sourceAlh, x.targetAlh));
+                assertBoth(false, dual(x.dualProof, s, t, x.sourceAlh, targetAlh),
+                        refDual(x.dualProof, s, t, x.sourceAlh, targetAlh));
+                assertBoth(false, dual(x.dualProof, s, t, x.targetAlh, x.sourceAlh),
+                        refDual(x.dualProof, s, t, x.targetAlh, x.sourceAlh));
+                assertBoth(false, dual(x.dualProof, s + 1, t, x.sourceAlh, x.targetAlh),
+                        refDual(x.dualProof, s + 1, t, x.sourceAlh, x.targetAlh));
+                assertBoth(false, dual(x.dualProof, s, t - 1, x.sourceAlh, x.targetAlh),
+                        refDual(x.dualProof, s, t - 1, x.sourceAlh, x.targetAlh));
+            }
+        }
+    }
+
+    @Test(testName = "malformed hash lengths are rejected by both")
+    public void malformedLengths() {
+        for (long t = 3; t <= MAX_TX; t++) {
+            for (long s = 1; s < t; s++) {
+                SyntheticProofs.Sample x = SyntheticProofs.sample(5, 16, s, t);
+                for (ImmudbProto.InclusionProof p : resizedInclusionProofs(x.inclusionProof)) {
+                    assertBoth(false, inclusion(p, x, x.value, eh(x)), refInclusion(p, x, x.value, eh(x)));
+                }
+                for (ImmudbProto.DualProof p : resizedDualProofs(x.dualProof)) {
+                    assertBoth(false, dual(p, s, t, x.sourceAlh, x.targetAlh),
+                            refDual(p, s, t, x.sourceAlh, x.targetAlh));
+                }
+                ByteString shortEh = eh(x).substring(0, ProofVerifier.DIGEST_SIZE - 1);
+                assertBoth(false, inclusion(x.inclusionProof, x, x.value, shortEh),
+                        refInclusion(x.inclusionProof, x, x.value, shortEh));
+
+                ImmudbProto.TxMetadata md = x.tx.getMetadata();
+                ImmudbProto.TxMetadata shortMd = md.toBuilder().setEH(shortEh).build();
+                Assert.assertNull(verifier.alh(shortMd));
+                SyntheticProofs.Sample resized = withTx(x, x.tx.toBuilder().setMetadata(shortMd).build());
+                assertBoth(false, txInclusion(resized, x.value), refTxInclusion(resized, x.value));
+            }
+        }
+    }
+
+    // ProofVerifier checks
+
+    private Callable<Boolean> txInclusion(SyntheticProofs.Sample x, byte[] value) {
+        return () -> {
+            byte[] encodedKey = x.encodedKey();
+            byte[] kvDigest = verifier.kvDigest(encodedKey, ProofVerifier.VALUE_PREFIX, value).clone();
+            return verifier.verifyTxInclusion(x.tx, encodedKey, kvDigest);
+        };
+    }
+
+    private Callable<Boolean> inclusion(ImmudbProto.InclusionProof proof, SyntheticProofs.Sample x, byte[] value,
+                                        ByteString eh) {
+        return () -> {
+            byte[] kvDigest = verifier.kvDigest(ByteString.copyFrom(x.key), ByteString.copyFrom(value)).clone();
+            return verifier.verifyInclusion(proof, kvDigest, eh);
+        };
+    }
+
+    private Callable<Boolean> dual(ImmudbProto.DualProof proof, long sourceId, long targetId,
+                                   byte[] sourceAlh, byte[] targetAlh) {
+        return () -> verifier.verifyDualProof(proof, sourceId, targetId, sourceAlh, targetAlh);
+    }
+
+    // immudb4j checks, as the client used to call them
+
+    private static Callable<Boolean> refTxInclusion(SyntheticProofs.Sample x, byte[] value) {
+        return () -> {
+            Tx tx = Tx.valueOf(x.tx);
+            InclusionProof proof = tx.proof(x.encodedKey());
+            return CryptoUtils.verifyInclusion(proof, CryptoUtils.encodeKV(x.key, value), tx.eh());
+        };
+    }
+
+    private static Callable<Boolean> refInclusion(ImmudbProto.InclusionProof proof, SyntheticProofs.Sample x,
+                                                  byte[] value, ByteString eh) {
+        return () -> CryptoUtils.verifyInclusion(InclusionProof.valueOf(proof), CryptoUtils.encodeKV(x.key, value),
+                CryptoUtils.digestFrom(eh.toByteArray()));
+    }
+
+    private static Callable<Boolean> refDual(ImmudbProto.DualProof proof, long sourceId, long targetId,
+                                             byte[] sourceAlh, byte[] targetAlh) {
+        return () -> CryptoUtils.verifyDualProof(DualProof.valueOf(proof), sourceId, targetId,
+                CryptoUtils.digestFrom(sourceAlh), CryptoUtils.digestFrom(targetAlh));
+    }
+
+    private static void assertBoth(boolean expected, Callable<Boolean> actual, Callable<Boolean> reference) {
+        Assert.assertEquals(accepts(actual), expected, "ProofVerifier");
+        Assert.assertEquals(accepts(reference), expected, "immudb4j");
+    }
+
+    private static boolean accepts(Callable<Boolean> check) {
+        try {
+            return check.call();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // Proof variants
+
+    private static List<ImmudbProto.InclusionProof> tamperedInclusionProofs(ImmudbProto.InclusionProof proof) {
+        List<ImmudbProto.InclusionProof> proofs = new ArrayList<>();
+        for (int i = 0; i < proof.getTermsCount(); i++) {
+            proofs.add(proof.toBuilder().setTerms(i, flip(proof.getTerms(i))).build());
+        }
+        proofs.add(proof.toBuilder().setLeaf(proof.getLeaf() ^ 1).build());
+        if (proof.getTermsCount() > 0) {
+            proofs.add(proof.toBuilder().setWidth(proof.getWidth() * 2 + 1).build());
+        }
+        return proofs;
+    }
+
+    private static List<ImmudbProto.DualProof> tamperedDualProofs(ImmudbProto.DualProof proof) {
+        List<ImmudbProto.DualProof> proofs = new ArrayList<>();
+        for (int i = 0; i < proof.getInclusionProofCount(); i++) {
+            proofs.add(proof.toBuilder().setInclusionProof(i, flip(proof.getInclusionProof(i))).build());
+        }
+        for (int i = 0; i < proof.getConsistencyProofCount(); i++) {
+            proofs.add(proof.toBuilder().setConsistencyProof(i, flip(proof.getConsistencyProof(i))).build());
+        }
+        for (int i = 0; i < proof.getLastInclusionProofCount(); i++) {
+            proofs.add(proof.toBuilder().setLastInclusionProof(i, flip(proof.getLastInclusionProof(i))).build());
+        }
+        ImmudbProto.LinearProof linear = proof.getLinearProof();
+        for (int i = 0; i < linear.getTermsCount(); i++) {
+            proofs.add(proof.toBuilder()
+                    .setLinearProof(linear.toBuilder().setTerms(i, flip(linear.getTerms(i))).build())
+                    .build());
+        }
+        proofs.add(proof.toBuilder().setTargetBlTxAlh(flip(proof.getTargetBlTxAlh())).build());
+        ImmudbProto.TxMetadata target = proof.getTargetTxMetadata();
+        proofs.add(proof.toBuilder()
+                .setTargetTxMetadata(target.toBuilder().setBlRoot(flip(target.getBlRoot())))
+                .build());
+        proofs.add(proof.toBuilder().setTargetTxMetadata(target.toBuilder().setEH(flip(target.getEH()))).build());
+        return proofs;
+    }
+
+    private static List<ImmudbProto.InclusionProof> resizedInclusionProofs(ImmudbProto.InclusionProof proof) {
+        List<ImmudbProto.InclusionProof> proofs = new ArrayList<>();
+        for (int i = 0; i < proof.getTermsCount(); i++) {
+            proofs.add(proof.toBuilder().setTerms(i, shorten(proof.getTerms(i))).build());
+            proofs.add(proof.toBuilder().setTerms(i, lengthen(proof.getTerms(i))).build());
+        }
+        return proofs;
+    }
+
+    private static List<ImmudbProto.DualProof> resizedDualProofs(ImmudbProto.DualProof proof) {
+        List<ImmudbProto.DualProof> proofs = new ArrayList<>();
+        for (int i = 0; i < proof.getInclusionProofCount(); i++) {
+            proofs.add(proof.toBuilder().setInclusionProof(i, shorten(proof.getInclusionProof(i))).build());
+        }
+        for (int i = 0; i < proof.getConsistencyProofCount(); i++) {
+            proofs.add(proof.toBuilder().setConsistencyProof(i, lengthen(proof.getConsistencyProof(i))).build());
+        }
+        for (int i = 0; i < proof.getLastInclusionProofCount(); i++) {
+            proofs.add(proof.toBuilder().setLastInclusionProof(i, shorten(proof.getLastInclusionProof(i))).build());
+        }
+        ImmudbProto.LinearProof linear = proof.getLinearProof();
+        for (int i = 0; i < linear.getTermsCount(); i++) {
+            proofs.add(proof.toBuilder()
+                    .setLinearProof(linear.toBuilder().setTerms(i, shorten(linear.getTerms(i))).build())
+                    .build());
+        }
+        proofs.add(proof.toBuilder().setTargetBlTxAlh(shorten(proof.getTargetBlTxAlh())).build());
+        ImmudbProto.TxMetadata source = proof.getSourceTxMetadata();
+        proofs.add(proof.toBuilder()
+                .setSourceTxMetadata(source.toBuilder().setPrevAlh(shorten(source.getPrevAlh())))
+                .build());
+        return proofs;
+    }
+
+    private static SyntheticProofs.Sample withTx(SyntheticProofs.Sample x, ImmudbProto.Tx tx) {
+        return new SyntheticProofs.Sample(tx, x.inclusionProof, x.dualProof, x.index, x.key, x.value,
+                x.sourceId, x.sourceAlh, x.targetAlh, x.alhs);
+    }
+
+    private static ByteString eh(SyntheticProofs.Sample x) {
+        return x.tx.getMetadata().getEH();
+    }
+
+    private static ByteString flip(ByteString b) {
+        byte[] bytes = b.toByteArray();
+        bytes[bytes.length / 2] ^= 1;
+        return ByteString.copyFrom(bytes);
+    }
+
+    private static ByteString shorten(ByteString b) {
+        return b.substring(0, b.size() - 1);
+    }
+
+    private static ByteString lengthen(ByteString b) {
+        return b.concat(ByteString.copyFrom(new byte[1]));
+    }
+
+}
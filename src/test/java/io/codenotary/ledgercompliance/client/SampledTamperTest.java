@@ -0,0 +1,128 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import io.codenotary.immudb4j.ImmuState;
+import io.codenotary.immudb4j.ImmuStateHolder;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SampledTamperTest {
+
+    @Test(testName = "sampled reads count tampers and errors apart, and report tampers only")
+    public void outcomes() throws Exception {
+        SyntheticLedgerService service = new SyntheticLedgerService();
+        AtomicInteger tampers = new AtomicInteger();
+        TamperListener listener = (key, txId, e) -> tampers.incrementAndGet();
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder()
+                    // Every verification starts from the current state (the source tx of the chain).
+                    .withStateHolder(new StatelessHolder())
+                    .withSampledVerification(1, 0, listener)
+                    .build();
+            try {
+                // The unverified read differs from the verified one.
+                service.tamperUnverified = true;
+                read(client, service);
+                VerificationCoverage coverage = client.getVerificationCoverage();
+                Assert.assertEquals(coverage.getTampered(), 1);
+                Assert.assertEquals(tampers.get(), 1);
+                Assert.assertEquals(service.reports.size(), 1);
+
+                // The proofs of the verified read fail.
+                service.tamperUnverified = false;
+                service.tamper = true;
+                read(client, service);
+                coverage = client.getVerificationCoverage();
+                Assert.assertEquals(coverage.getTampered(), 2);
+                Assert.assertEquals(tampers.get(), 2);
+                Assert.assertEquals(service.reports.size(), 2);
+
+                // The state can't be fetched: an error, not a tamper.
+                service.tamper = false;
+                service.failState = true;
+                read(client, service);
+                coverage = client.getVerificationCoverage();
+                Assert.assertEquals(coverage.getErrors(), 1);
+                Assert.assertEquals(coverage.getTampered(), 2);
+                Assert.assertEquals(tampers.get(), 2);
+                Assert.assertEquals(service.reports.size(), 2);
+
+                service.failState = false;
+                read(client, service);
+                coverage = client.getVerificationCoverage();
+                Assert.assertEquals(coverage.getVerified(), 1);
+                Assert.assertEquals(coverage.getSampled(), 4);
+                Assert.assertEquals(coverage.getErrors(), 1);
+                Assert.assertEquals(tampers.get(), 2);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test(testName = "prefix scans are sampled")
+    public void scans() throws Exception {
+        InMemoryLedgerService service = new InMemoryLedgerService();
+        try (TestServer server = TestServer.start(service)) {
+            LedgerComplianceClient client = server.clientBuilder()
+                    .withSampledVerification(1, 0, (key, txId, e) -> Assert.fail("No proof has been served."))
+                    .build();
+            try {
+                for (int i = 0; i < 5; i++) {
+                    client.set("sampled-" + i, new byte[]{(byte) i});
+                }
+                Assert.assertEquals(client.scan("sampled-").size(), 5);
+                Assert.assertEquals(client.scan("sampled-".getBytes(StandardCharsets.UTF_8)).size(), 5);
+                Assert.assertTrue(client.awaitVerifications(10, TimeUnit.SECONDS));
+
+                VerificationCoverage coverage = client.getVerificationCoverage();
+                Assert.assertEquals(coverage.getReads(), 10);
+                Assert.assertEquals(coverage.getSampled(), 10);
+                // The in-memory ledger has no proofs to serve.
+                Assert.assertEquals(coverage.getErrors(), 10);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    private static void read(LedgerComplianceClient client, SyntheticLedgerService service)
+            throws InterruptedException {
+        Assert.assertEquals(client.get(service.sample.key), service.servedValue());
+        Assert.assertTrue(client.awaitVerifications(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Keeps no state, so that it is fetched from the server every time.
+     */
+    private static final class StatelessHolder implements ImmuStateHolder {
+
+        @Override
+        public ImmuState getState(String serverUuid, String database) {
+            return null;
+        }
+
+        @Override
+        public void setState(String serverUuid, ImmuState state) {
+        }
+    }
+
+}
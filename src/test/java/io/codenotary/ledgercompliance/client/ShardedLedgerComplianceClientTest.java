@@ -0,0 +1,190 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import io.codenotary.immudb4j.KV;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ShardedLedgerComplianceClientTest {
+
+    private static final int KEYS = 10000;
+
+    @Test(testName = "keys are routed by shard name, evenly")
+    public void routing() {
+        ShardedLedgerComplianceClient abcd = routingOnly("a", "b", "c", "d");
+        ShardedLedgerComplianceClient dcba = routingOnly("d", "c", "b", "a");
+
+        int[] counts = new int[abcd.shardCount()];
+        for (int i = 0; i < KEYS; i++) {
+            String key = "key-" + i;
+            int shard = abcd.shardOf(key);
+            Assert.assertEquals(shard, abcd.shardOf(key.getBytes(StandardCharsets.UTF_8)));
+            // The ring depends on the shard names, not on their order.
+            Assert.assertEquals(dcba.shardName(dcba.shardOf(key)), abcd.shardName(shard));
+            counts[shard]++;
+        }
+        for (int count : counts) {
+            Assert.assertTrue(count > KEYS / 8 && count < KEYS * 3 / 8, "unbalanced shards: " + count);
+        }
+    }
+
+    @Test(testName = "adding a shard moves keys only to it")
+    public void addingShard() {
+        ShardedLedgerComplianceClient before = routingOnly("a", "b", "c", "d");
+        ShardedLedgerComplianceClient after = routingOnly("a", "b", "c", "d", "e");
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "key-" + i;
+            String from = before.shardName(before.shardOf(key));
+            String to = after.shardName(after.shardOf(key));
+            if (!from.equals(to)) {
+                Assert.assertEquals(to, "e");
+                moved++;
+            }
+        }
+        // About a fifth of the keys.
+        Assert.assertTrue(moved > KEYS / 10 && moved < KEYS * 3 / 10, "moved keys: " + moved);
+    }
+
+    @Test(testName = "multi-key sets take a single tx per shard")
+    public void setAll() throws Exception {
+        InMemoryLedgerService[] services = {new InMemoryLedgerService(), new InMemoryLedgerService()};
+        try (TestServer a = TestServer.start(services[0]); TestServer b = TestServer.start(services[1])) {
+            ShardedLedgerComplianceClient client = ShardedLedgerComplianceClient.newBuilder()
+                    .addShard("shard-a", a.clientBuilder().withValueCodec(new DeflateValueCodec(0)).build())
+                    .addShard("shard-b", b.clientBuilder().build())
+                    .build();
+            try {
+                Map<String, byte[]> entries = new LinkedHashMap<>();
+                for (int i = 0; i < 20; i++) {
+                    entries.put("sharded-" + i, ("value-" + i).getBytes(StandardCharsets.UTF_8));
+                }
+                client.setAll(entries);
+
+                for (int s = 0; s < 2; s++) {
+                    Assert.assertEquals(services[s].setRequests.get(), 1);
+                }
+                Assert.assertEquals(services[0].entries.size() + services[1].entries.size(), entries.size());
+                for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                    int shard = client.shardOf(entry.getKey());
+                    Assert.assertTrue(services[shard].entries.containsKey(
+                            ByteString.copyFrom(entry.getKey(), StandardCharsets.UTF_8)));
+                    // Values are encoded by the codec of their shard.
+                    Assert.assertEquals(client.get(entry.getKey()), entry.getValue());
+                }
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test(testName = "prefix scans are merged in key order")
+    public void scan() throws Exception {
+        try (TestServer a = TestServer.start(new InMemoryLedgerService());
+             TestServer b = TestServer.start(new InMemoryLedgerService())) {
+            ShardedLedgerComplianceClient client = shardedClient(a, b);
+            try {
+                for (int i = 0; i < 10; i++) {
+                    client.set("sharded-scan-" + i, ("value-" + i).getBytes(StandardCharsets.UTF_8));
+                }
+                client.set("other-key", new byte[1]);
+
+                List<String> scannedKeys = keys(client.scan("sharded-scan-"));
+                Assert.assertEquals(scannedKeys.size(), 10);
+                for (int i = 0; i < 10; i++) {
+                    Assert.assertEquals(scannedKeys.get(i), "sharded-scan-" + i);
+                }
+
+                List<KV> last = client.scan("sharded-scan-".getBytes(StandardCharsets.UTF_8), 3, true);
+                Assert.assertEquals(keys(last), Arrays.asList("sharded-scan-9", "sharded-scan-8",
+                        "sharded-scan-7"));
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test(testName = "scans without a limit stop where a shard was cut at the server limit")
+    public void scanServerLimit() throws Exception {
+        try (TestServer a = TestServer.start(new InMemoryLedgerService());
+             TestServer b = TestServer.start(new InMemoryLedgerService())) {
+            ShardedLedgerComplianceClient client = shardedClient(a, b);
+            try {
+                int n = ShardedLedgerComplianceClient.SERVER_SCAN_LIMIT * 3;
+                Map<String, byte[]> entries = new LinkedHashMap<>();
+                List<String> all = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    String key = String.format("limited-%05d", i);
+                    entries.put(key, new byte[1]);
+                    all.add(key);
+                }
+                client.setAll(entries);
+
+                for (boolean reverse : new boolean[]{false, true}) {
+                    List<String> scanned = keys(client.scan("limited-".getBytes(StandardCharsets.UTF_8), 0, reverse));
+                    List<String> expected = new ArrayList<>(all);
+                    if (reverse) {
+                        Collections.reverse(expected);
+                    }
+                    // No key is skipped: the results are the first ones, in order.
+                    Assert.assertTrue(scanned.size() >= ShardedLedgerComplianceClient.SERVER_SCAN_LIMIT);
+                    Assert.assertTrue(scanned.size() < n);
+                    Assert.assertEquals(scanned, expected.subList(0, scanned.size()));
+                }
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    private static ShardedLedgerComplianceClient shardedClient(TestServer a, TestServer b) {
+        return ShardedLedgerComplianceClient.newBuilder()
+                .addShard("shard-a", a.clientBuilder().build())
+                .addShard("shard-b", b.clientBuilder().build())
+                .build();
+    }
+
+    /**
+     * A sharded client of shards that are never called, for the routing alone.
+     */
+    private static ShardedLedgerComplianceClient routingOnly(String... names) {
+        ShardedLedgerComplianceClient.Builder builder = ShardedLedgerComplianceClient.newBuilder();
+        for (String name : names) {
+            builder.addShard(name, null);
+        }
+        return builder.build();
+    }
+
+    private static List<String> keys(List<KV> kvs) {
+        List<String> keys = new ArrayList<>(kvs.size());
+        for (KV kv : kvs) {
+            keys.add(new String(kv.getKey(), StandardCharsets.UTF_8));
+        }
+        return keys;
+    }
+
+}
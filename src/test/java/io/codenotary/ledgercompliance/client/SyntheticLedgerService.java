@@ -0,0 +1,115 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Empty;
+import io.codenotary.immudb.ImmudbProto;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import lc.schema.Lc;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Serves a synthetic chain (see {@link SyntheticProofs}): its source tx as the current state, and the key of its
+ * sample at the target tx, with the proofs from the source tx. The value served can be tampered with (for all
+ * reads, or for the unverified ones only), the current state can fail, and the tamper reports are recorded.
+ */
+class SyntheticLedgerService extends InMemoryLedgerService {
+
+    final SyntheticProofs.Sample sample = SyntheticProofs.sample(4, 32, 3, 8);
+    final List<Lc.ReportOptions> reports = new CopyOnWriteArrayList<>();
+
+    volatile boolean tamper;
+    volatile boolean tamperUnverified;
+    volatile boolean failState;
+    volatile boolean failReports;
+
+    byte[] servedValue() {
+        return servedValue(false);
+    }
+
+    private byte[] servedValue(boolean verifiable) {
+        byte[] value = sample.value.clone();
+        if (tamper || (tamperUnverified && !verifiable)) {
+            value[0] ^= 1;
+        }
+        return value;
+    }
+
+    @Override
+    public void currentState(Empty request, StreamObserver<ImmudbProto.ImmutableState> responseObserver) {
+        if (failState) {
+            responseObserver.onError(Status.UNAVAILABLE.withDescription("no state").asRuntimeException());
+            return;
+        }
+        respond(responseObserver, ImmudbProto.ImmutableState.newBuilder()
+                .setTxId(sample.sourceId)
+                .setTxHash(ByteString.copyFrom(sample.sourceAlh))
+                .build());
+    }
+
+    @Override
+    public void get(ImmudbProto.KeyRequest request, StreamObserver<ImmudbProto.Entry> responseObserver) {
+        if (!request.getKey().equals(ByteString.copyFrom(sample.key))) {
+            super.get(request, responseObserver);
+            return;
+        }
+        respond(responseObserver, entry(false));
+    }
+
+    @Override
+    public void verifiableGet(ImmudbProto.VerifiableGetRequest request,
+                              StreamObserver<ImmudbProto.VerifiableEntry> responseObserver) {
+        ImmudbProto.KeyRequest keyRequest = request.getKeyRequest();
+        if (!keyRequest.getKey().equals(ByteString.copyFrom(sample.key))
+                || request.getProveSinceTx() != sample.sourceId
+                || (keyRequest.getAtTx() != 0 && keyRequest.getAtTx() != sample.targetId)) {
+            responseObserver.onError(Status.UNIMPLEMENTED.withDescription("only the sample is proven")
+                    .asRuntimeException());
+            return;
+        }
+        respond(responseObserver, ImmudbProto.VerifiableEntry.newBuilder()
+                .setEntry(entry(true))
+                .setVerifiableTx(ImmudbProto.VerifiableTx.newBuilder()
+                        .setTx(sample.tx)
+                        .setDualProof(sample.dualProof)
+                        .build())
+                .setInclusionProof(sample.inclusionProof)
+                .build());
+    }
+
+    @Override
+    public void reportTamper(Lc.ReportOptions request, StreamObserver<Empty> responseObserver) {
+        reports.add(request);
+        if (failReports) {
+            responseObserver.onError(Status.UNAVAILABLE.withDescription("report failed").asRuntimeException());
+            return;
+        }
+        respond(responseObserver, Empty.getDefaultInstance());
+    }
+
+    private ImmudbProto.Entry entry(boolean verifiable) {
+        return ImmudbProto.Entry.newBuilder()
+                .setTx(sample.targetId)
+                .setKey(ByteString.copyFrom(sample.key))
+                .setValue(ByteString.copyFrom(servedValue(verifiable)))
+                .build();
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import lc.schema.LcServiceGrpc;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A local server for the unit tests, listening on an ephemeral port and serving the provided service
+ * (calls it does not override fail as unimplemented).
+ */
+final class TestServer implements AutoCloseable {
+
+    static final String API_KEY = "test-api-key";
+
+    private final Server server;
+
+    private TestServer(Server server) {
+        this.server = server;
+    }
+
+    static TestServer start(LcServiceGrpc.LcServiceImplBase service) throws IOException {
+        return new TestServer(ServerBuilder.forPort(0).addService(service).build().start());
+    }
+
+    int port() {
+        return server.getPort();
+    }
+
+    /**
+     * A builder of clients connected to this server, keeping their state in memory.
+     */
+    LedgerComplianceClient.LedgerComplianceClientBuilder clientBuilder() {
+        return LedgerComplianceClient.newBuilder()
+                .withServerUrl("localhost")
+                .withServerPort(port())
+                .withTLS(false)
+                .withApiKey(API_KEY);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        server.shutdownNow();
+        server.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+Copyright 2021 CodeNotary, Inc. All rights reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package io.codenotary.ledgercompliance.client;
+
+import com.google.protobuf.Empty;
+import io.codenotary.immudb.ImmudbProto;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class WarmUpTest {
+
+    @Test(testName = "a warm-up failure fails the build")
+    public void failedWarmUp() throws Exception {
+        InMemoryLedgerService service = new InMemoryLedgerService() {
+            @Override
+            public void currentState(Empty request, StreamObserver<ImmudbProto.ImmutableState> responseObserver) {
+                responseObserver.onError(Status.UNAVAILABLE.withDescription("no state yet").asRuntimeException());
+            }
+        };
+        try (TestServer server = TestServer.start(service)) {
+            try {
+                server.clientBuilder().withWarmUp(10, 5, TimeUnit.SECONDS).build();
+                Assert.fail("A client that failed to warm up has been built.");
+            } catch (RuntimeException expected) {
+            }
+        }
+    }
+
+    @Test(testName = "a warm-up timeout fails the build")
+    public void unreachableServer() throws Exception {
+        int port;
+        try (TestServer server = TestServer.start(new InMemoryLedgerService())) {
+            port = server.port();
+        }
+        try {
+            LedgerComplianceClient.newBuilder()
+                    .withServerUrl("localhost")
+                    .withServerPort(port)
+                    .withTLS(false)
+                    .withApiKey(TestServer.API_KEY)
+                    .withWarmUp(10, 200, TimeUnit.MILLISECONDS)
+                    .build();
+            Assert.fail("A client that failed to connect has been built.");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    @Test(testName = "a warmed up client is connected and has a state")
+    public void warmUp() throws Exception {
+        try (TestServer server = TestServer.start(new InMemoryLedgerService())) {
+            LedgerComplianceClient client = server.clientBuilder().withWarmUp(10, 5, TimeUnit.SECONDS).build();
+            try {
+                Assert.assertTrue(client.health());
+                Assert.assertNotNull(client.state());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+}